@@ -0,0 +1,139 @@
+package me.ore.logback.gson.layout.benchmarks;
+
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * Factory of log events used in benchmarks
+ */
+public final class BenchmarkEvents {
+    /**
+     * Shapes of log events
+     */
+    public enum Shape {
+        /**
+         * Plain message, without error and extra parameters
+         */
+        PLAIN,
+
+        /**
+         * Plain message and 5 extra parameters
+         */
+        EXTRA_PARAMS,
+
+        /**
+         * Message and error with chain of 3 throwables, 60 stack frames each
+         */
+        CAUSE_CHAIN,
+
+        /**
+         * Message of 64 KB
+         */
+        LARGE_MESSAGE
+    }
+
+
+    private static final String FQCN = BenchmarkEvents.class.getName();
+
+    private static final int CAUSE_CHAIN_LENGTH = 3;
+    private static final int FRAMES_PER_THROWABLE = 60;
+    private static final int LARGE_MESSAGE_LENGTH = 64 * 1024;
+
+
+    private BenchmarkEvents() {}
+
+
+    /**
+     * Creates log event of specified shape
+     *
+     * <p>
+     *     Created event is already prepared for deferred processing, so formatting of message is not measured
+     * </p>
+     *
+     * @param loggerContext context of logger which "creates" event
+     * @param shape shape of event
+     * @return log event
+     */
+    public static ILoggingEvent create(LoggerContext loggerContext, Shape shape) {
+        Logger logger = loggerContext.getLogger("me.ore.logback.gson.layout.benchmarks.SomeService");
+
+        LoggingEvent event;
+        switch (shape) {
+            case PLAIN:
+            case EXTRA_PARAMS:
+                event = new LoggingEvent(FQCN, logger, Level.INFO, "Request {} processed in {} ms", null, new Object[]{"GET /api/orders", 42});
+                break;
+
+            case CAUSE_CHAIN:
+                event = new LoggingEvent(FQCN, logger, Level.ERROR, "Cannot process request", createCauseChain(), null);
+                break;
+
+            case LARGE_MESSAGE:
+                event = new LoggingEvent(FQCN, logger, Level.WARN, createLargeMessage(), null, null);
+                break;
+
+            default:
+                throw new IllegalArgumentException("Unknown shape: " + shape);
+        }
+
+        event.prepareForDeferredProcessing();
+        return event;
+    }
+
+    /**
+     * Creates extra parameters for events of shape {@link Shape#EXTRA_PARAMS}
+     *
+     * @param shape shape of event
+     * @return map of 5 extra parameters for {@link Shape#EXTRA_PARAMS}, {@code null} for other shapes
+     */
+    public static Map<String, Object> createExtraParams(Shape shape) {
+        if (shape != Shape.EXTRA_PARAMS) return null;
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("requestId", "3af2fbd7-ab40-4803-aaa1-1330467184dd");
+        result.put("tenant", "acme");
+        result.put("userId", 8374656874L);
+        result.put("durationMs", 42.5);
+        result.put("cached", Boolean.FALSE);
+        return result;
+    }
+
+    private static Throwable createCauseChain() {
+        Throwable result = null;
+
+        for (int level = CAUSE_CHAIN_LENGTH - 1; level >= 0; level--) {
+            Throwable throwable = new IllegalStateException("Failure at level " + level, result);
+
+            StackTraceElement[] stackTrace = new StackTraceElement[FRAMES_PER_THROWABLE];
+            for (int frame = 0; frame < FRAMES_PER_THROWABLE; frame++) {
+                stackTrace[frame] = new StackTraceElement(
+                        "me.ore.logback.gson.layout.benchmarks.level" + level + ".Component" + frame,
+                        "method" + frame,
+                        "Component" + frame + ".java",
+                        100 + frame
+                );
+            }
+            throwable.setStackTrace(stackTrace);
+
+            result = throwable;
+        }
+
+        return result;
+    }
+
+    private static String createLargeMessage() {
+        StringBuilder result = new StringBuilder(LARGE_MESSAGE_LENGTH);
+        String chunk = "Lorem ipsum dolor sit amet, \"consectetur\" adipiscing elit\t<tag>&amp; ";
+        while (result.length() < LARGE_MESSAGE_LENGTH) result.append(chunk);
+        result.setLength(LARGE_MESSAGE_LENGTH);
+        return result.toString();
+    }
+}
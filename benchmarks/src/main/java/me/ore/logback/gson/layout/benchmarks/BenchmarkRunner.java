@@ -0,0 +1,38 @@
+package me.ore.logback.gson.layout.benchmarks;
+
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+
+/**
+ * Runs benchmarks with GC profiler in 1, 4 and 16 threads
+ *
+ * <p>
+ *     Arguments (optional) - regular expressions of benchmarks to run; by default - all benchmarks of {@link LayoutBenchmark}
+ * </p>
+ */
+public final class BenchmarkRunner {
+    private static final int[] THREAD_COUNTS = {1, 4, 16};
+
+    private BenchmarkRunner() {}
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : THREAD_COUNTS) {
+            ChainedOptionsBuilder optionsBuilder = new OptionsBuilder()
+                    .threads(threads)
+                    .addProfiler(GCProfiler.class);
+
+            if (args.length == 0) {
+                optionsBuilder.include(LayoutBenchmark.class.getSimpleName());
+            } else {
+                for (String include : args) optionsBuilder.include(include);
+            }
+
+            new Runner(optionsBuilder.build()).run();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package me.ore.logback.gson.layout.benchmarks;
+
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import me.ore.logback.gson.layout.LogbackGsonEncoder;
+import me.ore.logback.gson.layout.LogbackGsonLayout;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Throughput of {@link LogbackGsonLayout#doLayout(ILoggingEvent)} and {@link LogbackGsonEncoder} for different shapes of log events
+ *
+ * <p>
+ *     Run with {@code -prof gc} to see allocation rate, and with different count of threads ({@code -t})
+ *     to see contention between threads; see {@link BenchmarkRunner}
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LayoutBenchmark {
+    // region State
+    private static final class NullOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {}
+
+        @Override
+        public void write(byte[] b, int off, int len) {}
+    }
+
+    /**
+     * Per-thread state: extra parameters are kept in thread-local holder, so they are set in every benchmark thread
+     */
+    @State(Scope.Thread)
+    public static class ThreadState {
+        @Setup(Level.Trial)
+        public void setUp(LayoutBenchmark benchmark) {
+            Map<String, Object> extraParams = BenchmarkEvents.createExtraParams(benchmark.shape);
+            if (extraParams != null) LogbackGsonLayout.setExtraParams(extraParams);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() { LogbackGsonLayout.removeExtraParams(); }
+    }
+
+
+    private static final int BATCH_SIZE = 256;
+
+
+    @Param
+    public BenchmarkEvents.Shape shape;
+
+    private LoggerContext loggerContext;
+    private LogbackGsonLayout layout;
+    private LogbackGsonEncoder encoder;
+    private ILoggingEvent event;
+    private List<ILoggingEvent> batch;
+    private final OutputStream outputStream = new NullOutputStream();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.loggerContext = new LoggerContext();
+
+        this.layout = new LogbackGsonLayout();
+        this.layout.setContext(this.loggerContext);
+        this.layout.start();
+
+        this.encoder = new LogbackGsonEncoder();
+        this.encoder.setContext(this.loggerContext);
+        this.encoder.setLayout(this.layout);
+        this.encoder.start();
+
+        this.event = BenchmarkEvents.create(this.loggerContext, this.shape);
+        this.batch = Collections.nCopies(BATCH_SIZE, this.event);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.encoder.stop();
+        this.layout.stop();
+        this.loggerContext.stop();
+    }
+    // endregion
+
+
+    // region Benchmarks
+    @Benchmark
+    public String doLayout(ThreadState threadState) { return this.layout.doLayout(this.event); }
+
+    @Benchmark
+    public byte[] encode(ThreadState threadState) { return this.encoder.encode(this.event); }
+
+    @Benchmark
+    public void encodeToStream(ThreadState threadState) throws IOException { this.encoder.encode(this.event, this.outputStream); }
+
+    /**
+     * Batch of {@link #BATCH_SIZE} events - compare with {@link #encodeToStream(ThreadState)} multiplied by batch size
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void encodeBatchToStream(ThreadState threadState) throws IOException { this.encoder.encodeBatch(this.batch, this.outputStream); }
+    // endregion
+}
@@ -0,0 +1,566 @@
+package me.ore.logback.gson.layout;
+
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import ch.qos.logback.core.spi.AppenderAttachable;
+import ch.qos.logback.core.spi.AppenderAttachableImpl;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+
+/**
+ * Asynchronous appender: log events are put to preallocated lock-free queue, and attached appenders
+ * (with {@link LogbackGsonLayout} or {@link LogbackGsonEncoder}) are called by background workers
+ *
+ * <p>
+ *     So JSON serialization and writing are done outside of logging thread. Data which is needed by layout
+ *     (formatted message, thread name, MDC and {@link LogbackGsonLayout#snapshotExtraParams() snapshot} of extra parameters)
+ *     is captured in logging thread; snapshot of extra parameters is put to {@link LogbackGsonLayout#EXTRA_PARAMS_HOLDER}
+ *     of worker while attached appenders are called
+ * </p>
+ *
+ * <pre>{@code
+ * <appender name="ASYNC" class="me.ore.logback.gson.layout.AsyncGsonAppender">
+ *     <queueSize>8192</queueSize>
+ *     <overflowPolicy>DROP</overflowPolicy>
+ *     <appender-ref ref="FILE"/>
+ * </appender>
+ * }</pre>
+ *
+ * <p>
+ *     With more than one {@link #getWorkerCount() worker}, order of log events in attached appenders is not guaranteed
+ * </p>
+ *
+ * <p>
+ *     Use this appender when many threads log a lot and contention on queue of Logback {@code AsyncAppender} matters,
+ *     or when {@link #getOverflowPolicy() overflow policy}, several workers or latency metrics are needed;
+ *     to keep existing configuration and behaviour of {@code AsyncAppender}, use {@link LogbackGsonAsyncAppender}
+ * </p>
+ */
+@SuppressWarnings("unused")
+public class AsyncGsonAppender extends UnsynchronizedAppenderBase<ILoggingEvent> implements AppenderAttachable<ILoggingEvent> {
+    // region Class constants
+    /**
+     * Default min capacity of queue
+     *
+     * @see #getQueueSize()
+     * @see #setQueueSize(int)
+     */
+    public static final int QUEUE_SIZE = 8192;
+
+    /**
+     * Default count of background workers
+     *
+     * @see #getWorkerCount()
+     * @see #setWorkerCount(int)
+     */
+    public static final int WORKER_COUNT = 1;
+
+    /**
+     * Default max count of log events, taken from queue by worker at once
+     *
+     * @see #getBatchSize()
+     * @see #setBatchSize(int)
+     */
+    public static final int BATCH_SIZE = 256;
+
+    /**
+     * Default policy, applied when queue is full
+     *
+     * @see #getOverflowPolicy()
+     * @see #setOverflowPolicy(LogbackGsonOverflowPolicy)
+     */
+    public static final LogbackGsonOverflowPolicy OVERFLOW_POLICY = LogbackGsonOverflowPolicy.BLOCK;
+
+    /**
+     * Default rate of sampling in policy {@link LogbackGsonOverflowPolicy#SAMPLE}
+     *
+     * @see #getSampleRate()
+     * @see #setSampleRate(int)
+     */
+    public static final int SAMPLE_RATE = 10;
+
+    /**
+     * Default max time (in milliseconds) to wait for workers, while appender stops
+     *
+     * @see #getMaxFlushTime()
+     * @see #setMaxFlushTime(int)
+     */
+    public static final int MAX_FLUSH_TIME = 1000;
+
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    // endregion
+
+
+    // region Instance properties
+    private int queueSize = QUEUE_SIZE;
+
+    /**
+     * @return min capacity of queue (real capacity is power of 2); by default - {@link #QUEUE_SIZE}
+     *
+     * @see #QUEUE_SIZE
+     * @see #setQueueSize(int)
+     */
+    public int getQueueSize() { return queueSize; }
+
+    /**
+     * Sets min capacity of queue; real capacity is rounded up to power of 2
+     *
+     * @param queueSize min capacity of queue
+     *
+     * @see #QUEUE_SIZE
+     * @see #getQueueSize()
+     */
+    public void setQueueSize(int queueSize) { this.queueSize = queueSize; }
+
+
+    private int workerCount = WORKER_COUNT;
+
+    /**
+     * @return count of background workers; by default - {@link #WORKER_COUNT}
+     *
+     * @see #WORKER_COUNT
+     * @see #setWorkerCount(int)
+     */
+    public int getWorkerCount() { return workerCount; }
+
+    /**
+     * Sets count of background workers
+     *
+     * @param workerCount count of workers; with more than one worker, order of log events is not guaranteed
+     *
+     * @see #WORKER_COUNT
+     * @see #getWorkerCount()
+     */
+    public void setWorkerCount(int workerCount) { this.workerCount = workerCount; }
+
+
+    private int batchSize = BATCH_SIZE;
+
+    /**
+     * @return max count of log events, taken from queue by worker at once; by default - {@link #BATCH_SIZE}
+     *
+     * @see #BATCH_SIZE
+     * @see #setBatchSize(int)
+     */
+    public int getBatchSize() { return batchSize; }
+
+    /**
+     * Sets max count of log events, taken from queue by worker at once
+     *
+     * @param batchSize max count of log events
+     *
+     * @see #BATCH_SIZE
+     * @see #getBatchSize()
+     */
+    public void setBatchSize(int batchSize) { this.batchSize = batchSize; }
+
+
+    private LogbackGsonOverflowPolicy overflowPolicy = OVERFLOW_POLICY;
+
+    /**
+     * @return policy, applied when queue is full; by default - {@link #OVERFLOW_POLICY}
+     *
+     * @see #OVERFLOW_POLICY
+     * @see #setOverflowPolicy(LogbackGsonOverflowPolicy)
+     */
+    public LogbackGsonOverflowPolicy getOverflowPolicy() { return overflowPolicy; }
+
+    /**
+     * Sets policy, applied when queue is full
+     *
+     * @param overflowPolicy new policy
+     *
+     * @see #OVERFLOW_POLICY
+     * @see #getOverflowPolicy()
+     */
+    public void setOverflowPolicy(LogbackGsonOverflowPolicy overflowPolicy) { this.overflowPolicy = overflowPolicy; }
+
+
+    private int sampleRate = SAMPLE_RATE;
+
+    /**
+     * @return in policy {@link LogbackGsonOverflowPolicy#SAMPLE} - one of how many log events is queued, when queue is almost full;
+     * by default - {@link #SAMPLE_RATE}
+     *
+     * @see #SAMPLE_RATE
+     * @see #setSampleRate(int)
+     */
+    public int getSampleRate() { return sampleRate; }
+
+    /**
+     * Sets, one of how many log events is queued in policy {@link LogbackGsonOverflowPolicy#SAMPLE}, when queue is almost full
+     *
+     * @param sampleRate rate of sampling, must be positive
+     *
+     * @see #SAMPLE_RATE
+     * @see #getSampleRate()
+     */
+    public void setSampleRate(int sampleRate) { this.sampleRate = sampleRate; }
+
+
+    private boolean includeCallerData = false;
+
+    /**
+     * @return {@code true} if caller data of log events is captured in logging thread; by default - {@code false}
+     *
+     * @see #setIncludeCallerData(boolean)
+     */
+    public boolean isIncludeCallerData() { return includeCallerData; }
+
+    /**
+     * Sets whether caller data of log events is captured in logging thread
+     *
+     * @param includeCallerData {@code true} to capture caller data
+     *
+     * @see #isIncludeCallerData()
+     */
+    public void setIncludeCallerData(boolean includeCallerData) { this.includeCallerData = includeCallerData; }
+
+
+    private int maxFlushTime = MAX_FLUSH_TIME;
+
+    /**
+     * @return max time (in milliseconds) to wait for workers, while appender stops; by default - {@link #MAX_FLUSH_TIME}
+     *
+     * @see #MAX_FLUSH_TIME
+     * @see #setMaxFlushTime(int)
+     */
+    public int getMaxFlushTime() { return maxFlushTime; }
+
+    /**
+     * Sets max time (in milliseconds) to wait for workers, while appender stops
+     *
+     * @param maxFlushTime max time in milliseconds; {@code 0} - wait without limit
+     *
+     * @see #MAX_FLUSH_TIME
+     * @see #getMaxFlushTime()
+     */
+    public void setMaxFlushTime(int maxFlushTime) { this.maxFlushTime = maxFlushTime; }
+    // endregion
+
+
+    // region Metrics
+    private final LongAdder enqueuedCount = new LongAdder();
+    private final LongAdder droppedCount = new LongAdder();
+    private final LongAdder sampledOutCount = new LongAdder();
+    private final LongAdder processedCount = new LongAdder();
+    private final LongAdder totalLatencyNanos = new LongAdder();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    /**
+     * @return approximate count of log events in queue
+     */
+    public int getQueueDepth() {
+        EventRingBuffer queue = this.queue;
+        return (queue == null ? 0 : queue.size());
+    }
+
+    /**
+     * @return real capacity of queue; {@code 0} - if appender is not started
+     */
+    public int getQueueCapacity() {
+        EventRingBuffer queue = this.queue;
+        return (queue == null ? 0 : queue.capacity());
+    }
+
+    /**
+     * @return count of queued log events since appender created
+     */
+    public long getEnqueuedCount() { return this.enqueuedCount.sum(); }
+
+    /**
+     * @return count of log events, dropped because queue was full, since appender created
+     */
+    public long getDroppedCount() { return this.droppedCount.sum(); }
+
+    /**
+     * @return count of log events, dropped by sampling ({@link LogbackGsonOverflowPolicy#SAMPLE}), since appender created
+     */
+    public long getSampledOutCount() { return this.sampledOutCount.sum(); }
+
+    /**
+     * @return count of log events, passed to attached appenders, since appender created
+     */
+    public long getProcessedCount() { return this.processedCount.sum(); }
+
+    /**
+     * @return average time (in nanoseconds) which log events spent in queue
+     */
+    public long getAverageLatencyNanos() {
+        long count = this.processedCount.sum();
+        return (count == 0 ? 0 : this.totalLatencyNanos.sum() / count);
+    }
+
+    /**
+     * @return max time (in nanoseconds) which log event spent in queue
+     */
+    public long getMaxLatencyNanos() { return this.maxLatencyNanos.get(); }
+
+    private void recordLatency(long totalNanos, long maxNanos, int count) {
+        this.processedCount.add(count);
+        this.totalLatencyNanos.add(totalNanos);
+
+        long currentMax;
+        while ((currentMax = this.maxLatencyNanos.get()) < maxNanos) {
+            if (this.maxLatencyNanos.compareAndSet(currentMax, maxNanos)) break;
+        }
+    }
+    // endregion
+
+
+    // region Attached appenders
+    private final AppenderAttachableImpl<ILoggingEvent> appenders = new AppenderAttachableImpl<>();
+    private int appenderCount = 0;
+
+    @Override
+    public void addAppender(Appender<ILoggingEvent> newAppender) {
+        this.appenderCount++;
+        this.addInfo("Attaching appender named [" + newAppender.getName() + "] to AsyncGsonAppender.");
+        this.appenders.addAppender(newAppender);
+    }
+
+    @Override
+    public Iterator<Appender<ILoggingEvent>> iteratorForAppenders() { return this.appenders.iteratorForAppenders(); }
+
+    @Override
+    public Appender<ILoggingEvent> getAppender(String name) { return this.appenders.getAppender(name); }
+
+    @Override
+    public boolean isAttached(Appender<ILoggingEvent> appender) { return this.appenders.isAttached(appender); }
+
+    @Override
+    public void detachAndStopAllAppenders() { this.appenders.detachAndStopAllAppenders(); }
+
+    @Override
+    public boolean detachAppender(Appender<ILoggingEvent> appender) { return this.appenders.detachAppender(appender); }
+
+    @Override
+    public boolean detachAppender(String name) { return this.appenders.detachAppender(name); }
+    // endregion
+
+
+    // region Workers
+    private final class Worker extends Thread {
+        private final ILoggingEvent[] events;
+        private final ExtraParamsSnapshot[] extraParams;
+        private final long[] enqueueNanos;
+        private volatile boolean sleeping = false;
+
+        private Worker(String name, int batchSize) {
+            super(name);
+            this.setDaemon(true);
+            this.events = new ILoggingEvent[batchSize];
+            this.extraParams = new ExtraParamsSnapshot[batchSize];
+            this.enqueueNanos = new long[batchSize];
+        }
+
+        @Override
+        public void run() {
+            EventRingBuffer queue = AsyncGsonAppender.this.queue;
+            try {
+                while (true) {
+                    int count = queue.drain(this.events, this.extraParams, this.enqueueNanos, this.events.length);
+                    if (count > 0) {
+                        this.process(count);
+                        continue;
+                    }
+
+                    if (!AsyncGsonAppender.this.running) {
+                        if (queue.isEmpty()) break;
+                        continue;
+                    }
+
+                    // Producers wake sleeping workers, see "wakeWorker()"
+                    this.sleeping = true;
+                    AsyncGsonAppender.this.sleepingWorkers.incrementAndGet();
+                    if (queue.isEmpty() && AsyncGsonAppender.this.running) LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                    AsyncGsonAppender.this.sleepingWorkers.decrementAndGet();
+                    this.sleeping = false;
+                }
+            } catch (Throwable e) {
+                AsyncGsonAppender.this.addError("Worker [" + this.getName() + "] stopped unexpectedly", e);
+            } finally {
+                AsyncGsonAppender.this.liveWorkers.decrementAndGet();
+                LogbackGsonLayout.removeExtraParams();
+            }
+        }
+
+        private void process(int count) {
+            long now = System.nanoTime();
+            long totalLatency = 0;
+            long maxLatency = 0;
+
+            for (int i = 0; i < count; i++) {
+                ILoggingEvent event = this.events[i];
+                ExtraParamsSnapshot extraParams = this.extraParams[i];
+                long latency = now - this.enqueueNanos[i];
+                this.events[i] = null;
+                this.extraParams[i] = null;
+
+                totalLatency += latency;
+                if (latency > maxLatency) maxLatency = latency;
+
+                if (extraParams == null) {
+                    LogbackGsonLayout.removeExtraParams();
+                } else {
+                    LogbackGsonLayout.setExtraParams(extraParams);
+                }
+
+                try {
+                    AsyncGsonAppender.this.appenders.appendLoopOnAppenders(event);
+                } catch (Throwable e) {
+                    // Errors too (e.g. "StackOverflowError" in attached appender) - worker must stay alive, or blocked producers wait forever
+                    AsyncGsonAppender.this.addError("Attached appender failed", e);
+                }
+            }
+
+            LogbackGsonLayout.removeExtraParams();
+            AsyncGsonAppender.this.recordLatency(totalLatency, maxLatency, count);
+        }
+    }
+
+    private volatile EventRingBuffer queue;
+    private volatile boolean running = false;
+    private Worker[] workers;
+    private final AtomicInteger liveWorkers = new AtomicInteger();
+    private final AtomicInteger sleepingWorkers = new AtomicInteger();
+    private final AtomicLong sampleCounter = new AtomicLong();
+    private int samplingThreshold;
+
+    private void wakeWorker() {
+        for (Worker worker : this.workers) {
+            if (worker.sleeping) {
+                LockSupport.unpark(worker);
+                return;
+            }
+        }
+    }
+    // endregion
+
+
+    // region Lifecycle
+    @Override
+    public void start() {
+        if (this.isStarted()) return;
+
+        if (this.appenderCount == 0) {
+            this.addError("No attached appenders found.");
+            return;
+        }
+        if (this.getQueueSize() < 1) {
+            this.addError("Invalid queue size [" + this.getQueueSize() + "]");
+            return;
+        }
+        if (this.getWorkerCount() < 1) {
+            this.addError("Invalid worker count [" + this.getWorkerCount() + "]");
+            return;
+        }
+        if (this.getBatchSize() < 1) {
+            this.addError("Invalid batch size [" + this.getBatchSize() + "]");
+            return;
+        }
+        if (this.getSampleRate() < 1) {
+            this.addError("Invalid sample rate [" + this.getSampleRate() + "]");
+            return;
+        }
+
+        EventRingBuffer queue = new EventRingBuffer(this.getQueueSize());
+        this.queue = queue;
+        this.samplingThreshold = queue.capacity() - queue.capacity() / 4;
+        this.running = true;
+
+        this.workers = new Worker[this.getWorkerCount()];
+        for (int i = 0; i < this.workers.length; i++) {
+            this.workers[i] = new Worker("AsyncGsonAppender-Worker-" + this.getName() + "-" + i, this.getBatchSize());
+        }
+        this.liveWorkers.set(this.workers.length);
+        for (Worker worker : this.workers) worker.start();
+
+        super.start();
+    }
+
+    @Override
+    public void stop() {
+        if (!this.isStarted()) return;
+
+        // New log events are not accepted since this moment; workers drain queue and exit
+        super.stop();
+        this.running = false;
+        for (Worker worker : this.workers) LockSupport.unpark(worker);
+
+        long deadline = System.currentTimeMillis() + this.getMaxFlushTime();
+        for (Worker worker : this.workers) {
+            try {
+                if (this.getMaxFlushTime() <= 0) {
+                    worker.join();
+                } else {
+                    worker.join(Math.max(1, deadline - System.currentTimeMillis()));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                this.addError("Interrupted while waiting for worker to finish", e);
+                break;
+            }
+
+            if (worker.isAlive()) {
+                this.addWarn("Max flush time reached; " + this.getQueueDepth() + " queued log events may be lost");
+            }
+        }
+
+        this.appenders.detachAndStopAllAppenders();
+    }
+    // endregion
+
+
+    // region Appending
+    @Override
+    protected void append(ILoggingEvent event) {
+        event.prepareForDeferredProcessing();
+        if (this.includeCallerData) event.getCallerData();
+
+        EventRingBuffer queue = this.queue;
+        LogbackGsonOverflowPolicy overflowPolicy = this.overflowPolicy;
+        if (overflowPolicy == LogbackGsonOverflowPolicy.SAMPLE && queue.size() >= this.samplingThreshold
+                && this.sampleCounter.getAndIncrement() % this.sampleRate != 0) {
+            this.sampledOutCount.increment();
+            return;
+        }
+
+        // Map of logging thread can be changed (or cleared) right after logging - so snapshot is queued
+        ExtraParamsSnapshot extraParams = LogbackGsonLayout.snapshotExtraParams();
+        long now = System.nanoTime();
+
+        if (!queue.offer(event, extraParams, now)) {
+            if (overflowPolicy != LogbackGsonOverflowPolicy.BLOCK || !this.offerBlocking(queue, event, extraParams, now)) {
+                this.droppedCount.increment();
+                return;
+            }
+        }
+
+        this.enqueuedCount.increment();
+        if (this.sleepingWorkers.get() > 0) this.wakeWorker();
+    }
+
+    // Waits until queue has free space; returns "false" if appender stopped while waiting, or if no worker is alive to free space
+    private boolean offerBlocking(EventRingBuffer queue, ILoggingEvent event, ExtraParamsSnapshot extraParams, long enqueueNanos) {
+        do {
+            if (this.sleepingWorkers.get() > 0) this.wakeWorker();
+            LockSupport.parkNanos(this, BLOCK_PARK_NANOS);
+
+            if (queue.offer(event, extraParams, enqueueNanos)) return true;
+        } while (this.isStarted() && this.liveWorkers.get() > 0);
+
+        return false;
+    }
+    // endregion
+}
@@ -0,0 +1,232 @@
+package me.ore.logback.gson.layout;
+
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+/**
+ * Provider of output buffers of layout
+ *
+ * <p>
+ *     Capacity of new buffers follows 95th percentile of sampled sizes of released buffers;
+ *     buffers with capacity over limit are not reused, so one huge log event does not pin memory
+ * </p>
+ *
+ * @see LogbackGsonBufferReuse
+ */
+abstract class BufferProvider {
+    // region Class constants
+    // Size of one of 16 released buffers is sampled
+    private static final int SAMPLE_RATE = 16;
+    // Capacity of new buffers is recalculated (and older samples are halved) after every 256 samples
+    private static final int SAMPLES_PER_UPDATE = 256;
+    private static final int SIZE_BUCKET_COUNT = 32;
+
+    // "Thread.isVirtual()" - since Java 21
+    private static final MethodHandle IS_VIRTUAL = findIsVirtual();
+
+    private static MethodHandle findIsVirtual() {
+        try {
+            return MethodHandles.publicLookup().findVirtual(Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    private static boolean isVirtual(Thread thread) {
+        if (IS_VIRTUAL == null) return false;
+
+        try {
+            return (boolean) IS_VIRTUAL.invokeExact(thread);
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+    // endregion
+
+
+    // region Implementations
+    private static final class ThreadLocalProvider extends BufferProvider {
+        private static final class Holder {
+            private JsonOutputBuffer buffer;
+            private boolean inUse = false;
+        }
+
+        // Holder of virtual threads - they take buffers from pool
+        private static final Holder VIRTUAL = new Holder();
+
+        private final Pool pool;
+        private final ThreadLocal<Holder> holder = ThreadLocal.withInitial(() -> (isVirtual(Thread.currentThread()) ? VIRTUAL : new Holder()));
+
+        private ThreadLocalProvider(int poolSize, int maxRetainedCapacity) {
+            super(maxRetainedCapacity);
+            this.pool = new Pool(this, poolSize, maxRetainedCapacity);
+        }
+
+        @Override
+        JsonOutputBuffer acquire() {
+            Holder holder = this.holder.get();
+            if (holder == VIRTUAL) return this.pool.acquire();
+            // Buffer of current thread is already in use (for example, some type adapter generates logs during serialization)
+            if (holder.inUse) return this.newBuffer();
+
+            if (holder.buffer == null) holder.buffer = this.newBuffer();
+            holder.inUse = true;
+            holder.buffer.reset();
+            return holder.buffer;
+        }
+
+        @Override
+        void release(JsonOutputBuffer buffer) {
+            Holder holder = this.holder.get();
+            if (holder == VIRTUAL) {
+                this.pool.release(buffer);
+                return;
+            }
+
+            this.sample(buffer);
+            if (holder.buffer != buffer) return;
+
+            holder.inUse = false;
+            // Buffer, grown by huge log event, is replaced later with buffer of usual size
+            if (buffer.capacity() > this.maxRetainedCapacity) holder.buffer = null;
+        }
+    }
+
+    private static final class Pool extends BufferProvider {
+        private final BufferProvider sizer;
+        private final AtomicReferenceArray<JsonOutputBuffer> slots;
+
+        /**
+         * @param sizer provider, which samples sizes and calculates capacity of new buffers; {@code null} - this pool itself
+         */
+        private Pool(BufferProvider sizer, int size, int maxRetainedCapacity) {
+            super(maxRetainedCapacity);
+            this.sizer = (sizer == null ? this : sizer);
+            this.slots = new AtomicReferenceArray<>(size);
+        }
+
+        // Threads start search from different slots
+        private int startSlot() { return (int) ((Thread.currentThread().getId() & Integer.MAX_VALUE) % this.slots.length()); }
+
+        @Override
+        JsonOutputBuffer acquire() {
+            int length = this.slots.length();
+            int start = this.startSlot();
+            for (int i = 0; i < length; i++) {
+                int index = (start + i) % length;
+                JsonOutputBuffer buffer = this.slots.get(index);
+                if (buffer != null && this.slots.compareAndSet(index, buffer, null)) {
+                    buffer.reset();
+                    return buffer;
+                }
+            }
+
+            return this.sizer.newBuffer();
+        }
+
+        @Override
+        void release(JsonOutputBuffer buffer) {
+            this.sizer.sample(buffer);
+            if (buffer.capacity() > this.maxRetainedCapacity) return;
+
+            int length = this.slots.length();
+            int start = this.startSlot();
+            for (int i = 0; i < length; i++) {
+                int index = (start + i) % length;
+                if (this.slots.get(index) == null && this.slots.compareAndSet(index, null, buffer)) return;
+            }
+            // Pool is full - buffer is dropped
+        }
+    }
+
+    private static final class None extends BufferProvider {
+        private None() { super(Integer.MAX_VALUE); }
+
+        @Override
+        JsonOutputBuffer acquire() { return this.newBuffer(); }
+
+        @Override
+        void release(JsonOutputBuffer buffer) { this.sample(buffer); }
+    }
+    // endregion
+
+
+    /**
+     * @param reuse mode of reuse of buffers
+     * @param poolSize max count of buffers in pool
+     * @param maxRetainedCapacity max capacity of reused buffers
+     * @return new provider
+     */
+    static BufferProvider create(LogbackGsonBufferReuse reuse, int poolSize, int maxRetainedCapacity) {
+        switch (reuse) {
+            case THREAD_LOCAL: return new ThreadLocalProvider(poolSize, maxRetainedCapacity);
+            case POOL: return new Pool(null, poolSize, maxRetainedCapacity);
+            case NONE: return new None();
+            default: throw new IllegalArgumentException("Unknown buffer reuse mode \"" + reuse + "\"");
+        }
+    }
+
+
+    final int maxRetainedCapacity;
+
+    private final AtomicIntegerArray sizeCounts = new AtomicIntegerArray(SIZE_BUCKET_COUNT);
+    private final AtomicInteger sampleCount = new AtomicInteger();
+    private volatile int initialCapacity = JsonOutputBuffer.DEFAULT_CAPACITY;
+
+    private BufferProvider(int maxRetainedCapacity) { this.maxRetainedCapacity = maxRetainedCapacity; }
+
+
+    // region Sizing
+    /**
+     * @return new buffer with capacity for 95% of recent log events
+     */
+    final JsonOutputBuffer newBuffer() { return new JsonOutputBuffer(this.initialCapacity); }
+
+    /**
+     * @return capacity of new buffers
+     */
+    final int getInitialCapacity() { return this.initialCapacity; }
+
+    final void sample(JsonOutputBuffer buffer) {
+        if (ThreadLocalRandom.current().nextInt(SAMPLE_RATE) != 0) return;
+
+        this.sizeCounts.incrementAndGet(Log2Histogram.bucket(buffer.size(), SIZE_BUCKET_COUNT));
+        if (this.sampleCount.incrementAndGet() % SAMPLES_PER_UPDATE == 0) this.updateInitialCapacity();
+    }
+
+    private void updateInitialCapacity() {
+        long[] counts = new long[SIZE_BUCKET_COUNT];
+        for (int i = 0; i < SIZE_BUCKET_COUNT; i++) {
+            counts[i] = this.sizeCounts.get(i);
+            // Older samples weigh less and less
+            this.sizeCounts.getAndUpdate(i, count -> count >> 1);
+        }
+
+        long p95 = Log2Histogram.percentile(counts, 0.95);
+        long capacity = Math.min(p95 + 1, this.maxRetainedCapacity);
+        this.initialCapacity = (int) Math.max(capacity, 16);
+    }
+    // endregion
+
+
+    /**
+     * Returns empty buffer
+     *
+     * @return empty buffer; must be returned by {@link #release(JsonOutputBuffer)}
+     */
+    abstract JsonOutputBuffer acquire();
+
+    /**
+     * Returns buffer, got from {@link #acquire()}
+     *
+     * @param buffer buffer to return
+     */
+    abstract void release(JsonOutputBuffer buffer);
+}
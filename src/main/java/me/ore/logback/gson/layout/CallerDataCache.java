@@ -0,0 +1,73 @@
+package me.ore.logback.gson.layout;
+
+
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Bounded cache of encoded JSON objects of call sites (like {@code {"class":"a.B","method":"c","file":"B.java","line":12}}),
+ * prepared in {@link LogbackGsonLayout#start()}
+ *
+ * <p>
+ *     Log events are generated by limited set of call sites, so every call site is encoded only once
+ * </p>
+ */
+final class CallerDataCache {
+    private static final byte[] NAME_CLASS = JsonOutputBuffer.encodeName("class", false);
+    private static final byte[] NAME_METHOD = JsonOutputBuffer.encodeName("method", false);
+    private static final byte[] NAME_FILE = JsonOutputBuffer.encodeName("file", false);
+    private static final byte[] NAME_LINE = JsonOutputBuffer.encodeName("line", false);
+
+
+    private final boolean htmlSafe;
+    private final int cacheSize;
+    private final ConcurrentHashMap<StackTraceElement, byte[]> encodedCallSites;
+
+    /**
+     * @param htmlSafe if {@code true}, HTML characters will be escaped
+     * @param cacheSize max count of cached call sites; {@code 0} - cache disabled
+     */
+    CallerDataCache(boolean htmlSafe, int cacheSize) {
+        this.htmlSafe = htmlSafe;
+        this.cacheSize = cacheSize;
+        this.encodedCallSites = (cacheSize > 0 ? new ConcurrentHashMap<>() : null);
+    }
+
+    /**
+     * @param callSite call site
+     * @return encoded JSON object of {@code callSite}
+     */
+    byte[] encode(StackTraceElement callSite) {
+        if (this.encodedCallSites == null) return this.encodeNow(callSite);
+
+        byte[] result = this.encodedCallSites.get(callSite);
+        if (result != null) return result;
+
+        result = this.encodeNow(callSite);
+
+        // When cache is full, new call sites are not cached - so rare call sites do not evict frequent ones
+        if (this.encodedCallSites.size() < this.cacheSize) this.encodedCallSites.put(callSite, result);
+
+        return result;
+    }
+
+    private byte[] encodeNow(StackTraceElement callSite) {
+        JsonOutputBuffer buffer = new JsonOutputBuffer(128);
+        buffer.setHtmlSafe(this.htmlSafe);
+
+        buffer.beginObject();
+        buffer.name(NAME_CLASS);
+        buffer.value(callSite.getClassName());
+        buffer.name(NAME_METHOD);
+        buffer.value(callSite.getMethodName());
+        if (callSite.getFileName() != null) {
+            buffer.name(NAME_FILE);
+            buffer.value(callSite.getFileName());
+        }
+        buffer.name(NAME_LINE);
+        buffer.value(callSite.getLineNumber());
+        buffer.endObject();
+
+        return buffer.toByteArray();
+    }
+}
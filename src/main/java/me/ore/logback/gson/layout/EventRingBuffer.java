@@ -0,0 +1,140 @@
+package me.ore.logback.gson.layout;
+
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * Bounded lock-free queue of log events, for many producers and many consumers
+ *
+ * <p>
+ *     Array of slots is allocated once; every slot has sequence number, which tells whether slot is free for producer
+ *     or filled for consumer (algorithm of bounded MPMC queue by Dmitry Vyukov)
+ * </p>
+ */
+final class EventRingBuffer {
+    private static final class Slot {
+        private ILoggingEvent event;
+        private ExtraParamsSnapshot extraParams;
+        private long enqueueNanos;
+    }
+
+
+    private final int mask;
+    private final Slot[] slots;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+
+
+    /**
+     * @param capacity min capacity of queue; rounded up to power of 2
+     */
+    EventRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+
+        this.mask = size - 1;
+        this.slots = new Slot[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            this.slots[i] = new Slot();
+            this.sequences.set(i, i);
+        }
+    }
+
+
+    /**
+     * @return capacity of queue
+     */
+    int capacity() { return this.slots.length; }
+
+    /**
+     * @return approximate count of queued log events
+     */
+    int size() {
+        long size = this.tail.get() - this.head.get();
+        return (int) Math.max(0, Math.min(size, this.slots.length));
+    }
+
+    /**
+     * @return {@code true} if queue (approximately) is empty
+     */
+    boolean isEmpty() { return this.tail.get() == this.head.get(); }
+
+    /**
+     * Adds log event to queue
+     *
+     * @param event log event
+     * @param extraParams snapshot of extra parameters, can be {@code null}
+     * @param enqueueNanos time of adding, from {@link System#nanoTime()}
+     * @return {@code false} if queue is full
+     */
+    boolean offer(ILoggingEvent event, ExtraParamsSnapshot extraParams, long enqueueNanos) {
+        long position = this.tail.get();
+        while (true) {
+            int index = (int) position & this.mask;
+            long difference = this.sequences.get(index) - position;
+
+            if (difference == 0) {
+                if (this.tail.compareAndSet(position, position + 1)) {
+                    Slot slot = this.slots[index];
+                    slot.event = event;
+                    slot.extraParams = extraParams;
+                    slot.enqueueNanos = enqueueNanos;
+                    // Publishes slot to consumers
+                    this.sequences.lazySet(index, position + 1);
+                    return true;
+                }
+                position = this.tail.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = this.tail.get();
+            }
+        }
+    }
+
+    /**
+     * Takes up to {@code max} log events from queue; taken slots are cleared and released immediately
+     *
+     * @param events target array of log events
+     * @param extraParams target array of snapshots of extra parameters
+     * @param enqueueNanos target array of times of adding
+     * @param max max count of taken log events; must not be greater than length of target arrays
+     * @return count of taken log events
+     */
+    int drain(ILoggingEvent[] events, ExtraParamsSnapshot[] extraParams, long[] enqueueNanos, int max) {
+        int count = 0;
+        long position = this.head.get();
+        while (count < max) {
+            int index = (int) position & this.mask;
+            long difference = this.sequences.get(index) - (position + 1);
+
+            if (difference == 0) {
+                if (this.head.compareAndSet(position, position + 1)) {
+                    Slot slot = this.slots[index];
+                    events[count] = slot.event;
+                    extraParams[count] = slot.extraParams;
+                    enqueueNanos[count] = slot.enqueueNanos;
+                    count++;
+
+                    slot.event = null;
+                    slot.extraParams = null;
+                    // Returns slot to producers
+                    this.sequences.lazySet(index, position + this.mask + 1);
+                    position++;
+                } else {
+                    position = this.head.get();
+                }
+            } else if (difference < 0) {
+                break;
+            } else {
+                position = this.head.get();
+            }
+        }
+        return count;
+    }
+}
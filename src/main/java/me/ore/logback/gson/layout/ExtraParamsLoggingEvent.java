@@ -0,0 +1,98 @@
+package me.ore.logback.gson.layout;
+
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.IThrowableProxy;
+import ch.qos.logback.classic.spi.LoggerContextVO;
+import org.slf4j.Marker;
+import org.slf4j.event.KeyValuePair;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Log event with snapshot of extra parameters; all other data is taken from wrapped log event
+ *
+ * @see LogbackGsonLayout#captureExtraParams(ILoggingEvent)
+ */
+final class ExtraParamsLoggingEvent implements ILoggingEvent, LogbackGsonExtraParamsCarrier {
+    private final ILoggingEvent event;
+    private final Map<String, Object> extraParams;
+
+    ExtraParamsLoggingEvent(ILoggingEvent event, Map<String, Object> extraParams) {
+        this.event = event;
+        this.extraParams = extraParams;
+    }
+
+
+    @Override
+    public Map<String, Object> getExtraParams() { return this.extraParams; }
+
+    @Override
+    public String getThreadName() { return this.event.getThreadName(); }
+
+    @Override
+    public Level getLevel() { return this.event.getLevel(); }
+
+    @Override
+    public String getMessage() { return this.event.getMessage(); }
+
+    @Override
+    public Object[] getArgumentArray() { return this.event.getArgumentArray(); }
+
+    @Override
+    public String getFormattedMessage() { return this.event.getFormattedMessage(); }
+
+    @Override
+    public String getLoggerName() { return this.event.getLoggerName(); }
+
+    @Override
+    public LoggerContextVO getLoggerContextVO() { return this.event.getLoggerContextVO(); }
+
+    @Override
+    public IThrowableProxy getThrowableProxy() { return this.event.getThrowableProxy(); }
+
+    @Override
+    public StackTraceElement[] getCallerData() { return this.event.getCallerData(); }
+
+    @Override
+    public boolean hasCallerData() { return this.event.hasCallerData(); }
+
+    @SuppressWarnings("deprecation")
+    @Override
+    public Marker getMarker() { return this.event.getMarker(); }
+
+    @Override
+    public List<Marker> getMarkerList() { return this.event.getMarkerList(); }
+
+    @Override
+    public Map<String, String> getMDCPropertyMap() { return this.event.getMDCPropertyMap(); }
+
+    @SuppressWarnings("deprecation")
+    @Override
+    public Map<String, String> getMdc() { return this.event.getMdc(); }
+
+    @Override
+    public long getTimeStamp() { return this.event.getTimeStamp(); }
+
+    @Override
+    public int getNanoseconds() { return this.event.getNanoseconds(); }
+
+    @Override
+    public Instant getInstant() { return this.event.getInstant(); }
+
+    @Override
+    public long getSequenceNumber() { return this.event.getSequenceNumber(); }
+
+    @Override
+    public List<KeyValuePair> getKeyValuePairs() { return this.event.getKeyValuePairs(); }
+
+    @Override
+    public void prepareForDeferredProcessing() { this.event.prepareForDeferredProcessing(); }
+
+    @Override
+    public String toString() { return this.event.toString(); }
+}
@@ -0,0 +1,352 @@
+package me.ore.logback.gson.layout;
+
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+
+/**
+ * Reusable map of extra parameters of one thread, used by {@link LogbackGsonLayout#useExtraParamsMap(java.util.function.Function)}
+ *
+ * <p>
+ *     Entries are kept in arrays, in order of adding; there is one instance of this map per thread, and its entries
+ *     are cleared when scope of {@code useExtraParamsMap} ends - so scopes do not create new maps
+ * </p>
+ *
+ * <p>
+ *     Scopes can be nested: entries of inner scope are added over entries of outer scope (without copying them),
+ *     inner entry hides outer entry with same key; when inner scope ends, outer entries become visible again
+ * </p>
+ *
+ * <p>
+ *     Instances of this class are not thread-safe and must not be used outside of scope, in which they have been got
+ * </p>
+ */
+public final class ExtraParamsMap extends AbstractMap<String, Object> {
+    private static final int INITIAL_CAPACITY = 16;
+    // Larger arrays are dropped when outermost scope ends
+    private static final int MAX_RETAINED_CAPACITY = 256;
+
+    // Value of entry, which hides removed entry of outer scope
+    private static final Object REMOVED = new Object();
+
+    private static final ThreadLocal<ExtraParamsMap> POOL = ThreadLocal.withInitial(ExtraParamsMap::new);
+
+    /**
+     * @return map of current thread
+     */
+    static ExtraParamsMap forCurrentThread() { return POOL.get(); }
+
+
+    private String[] keys = new String[INITIAL_CAPACITY];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    private Object[] values = new Object[INITIAL_CAPACITY];
+    // For every entry - whether it is hidden by entry of inner scope with same key
+    private boolean[] hidden = new boolean[INITIAL_CAPACITY];
+    private int rawSize = 0;
+    // Count of entries which are not visible: hidden entries of outer scopes and markers of removal
+    private int hiddenCount = 0;
+
+    private int[] scopeStarts = new int[4];
+    private int[] scopeHiddenCounts = new int[4];
+    // For every scope - whether its entries hide entries of outer scopes
+    private boolean[] scopeHidesOuter = new boolean[4];
+    private int depth = 0;
+
+    private ExtraParamsSnapshot snapshot = null;
+
+    private ExtraParamsMap() {}
+
+
+    // region Scopes
+    /**
+     * Starts new scope; entries added after this call are removed by {@link #exitScope()}
+     */
+    void enterScope() {
+        if (this.depth == this.scopeStarts.length) {
+            this.scopeStarts = Arrays.copyOf(this.scopeStarts, this.depth << 1);
+            this.scopeHiddenCounts = Arrays.copyOf(this.scopeHiddenCounts, this.depth << 1);
+            this.scopeHidesOuter = Arrays.copyOf(this.scopeHidesOuter, this.depth << 1);
+        }
+
+        this.scopeStarts[this.depth] = this.rawSize;
+        this.scopeHiddenCounts[this.depth] = this.hiddenCount;
+        this.scopeHidesOuter[this.depth] = false;
+        this.depth++;
+    }
+
+    /**
+     * Ends current scope - removes entries added in it
+     */
+    void exitScope() {
+        if (this.depth == 0) throw new IllegalStateException("No active scope");
+
+        this.depth--;
+        int start = this.scopeStarts[this.depth];
+        if (start != this.rawSize) {
+            if (this.scopeHidesOuter[this.depth]) {
+                // Entries of outer scopes, hidden by entries of this scope, become visible again
+                for (int i = start; i < this.rawSize; i++) {
+                    int index = this.lastIndexOf(this.keys[i], this.hashes[i], start);
+                    if (index >= 0) this.hidden[index] = false;
+                }
+            }
+
+            Arrays.fill(this.keys, start, this.rawSize, null);
+            Arrays.fill(this.values, start, this.rawSize, null);
+            Arrays.fill(this.hidden, start, this.rawSize, false);
+            this.rawSize = start;
+            this.snapshot = null;
+        }
+        this.hiddenCount = this.scopeHiddenCounts[this.depth];
+
+        if (this.depth == 0 && this.keys.length > MAX_RETAINED_CAPACITY) {
+            this.keys = new String[INITIAL_CAPACITY];
+            this.hashes = new int[INITIAL_CAPACITY];
+            this.values = new Object[INITIAL_CAPACITY];
+            this.hidden = new boolean[INITIAL_CAPACITY];
+        }
+    }
+
+    private int currentScopeStart() { return (this.depth == 0 ? 0 : this.scopeStarts[this.depth - 1]); }
+
+    // Entry of outer scope becomes hidden by entry of current scope
+    private void hide(int index) {
+        this.hidden[index] = true;
+        if (this.depth > 0) this.scopeHidesOuter[this.depth - 1] = true;
+    }
+    // endregion
+
+
+    // region Raw access
+    /**
+     * @return count of stored entries, including hidden ones
+     */
+    int rawSize() { return this.rawSize; }
+
+    /**
+     * @param index index of stored entry
+     * @return key of entry
+     */
+    String rawKey(int index) { return this.keys[index]; }
+
+    /**
+     * @param index index of stored entry
+     * @return value of entry
+     */
+    Object rawValue(int index) { return this.values[index]; }
+
+    /**
+     * @param index index of stored entry
+     * @return {@code true} if entry is visible - not removed and not hidden by entry of inner scope
+     */
+    boolean isVisible(int index) { return (this.hiddenCount == 0 || (!this.hidden[index] && this.values[index] != REMOVED)); }
+
+    // Index of newest entry with "key"; -1 - not found
+    private int lastIndexOf(Object key, int hash) {
+        for (int i = this.rawSize - 1; i >= 0; i--) {
+            if (this.hashes[i] == hash && this.keys[i].equals(key)) return i;
+        }
+        return -1;
+    }
+
+    private void append(String key, int hash, Object value) {
+        if (this.rawSize == this.keys.length) {
+            int capacity = this.rawSize << 1;
+            this.keys = Arrays.copyOf(this.keys, capacity);
+            this.hashes = Arrays.copyOf(this.hashes, capacity);
+            this.values = Arrays.copyOf(this.values, capacity);
+            this.hidden = Arrays.copyOf(this.hidden, capacity);
+        }
+
+        this.keys[this.rawSize] = key;
+        this.hashes[this.rawSize] = hash;
+        this.values[this.rawSize] = value;
+        this.rawSize++;
+    }
+
+    /**
+     * @return immutable snapshot of visible entries; same snapshot is returned until this map is changed
+     */
+    ExtraParamsSnapshot snapshot() {
+        ExtraParamsSnapshot result = this.snapshot;
+        if (result == null) {
+            result = ExtraParamsSnapshot.copyOf(this);
+            this.snapshot = result;
+        }
+        return result;
+    }
+    // endregion
+
+
+    // region Map
+    @Override
+    public int size() { return this.rawSize - this.hiddenCount; }
+
+    @Override
+    public boolean isEmpty() { return (this.size() == 0); }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (key == null) return false;
+
+        int index = this.lastIndexOf(key, key.hashCode());
+        return (index >= 0 && this.values[index] != REMOVED);
+    }
+
+    @Override
+    public Object get(Object key) {
+        if (key == null) return null;
+
+        int index = this.lastIndexOf(key, key.hashCode());
+        if (index < 0) return null;
+
+        Object value = this.values[index];
+        return (value == REMOVED ? null : value);
+    }
+
+    /**
+     * Adds entry to current scope; entry with same key of outer scope becomes hidden until end of current scope
+     *
+     * @param key key, must not be {@code null}
+     * @param value value, can be {@code null}
+     * @return previous visible value for {@code key}
+     */
+    @Override
+    public Object put(String key, Object value) {
+        if (key == null) throw new NullPointerException("Key of extra parameter must not be null");
+        this.snapshot = null;
+
+        int hash = key.hashCode();
+        int index = this.lastIndexOf(key, hash);
+        if (index >= this.currentScopeStart()) {
+            Object previous = this.values[index];
+            this.values[index] = value;
+            if (previous != REMOVED) return previous;
+
+            // Marker of removal becomes visible entry
+            this.hiddenCount--;
+            return null;
+        }
+
+        this.append(key, hash, value);
+        if (index < 0) return null;
+
+        this.hide(index);
+        Object previous = this.values[index];
+        if (previous == REMOVED) return null;
+
+        // Entry of outer scope becomes hidden
+        this.hiddenCount++;
+        return previous;
+    }
+
+    /**
+     * Removes entry; entry of outer scope is hidden (until end of current scope), not removed
+     *
+     * @param key key
+     * @return previous visible value for {@code key}
+     */
+    @Override
+    public Object remove(Object key) {
+        if (key == null) return null;
+
+        int hash = key.hashCode();
+        int index = this.lastIndexOf(key, hash);
+        if (index < 0) return null;
+
+        Object previous = this.values[index];
+        if (previous == REMOVED) return null;
+        this.snapshot = null;
+
+        if (index >= this.currentScopeStart()) {
+            if (this.lastIndexOf(key, hash, index) >= 0) {
+                // Entry of current scope hides entry of outer scope - it becomes marker of removal
+                this.values[index] = REMOVED;
+                this.hiddenCount++;
+            } else {
+                int tail = this.rawSize - index - 1;
+                System.arraycopy(this.keys, index + 1, this.keys, index, tail);
+                System.arraycopy(this.hashes, index + 1, this.hashes, index, tail);
+                System.arraycopy(this.values, index + 1, this.values, index, tail);
+                System.arraycopy(this.hidden, index + 1, this.hidden, index, tail);
+                this.rawSize--;
+                this.keys[this.rawSize] = null;
+                this.values[this.rawSize] = null;
+                this.hidden[this.rawSize] = false;
+            }
+        } else {
+            // Entry of outer scope is hidden by marker of removal; both are not visible
+            this.append((String) key, hash, REMOVED);
+            this.hide(index);
+            this.hiddenCount += 2;
+        }
+
+        return previous;
+    }
+
+    // Index of newest entry with "key" before "beforeIndex"; -1 - not found
+    private int lastIndexOf(Object key, int hash, int beforeIndex) {
+        for (int i = beforeIndex - 1; i >= 0; i--) {
+            if (this.hashes[i] == hash && this.keys[i].equals(key)) return i;
+        }
+        return -1;
+    }
+
+    @Override
+    public void clear() {
+        for (int i = this.rawSize - 1; i >= 0; i--) {
+            if (i < this.rawSize && this.isVisible(i)) this.remove(this.keys[i]);
+        }
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<Entry<String, Object>>() {
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new Iterator<Entry<String, Object>>() {
+                    private int index = this.findVisible(0);
+                    private int lastIndex = -1;
+
+                    private int findVisible(int from) {
+                        int result = from;
+                        while (result < ExtraParamsMap.this.rawSize && !ExtraParamsMap.this.isVisible(result)) result++;
+                        return result;
+                    }
+
+                    @Override
+                    public boolean hasNext() { return (this.index < ExtraParamsMap.this.rawSize); }
+
+                    @Override
+                    public Entry<String, Object> next() {
+                        if (this.index >= ExtraParamsMap.this.rawSize) throw new NoSuchElementException();
+
+                        this.lastIndex = this.index;
+                        this.index = this.findVisible(this.index + 1);
+                        return new SimpleImmutableEntry<>(ExtraParamsMap.this.keys[this.lastIndex], ExtraParamsMap.this.values[this.lastIndex]);
+                    }
+
+                    @Override
+                    public void remove() {
+                        if (this.lastIndex < 0) throw new IllegalStateException();
+
+                        int rawSizeBefore = ExtraParamsMap.this.rawSize;
+                        ExtraParamsMap.this.remove(ExtraParamsMap.this.keys[this.lastIndex]);
+                        // Entry has been physically removed - next entries have been shifted
+                        if (ExtraParamsMap.this.rawSize < rawSizeBefore) this.index = this.findVisible(this.lastIndex);
+                        this.lastIndex = -1;
+                    }
+                };
+            }
+
+            @Override
+            public int size() { return ExtraParamsMap.this.size(); }
+        };
+    }
+    // endregion
+}
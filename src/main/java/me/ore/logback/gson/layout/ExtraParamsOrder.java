@@ -0,0 +1,126 @@
+package me.ore.logback.gson.layout;
+
+
+import java.util.Arrays;
+
+
+/**
+ * Sorted order of extra parameters, cached by &quot;shape&quot; - sequence of names of parameters
+ *
+ * <p>
+ *     Log events from one call site carry parameters with the same names in the same order, so every shape is sorted only once;
+ *     cache is direct-mapped (new shape replaces old shape with the same slot), entries are immutable
+ * </p>
+ *
+ * @see LogbackGsonLayout#isSortExtraParams()
+ */
+final class ExtraParamsOrder {
+    // region Class constants
+    private static final int CACHE_SIZE = 256;
+    // endregion
+
+
+    /**
+     * Parameters of one log event, collected in iteration order
+     */
+    static final class Params {
+        private String[] names = new String[16];
+        private Object[] values = new Object[16];
+        private int size = 0;
+        private boolean inUse = false;
+
+        /**
+         * @param name name of parameter, not {@code null}
+         * @param value value of parameter
+         */
+        void add(String name, Object value) {
+            if (this.size == this.names.length) {
+                this.names = Arrays.copyOf(this.names, this.size << 1);
+                this.values = Arrays.copyOf(this.values, this.size << 1);
+            }
+
+            this.names[this.size] = name;
+            this.values[this.size] = value;
+            this.size++;
+        }
+
+        int size() { return this.size; }
+
+        String nameAt(int index) { return this.names[index]; }
+
+        Object valueAt(int index) { return this.values[index]; }
+    }
+
+    private static final class Shape {
+        private final int hash;
+        private final String[] names;
+        private final int[] order;
+
+        private Shape(int hash, String[] names, int[] order) {
+            this.hash = hash;
+            this.names = names;
+            this.order = order;
+        }
+
+        private boolean matches(int hash, Params params) {
+            if (this.hash != hash || this.names.length != params.size) return false;
+
+            for (int i = 0; i < this.names.length; i++) {
+                String name = params.names[i];
+                if (this.names[i] != name && !this.names[i].equals(name)) return false;
+            }
+            return true;
+        }
+    }
+
+
+    private final Shape[] shapes = new Shape[CACHE_SIZE];
+    private final ThreadLocal<Params> params = ThreadLocal.withInitial(Params::new);
+
+    /**
+     * @return empty parameters of current thread; must be returned by {@link #release(Params)}
+     */
+    Params acquire() {
+        Params result = this.params.get();
+        // Parameters of current thread are already in use - for example, when value of parameter generates logs while it is written
+        if (result.inUse) return new Params();
+
+        result.inUse = true;
+        return result;
+    }
+
+    /**
+     * @param params parameters, got from {@link #acquire()}
+     */
+    void release(Params params) {
+        // References to values are not kept
+        Arrays.fill(params.values, 0, params.size, null);
+        Arrays.fill(params.names, 0, params.size, null);
+        params.size = 0;
+        params.inUse = false;
+    }
+
+    /**
+     * @param params collected parameters
+     * @return indexes of {@code params}, sorted by names of parameters
+     */
+    int[] order(Params params) {
+        int hash = 1;
+        for (int i = 0; i < params.size; i++) hash = 31 * hash + params.names[i].hashCode();
+
+        int index = (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+        Shape shape = this.shapes[index];
+        if (shape != null && shape.matches(hash, params)) return shape.order;
+
+        String[] names = Arrays.copyOf(params.names, params.size);
+        Integer[] sorted = new Integer[names.length];
+        for (int i = 0; i < sorted.length; i++) sorted[i] = i;
+        Arrays.sort(sorted, (a, b) -> names[a].compareTo(names[b]));
+
+        int[] order = new int[sorted.length];
+        for (int i = 0; i < order.length; i++) order[i] = sorted[i];
+
+        this.shapes[index] = new Shape(hash, names, order);
+        return order;
+    }
+}
@@ -0,0 +1,180 @@
+package me.ore.logback.gson.layout;
+
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+
+/**
+ * Immutable snapshot of extra parameters, backed by two arrays (keys and values)
+ *
+ * <p>
+ *     Creation of snapshot is much cheaper than copy to {@link java.util.HashMap}: there are no table and no entry objects;
+ *     snapshot of snapshot is the same object. Search by key is linear, which is fast for small maps of extra parameters
+ * </p>
+ *
+ * <p>
+ *     Snapshot can be put to {@link LogbackGsonLayout#EXTRA_PARAMS_HOLDER} directly - then it will not be copied by asynchronous appenders
+ * </p>
+ *
+ * @see LogbackGsonLayout#snapshotExtraParams()
+ */
+public final class ExtraParamsSnapshot extends AbstractMap<String, Object> {
+    /**
+     * Empty snapshot
+     */
+    public static final ExtraParamsSnapshot EMPTY = new ExtraParamsSnapshot(new String[0], new Object[0], 0);
+
+
+    /**
+     * Creates snapshot of {@code source}; entries with {@code null} keys are skipped
+     *
+     * @param source source map, can be {@code null}
+     * @return snapshot; {@link #EMPTY} - if {@code source} is {@code null} or empty; {@code source} - if it is snapshot already;
+     * cached snapshot - if {@code source} is {@link ExtraParamsMap}, which has not been changed since previous snapshot
+     */
+    public static ExtraParamsSnapshot of(Map<String, ?> source) {
+        if (source == null || source.isEmpty()) return EMPTY;
+        if (source instanceof ExtraParamsSnapshot) return (ExtraParamsSnapshot) source;
+        if (source instanceof ExtraParamsMap) return ((ExtraParamsMap) source).snapshot();
+
+        int capacity = source.size();
+        String[] keys = new String[capacity];
+        Object[] values = new Object[capacity];
+        int size = 0;
+        for (Map.Entry<String, ?> entry : source.entrySet()) {
+            if (entry == null) continue;
+
+            String key = entry.getKey();
+            if (key == null) continue;
+
+            if (size == capacity) {
+                // Source map has been changed by another thread during copying
+                capacity = capacity * 2;
+                keys = Arrays.copyOf(keys, capacity);
+                values = Arrays.copyOf(values, capacity);
+            }
+
+            keys[size] = key;
+            values[size] = entry.getValue();
+            size++;
+        }
+
+        return (size == 0 ? EMPTY : new ExtraParamsSnapshot(keys, values, size));
+    }
+
+
+    /**
+     * Creates snapshot of visible entries of {@code source}
+     *
+     * @param source source map
+     * @return snapshot
+     */
+    static ExtraParamsSnapshot copyOf(ExtraParamsMap source) {
+        int size = source.size();
+        if (size == 0) return EMPTY;
+
+        String[] keys = new String[size];
+        Object[] values = new Object[size];
+        int index = 0;
+        for (int i = 0, rawSize = source.rawSize(); i < rawSize; i++) {
+            if (!source.isVisible(i)) continue;
+
+            keys[index] = source.rawKey(i);
+            values[index] = source.rawValue(i);
+            index++;
+        }
+
+        return new ExtraParamsSnapshot(keys, values, size);
+    }
+
+
+    private final String[] keys;
+    private final Object[] values;
+    private final int size;
+
+    private ExtraParamsSnapshot(String[] keys, Object[] values, int size) {
+        this.keys = keys;
+        this.values = values;
+        this.size = size;
+    }
+
+
+    // region Indexed access
+    /**
+     * @param index index of entry, from {@code 0} to {@code size() - 1}
+     * @return key of entry
+     */
+    public String keyAt(int index) {
+        if (index < 0 || index >= this.size) throw new IndexOutOfBoundsException("Index: " + index + ", size: " + this.size);
+        return this.keys[index];
+    }
+
+    /**
+     * @param index index of entry, from {@code 0} to {@code size() - 1}
+     * @return value of entry, can be {@code null}
+     */
+    public Object valueAt(int index) {
+        if (index < 0 || index >= this.size) throw new IndexOutOfBoundsException("Index: " + index + ", size: " + this.size);
+        return this.values[index];
+    }
+
+    private int indexOf(Object key) {
+        if (key == null) return -1;
+
+        for (int i = 0; i < this.size; i++) {
+            if (key.equals(this.keys[i])) return i;
+        }
+        return -1;
+    }
+    // endregion
+
+
+    // region Map
+    @Override
+    public int size() { return this.size; }
+
+    @Override
+    public boolean isEmpty() { return (this.size == 0); }
+
+    @Override
+    public boolean containsKey(Object key) { return (this.indexOf(key) >= 0); }
+
+    @Override
+    public Object get(Object key) {
+        int index = this.indexOf(key);
+        return (index < 0 ? null : this.values[index]);
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<Entry<String, Object>>() {
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new Iterator<Entry<String, Object>>() {
+                    private int index = 0;
+
+                    @Override
+                    public boolean hasNext() { return (this.index < ExtraParamsSnapshot.this.size); }
+
+                    @Override
+                    public Entry<String, Object> next() {
+                        if (this.index >= ExtraParamsSnapshot.this.size) throw new NoSuchElementException();
+
+                        int current = this.index++;
+                        return new SimpleImmutableEntry<>(ExtraParamsSnapshot.this.keys[current], ExtraParamsSnapshot.this.values[current]);
+                    }
+                };
+            }
+
+            @Override
+            public int size() { return ExtraParamsSnapshot.this.size; }
+        };
+    }
+    // endregion
+}
@@ -0,0 +1,205 @@
+package me.ore.logback.gson.layout;
+
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+
+/**
+ * Output stream, which compresses data to sequence of independent GZIP members (frames)
+ *
+ * <p>
+ *     Written bytes are collected in buffer of {@link #getFrameSize() frame size}; when buffer is full, or when frame is older
+ *     than {@link #getFrameIntervalMillis() frame interval} (checked on every write and {@link #flush()}), or when stream is closed,
+ *     collected bytes are compressed to complete GZIP member and are written to target stream
+ * </p>
+ *
+ * <p>
+ *     Concatenation of GZIP members is valid GZIP file ({@code gzip -d}, {@code zcat}, {@link java.util.zip.GZIPInputStream} read all members),
+ *     and every member can be decompressed separately - so file can be tailed and split by member boundaries
+ * </p>
+ *
+ * <p>
+ *     Instances of this class are not thread-safe
+ * </p>
+ */
+public final class GzipFrameOutputStream extends OutputStream {
+    // ID1, ID2, CM (deflate), FLG, MTIME (4 bytes), XFL, OS (unknown)
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    // CRC32 and ISIZE
+    private static final int TRAILER_SIZE = 8;
+
+
+    private final OutputStream out;
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    private final byte[] frame;
+    private final byte[] chunk = new byte[8192];
+    private final long frameIntervalNanos;
+
+    private int frameLength = 0;
+    private long frameStartNanos;
+    private boolean closed = false;
+
+    private volatile long uncompressedByteCount = 0;
+    private volatile long compressedByteCount = 0;
+
+    /**
+     * @param out target stream
+     * @param compressionLevel compression level, from {@code 0} to {@code 9}, or {@link Deflater#DEFAULT_COMPRESSION}
+     * @param frameSize max count of uncompressed bytes in one frame, must be positive
+     * @param frameIntervalMillis max age (in milliseconds) of frame; {@code 0} - frames are written only when they are full
+     */
+    public GzipFrameOutputStream(OutputStream out, int compressionLevel, int frameSize, long frameIntervalMillis) {
+        if (frameSize < 1) throw new IllegalArgumentException("Invalid frame size [" + frameSize + "]");
+
+        this.out = out;
+        this.deflater = new Deflater(compressionLevel, true);
+        this.frame = new byte[frameSize];
+        this.frameIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(frameIntervalMillis, 0));
+    }
+
+
+    // region Properties
+    /**
+     * @return max count of uncompressed bytes in one frame
+     */
+    public int getFrameSize() { return this.frame.length; }
+
+    /**
+     * @return max age (in milliseconds) of frame; {@code 0} - frames are written only when they are full
+     */
+    public long getFrameIntervalMillis() { return TimeUnit.NANOSECONDS.toMillis(this.frameIntervalNanos); }
+
+    /**
+     * @return count of uncompressed bytes in written frames
+     */
+    public long getUncompressedByteCount() { return this.uncompressedByteCount; }
+
+    /**
+     * @return count of compressed bytes (including GZIP headers and trailers) of written frames
+     */
+    public long getCompressedByteCount() { return this.compressedByteCount; }
+    // endregion
+
+
+    // region Frames
+    /**
+     * Compresses and writes current frame, if it is not empty
+     *
+     * @throws IOException if target stream throws exception
+     */
+    public void finishFrame() throws IOException {
+        if (this.frameLength == 0) return;
+
+        this.crc.reset();
+        this.crc.update(this.frame, 0, this.frameLength);
+
+        this.deflater.reset();
+        this.deflater.setInput(this.frame, 0, this.frameLength);
+        this.deflater.finish();
+
+        this.out.write(HEADER);
+        long compressed = HEADER.length + TRAILER_SIZE;
+        while (!this.deflater.finished()) {
+            int count = this.deflater.deflate(this.chunk, 0, this.chunk.length);
+            this.out.write(this.chunk, 0, count);
+            compressed += count;
+        }
+
+        writeIntLE(this.chunk, 0, (int) this.crc.getValue());
+        writeIntLE(this.chunk, 4, this.frameLength);
+        this.out.write(this.chunk, 0, TRAILER_SIZE);
+
+        this.uncompressedByteCount += this.frameLength;
+        this.compressedByteCount += compressed;
+        this.frameLength = 0;
+    }
+
+    /**
+     * Compresses and writes current frame, if it is older than {@link #getFrameIntervalMillis() frame interval}
+     *
+     * @return {@code true} if frame has been written
+     * @throws IOException if target stream throws exception
+     */
+    public boolean finishFrameIfDue() throws IOException {
+        if (this.frameLength == 0 || this.frameIntervalNanos == 0) return false;
+        if (System.nanoTime() - this.frameStartNanos < this.frameIntervalNanos) return false;
+
+        this.finishFrame();
+        return true;
+    }
+
+    private static void writeIntLE(byte[] target, int offset, int value) {
+        target[offset] = (byte) value;
+        target[offset + 1] = (byte) (value >>> 8);
+        target[offset + 2] = (byte) (value >>> 16);
+        target[offset + 3] = (byte) (value >>> 24);
+    }
+    // endregion
+
+
+    // region OutputStream
+    private void ensureOpen() throws IOException {
+        if (this.closed) throw new IOException("Stream closed");
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        this.ensureOpen();
+        if (this.frameLength == 0) this.frameStartNanos = System.nanoTime();
+
+        this.frame[this.frameLength++] = (byte) b;
+        if (this.frameLength == this.frame.length) this.finishFrame();
+    }
+
+    @Override
+    public void write(byte[] source, int offset, int length) throws IOException {
+        this.ensureOpen();
+        if (offset < 0 || length < 0 || length > source.length - offset) throw new IndexOutOfBoundsException();
+
+        while (length > 0) {
+            if (this.frameLength == 0) this.frameStartNanos = System.nanoTime();
+
+            int count = Math.min(length, this.frame.length - this.frameLength);
+            System.arraycopy(source, offset, this.frame, this.frameLength, count);
+            this.frameLength += count;
+            offset += count;
+            length -= count;
+
+            if (this.frameLength == this.frame.length) this.finishFrame();
+        }
+
+        this.finishFrameIfDue();
+    }
+
+    /**
+     * Writes current frame if it is due (see {@link #finishFrameIfDue()}), and flushes target stream;
+     * not due frame is not written - so frequent flushes do not break compression
+     *
+     * @throws IOException if target stream throws exception
+     */
+    @Override
+    public void flush() throws IOException {
+        this.ensureOpen();
+        this.finishFrameIfDue();
+        this.out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.closed) return;
+
+        try {
+            this.finishFrame();
+        } finally {
+            this.closed = true;
+            this.deflater.end();
+            this.out.close();
+        }
+    }
+    // endregion
+}
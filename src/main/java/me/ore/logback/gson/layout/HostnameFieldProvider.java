@@ -0,0 +1,40 @@
+package me.ore.logback.gson.layout;
+
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+
+/**
+ * Provider of &quot;host&quot; property - name of host, on which application runs
+ *
+ * <p>
+ *     Name of host is resolved and encoded once, when layout starts
+ * </p>
+ */
+public class HostnameFieldProvider extends LogbackGsonFieldProviderBase {
+    /**
+     * Default name of property
+     */
+    public static final String DEFAULT_NAME = "host";
+
+    @Override
+    protected String getDefaultName() { return DEFAULT_NAME; }
+
+    @Override
+    public LogbackGsonFieldWriter compile(LogbackGsonLayout layout) {
+        String hostname;
+        try {
+            hostname = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            hostname = "unknown";
+        }
+
+        byte[] name = layout.encodeName(this.getName());
+        byte[] value = layout.encodeString(hostname);
+        return (event, buffer) -> {
+            buffer.name(name);
+            buffer.rawValue(value);
+        };
+    }
+}
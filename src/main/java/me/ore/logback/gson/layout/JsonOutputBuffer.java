@@ -0,0 +1,915 @@
+package me.ore.logback.gson.layout;
+
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+
+/**
+ * Growable, reusable buffer of UTF-8 bytes, in which JSON objects of log events are written
+ *
+ * <p>
+ *     Instances of this class are not thread-safe; typically every thread uses its own instance,
+ *     see {@link LogbackGsonLayout#writeTo(ch.qos.logback.classic.spi.ILoggingEvent, JsonOutputBuffer)}
+ * </p>
+ */
+@SuppressWarnings("unused")
+public final class JsonOutputBuffer {
+    // region Class constants
+    /**
+     * Default initial capacity of buffer, in bytes
+     */
+    public static final int DEFAULT_CAPACITY = 512;
+
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] LONG_MIN_VALUE = Long.toString(Long.MIN_VALUE).getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] TRUE = "true".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] FALSE = "false".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+
+    // Same replacements as in com.google.gson.stream.JsonWriter
+    private static final byte[][] REPLACEMENTS = new byte[128][];
+    private static final byte[][] HTML_SAFE_REPLACEMENTS;
+
+    static {
+        for (int i = 0; i < 0x20; i++) {
+            REPLACEMENTS[i] = String.format("\\u%04x", i).getBytes(StandardCharsets.US_ASCII);
+        }
+        REPLACEMENTS['"'] = "\\\"".getBytes(StandardCharsets.US_ASCII);
+        REPLACEMENTS['\\'] = "\\\\".getBytes(StandardCharsets.US_ASCII);
+        REPLACEMENTS['\t'] = "\\t".getBytes(StandardCharsets.US_ASCII);
+        REPLACEMENTS['\b'] = "\\b".getBytes(StandardCharsets.US_ASCII);
+        REPLACEMENTS['\n'] = "\\n".getBytes(StandardCharsets.US_ASCII);
+        REPLACEMENTS['\r'] = "\\r".getBytes(StandardCharsets.US_ASCII);
+        REPLACEMENTS['\f'] = "\\f".getBytes(StandardCharsets.US_ASCII);
+
+        HTML_SAFE_REPLACEMENTS = REPLACEMENTS.clone();
+        HTML_SAFE_REPLACEMENTS['<'] = "\\u003c".getBytes(StandardCharsets.US_ASCII);
+        HTML_SAFE_REPLACEMENTS['>'] = "\\u003e".getBytes(StandardCharsets.US_ASCII);
+        HTML_SAFE_REPLACEMENTS['&'] = "\\u0026".getBytes(StandardCharsets.US_ASCII);
+        HTML_SAFE_REPLACEMENTS['='] = "\\u003d".getBytes(StandardCharsets.US_ASCII);
+        HTML_SAFE_REPLACEMENTS['\''] = "\\u0027".getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static final byte[] LINE_SEPARATOR_REPLACEMENT = "\\u2028".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PARAGRAPH_SEPARATOR_REPLACEMENT = "\\u2029".getBytes(StandardCharsets.US_ASCII);
+
+
+    /**
+     * Encodes JSON property name, with quotes and following colon
+     *
+     * @param name property name
+     * @param htmlSafe if {@code true}, HTML characters will be escaped (like in {@link com.google.gson.Gson#htmlSafe()})
+     * @return encoded property name, for example - {@code "message":}
+     *
+     * @see #name(byte[])
+     */
+    public static byte[] encodeName(String name, boolean htmlSafe) {
+        JsonOutputBuffer buffer = new JsonOutputBuffer(name.length() + 8);
+        buffer.setHtmlSafe(htmlSafe);
+        buffer.writeJsonString(name);
+        buffer.write(':');
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Encodes JSON string value, with quotes
+     *
+     * @param value string value
+     * @param htmlSafe if {@code true}, HTML characters will be escaped (like in {@link com.google.gson.Gson#htmlSafe()})
+     * @return encoded value
+     *
+     * @see #rawValue(byte[])
+     */
+    public static byte[] encodeString(String value, boolean htmlSafe) {
+        JsonOutputBuffer buffer = new JsonOutputBuffer(value.length() + 8);
+        buffer.setHtmlSafe(htmlSafe);
+        buffer.writeJsonString(value);
+        return buffer.toByteArray();
+    }
+    // endregion
+
+
+    // region Writer
+    /**
+     * Exception thrown by {@link #asWriter(int) limited writer}, when size of buffer exceeds limit
+     *
+     * <p>
+     *     Only one instance of this exception exists, without stack trace - so throwing of it is cheap
+     * </p>
+     */
+    public static final class SizeLimitExceededException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private static final SizeLimitExceededException INSTANCE = new SizeLimitExceededException();
+
+        private SizeLimitExceededException() { super("Size limit of JSON output buffer exceeded"); }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() { return this; }
+
+        /**
+         * @param throwable some exception, can be {@code null}
+         * @return {@code true} if {@code throwable} or one of its causes is {@link SizeLimitExceededException}
+         */
+        public static boolean isCause(Throwable throwable) {
+            Throwable current = throwable;
+            for (int i = 0; current != null && i < 8; i++) {
+                if (current == INSTANCE) return true;
+                current = current.getCause();
+            }
+            return false;
+        }
+    }
+
+    private final class Utf8Writer extends Writer {
+        private char pendingHighSurrogate;
+        private int maxSize = Integer.MAX_VALUE;
+
+        @Override
+        public void write(int c) throws SizeLimitExceededException { this.writeChar((char) c); }
+
+        @Override
+        public void write(char[] chars, int offset, int length) throws SizeLimitExceededException {
+            int end = offset + length;
+            for (int i = offset; i < end; i++) this.writeChar(chars[i]);
+        }
+
+        @Override
+        public void write(String text, int offset, int length) throws SizeLimitExceededException {
+            int end = offset + length;
+            for (int i = offset; i < end; i++) this.writeChar(text.charAt(i));
+        }
+
+        private void writeChar(char c) throws SizeLimitExceededException {
+            if (JsonOutputBuffer.this.size > this.maxSize) {
+                this.pendingHighSurrogate = 0;
+                throw SizeLimitExceededException.INSTANCE;
+            }
+
+            if (this.pendingHighSurrogate != 0) {
+                char high = this.pendingHighSurrogate;
+                this.pendingHighSurrogate = 0;
+
+                if (Character.isLowSurrogate(c)) {
+                    writeCodePoint(Character.toCodePoint(high, c));
+                    return;
+                }
+
+                JsonOutputBuffer.this.write('?');
+            }
+
+            if (Character.isHighSurrogate(c)) {
+                this.pendingHighSurrogate = c;
+            } else {
+                writeCodePoint(c);
+            }
+        }
+
+        @Override
+        public void flush() {}
+
+        @Override
+        public void close() {}
+    }
+    // endregion
+
+
+    private byte[] bytes;
+    private int size;
+    private final Utf8Writer writer = new Utf8Writer();
+
+    private boolean htmlSafe = true;
+
+    private int limit = Integer.MAX_VALUE;
+    private boolean truncated = false;
+
+    // Metrics cell of thread, which writes log event with enabled metrics
+    LogbackGsonLayoutMetrics.Cell metricsCell;
+
+    // For every level of nesting - whether current object/array already has elements
+    private boolean[] nonEmpty = new boolean[16];
+    private int depth = 0;
+    private boolean afterName = false;
+
+    /**
+     * Creates buffer with {@link #DEFAULT_CAPACITY default capacity}
+     */
+    public JsonOutputBuffer() { this(DEFAULT_CAPACITY); }
+
+    /**
+     * Creates buffer with specified initial capacity
+     *
+     * @param capacity initial capacity, in bytes
+     */
+    public JsonOutputBuffer(int capacity) { this.bytes = new byte[Math.max(capacity, 16)]; }
+
+
+    // region Buffer state
+    /**
+     * @return count of bytes written in this buffer since last {@link #reset()}
+     */
+    public int size() { return this.size; }
+
+    /**
+     * @return current capacity of this buffer, in bytes
+     */
+    public int capacity() { return this.bytes.length; }
+
+    /**
+     * Returns internal array of this buffer
+     *
+     * <p>
+     *     Only first {@link #size()} bytes of returned array are meaningful;
+     *     returned array must not be modified and must not be used after next write to this buffer
+     * </p>
+     *
+     * @return internal array
+     */
+    public byte[] array() { return this.bytes; }
+
+    /**
+     * Clears this buffer; capacity of buffer is not changed
+     */
+    public void reset() {
+        this.size = 0;
+        this.writer.pendingHighSurrogate = 0;
+        this.limit = Integer.MAX_VALUE;
+        this.truncated = false;
+        this.depth = 0;
+        this.afterName = false;
+    }
+
+    /**
+     * Drops bytes written after first {@code size} bytes
+     *
+     * <p>
+     *     State of JSON structure (nesting, separators) is not changed
+     * </p>
+     *
+     * @param size new size of content; must not be greater than {@link #size()}
+     */
+    public void truncate(int size) {
+        if (size < 0 || size > this.size) throw new IllegalArgumentException("Invalid size: " + size);
+        this.size = size;
+    }
+
+    /**
+     * Drops bytes written after first {@code size} bytes and restores state of current JSON object or array
+     *
+     * <p>
+     *     Used to drop JSON properties (or values), written after {@code size} bytes
+     * </p>
+     *
+     * @param size new size of content; must not be greater than {@link #size()}
+     * @param containerEmpty value of {@link #isContainerEmpty()}, got when size of content was {@code size}
+     */
+    public void truncate(int size, boolean containerEmpty) {
+        this.truncate(size);
+        this.afterName = false;
+        if (this.depth > 0) this.nonEmpty[this.depth - 1] = !containerEmpty;
+    }
+
+    /**
+     * @return {@code true} if nothing has been written in current JSON object or array yet
+     */
+    public boolean isContainerEmpty() { return (this.depth == 0 || !this.nonEmpty[this.depth - 1]); }
+
+    /**
+     * Returns soft limit of size of content
+     *
+     * <p>
+     *     Size-limited writes (like {@link #value(String, int)}) stop at this limit; other writes ignore it
+     * </p>
+     *
+     * @return limit of size, in bytes; by default - {@link Integer#MAX_VALUE}
+     *
+     * @see #setLimit(int)
+     */
+    public int getLimit() { return this.limit; }
+
+    /**
+     * Sets soft limit of size of content; {@link #reset()} removes limit
+     *
+     * @param limit limit of size, in bytes
+     *
+     * @see #getLimit()
+     */
+    public void setLimit(int limit) { this.limit = limit; }
+
+    /**
+     * @return {@code true} if some size-limited write has truncated its value since last {@link #reset()} or {@link #setTruncated(boolean)}
+     *
+     * @see #setTruncated(boolean)
+     */
+    public boolean isTruncated() { return this.truncated; }
+
+    /**
+     * Sets flag of truncation
+     *
+     * @param truncated new value of flag
+     *
+     * @see #isTruncated()
+     */
+    public void setTruncated(boolean truncated) { this.truncated = truncated; }
+
+    /**
+     * @return {@code true} if HTML characters are escaped in JSON strings; by default - {@code true}
+     *
+     * @see #setHtmlSafe(boolean)
+     */
+    public boolean isHtmlSafe() { return this.htmlSafe; }
+
+    /**
+     * Sets whether HTML characters ({@code <}, {@code >}, {@code &}, {@code =} and {@code '}) are escaped in JSON strings
+     *
+     * @param htmlSafe {@code true} to escape HTML characters
+     *
+     * @see #isHtmlSafe()
+     */
+    public void setHtmlSafe(boolean htmlSafe) { this.htmlSafe = htmlSafe; }
+
+    /**
+     * Makes sure that at least {@code count} bytes can be written without growing of internal array
+     *
+     * @param count count of bytes which will be written
+     */
+    public void ensureCapacity(int count) {
+        int required = this.size + count;
+        if (required < 0 || required > MAX_CAPACITY) throw new OutOfMemoryError("Required buffer size is too large");
+        if (required <= this.bytes.length) return;
+
+        int newCapacity = this.bytes.length << 1;
+        if (newCapacity < 0 || newCapacity > MAX_CAPACITY) newCapacity = MAX_CAPACITY;
+        if (newCapacity < required) newCapacity = required;
+
+        this.bytes = Arrays.copyOf(this.bytes, newCapacity);
+    }
+    // endregion
+
+
+    // region Writing
+    /**
+     * Writes one byte
+     *
+     * @param b byte to write
+     */
+    public void write(int b) {
+        if (this.size == this.bytes.length) this.ensureCapacity(1);
+        this.bytes[this.size++] = (byte) b;
+    }
+
+    /**
+     * Writes all bytes of array
+     *
+     * @param source bytes to write
+     */
+    public void write(byte[] source) { this.write(source, 0, source.length); }
+
+    /**
+     * Writes part of array
+     *
+     * @param source bytes to write
+     * @param offset index of first byte to write
+     * @param length count of bytes to write
+     */
+    public void write(byte[] source, int offset, int length) {
+        this.ensureCapacity(length);
+        System.arraycopy(source, offset, this.bytes, this.size, length);
+        this.size += length;
+    }
+
+    private void writeCodePoint(int codePoint) {
+        if (codePoint < 0x80) {
+            this.write(codePoint);
+        } else if (codePoint < 0x800) {
+            this.ensureCapacity(2);
+            this.bytes[this.size++] = (byte) (0xC0 | (codePoint >> 6));
+            this.bytes[this.size++] = (byte) (0x80 | (codePoint & 0x3F));
+        } else if (codePoint < 0x10000) {
+            if (Character.isSurrogate((char) codePoint)) {
+                // Unpaired surrogate - same replacement as in String.getBytes(UTF_8)
+                this.write('?');
+                return;
+            }
+
+            this.ensureCapacity(3);
+            this.bytes[this.size++] = (byte) (0xE0 | (codePoint >> 12));
+            this.bytes[this.size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            this.bytes[this.size++] = (byte) (0x80 | (codePoint & 0x3F));
+        } else {
+            this.ensureCapacity(4);
+            this.bytes[this.size++] = (byte) (0xF0 | (codePoint >> 18));
+            this.bytes[this.size++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+            this.bytes[this.size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            this.bytes[this.size++] = (byte) (0x80 | (codePoint & 0x3F));
+        }
+    }
+
+    /**
+     * Writes ASCII text as is, without escaping
+     *
+     * @param text text which contains only ASCII characters
+     */
+    public void writeAscii(String text) {
+        int length = text.length();
+        this.ensureCapacity(length);
+        for (int i = 0; i < length; i++) this.bytes[this.size++] = (byte) text.charAt(i);
+    }
+
+    /**
+     * Writes decimal representation of {@code value}
+     *
+     * @param value number to write
+     */
+    public void writeLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            this.write(LONG_MIN_VALUE);
+            return;
+        }
+
+        if (value < 0) {
+            this.write('-');
+            value = -value;
+        }
+
+        int digits = 1;
+        for (long rest = value; rest >= 10; rest /= 10) digits++;
+
+        this.ensureCapacity(digits);
+        int position = this.size + digits;
+        do {
+            this.bytes[--position] = (byte) ('0' + (value % 10));
+            value /= 10;
+        } while (value != 0);
+        this.size += digits;
+    }
+
+    /**
+     * Writes unsigned hexadecimal representation of {@code value}, same as {@link Long#toHexString(long)}
+     *
+     * @param value number to write
+     */
+    public void writeHex(long value) {
+        int digits = Math.max(1, (64 - Long.numberOfLeadingZeros(value) + 3) >> 2);
+
+        this.ensureCapacity(digits);
+        int position = this.size + digits;
+        do {
+            this.bytes[--position] = HEX_DIGITS[(int) (value & 0xF)];
+            value >>>= 4;
+        } while (value != 0);
+        this.size += digits;
+    }
+
+    /**
+     * Writes JSON string - quoted and escaped {@code value}
+     *
+     * <p>
+     *     This method does not write separator between JSON values, see {@link #value(String)}
+     * </p>
+     *
+     * @param value text to write
+     */
+    public void writeJsonString(String value) {
+        this.write('"');
+        this.writeEscaped(value);
+        this.write('"');
+    }
+
+    /**
+     * Writes escaped {@code value} - content of JSON string, without quotes
+     *
+     * @param value text to write
+     *
+     * @see #writeJsonString(String)
+     */
+    public void writeEscaped(String value) {
+        byte[][] replacements = (this.htmlSafe ? HTML_SAFE_REPLACEMENTS : REPLACEMENTS);
+
+        int length = value.length();
+        int index = 0;
+        while (true) {
+            index = this.writeCleanRun(value, index, length, replacements);
+            if (index >= length) return;
+
+            index = this.writeEscapedChar(value, index, length, replacements) + 1;
+        }
+    }
+
+    /**
+     * Writes JSON string - quoted and escaped {@code value}, truncated if needed
+     *
+     * @param value text to write
+     * @param maxBytes max count of bytes of escaped content (without quotes)
+     * @return {@code true} if {@code value} has been truncated
+     *
+     * @see #writeEscaped(String, int)
+     */
+    public boolean writeJsonString(String value, int maxBytes) {
+        this.write('"');
+        boolean result = this.writeEscaped(value, maxBytes);
+        this.write('"');
+        return result;
+    }
+
+    /**
+     * Writes escaped {@code value} - content of JSON string, without quotes; writing stops before first character,
+     * which does not fit in {@code maxBytes}
+     *
+     * <p>
+     *     Characters after limit are not even read, so huge values are never encoded in full
+     * </p>
+     *
+     * @param value text to write
+     * @param maxBytes max count of bytes to write
+     * @return {@code true} if {@code value} has been truncated; in this case {@link #isTruncated()} becomes {@code true}
+     */
+    public boolean writeEscaped(String value, int maxBytes) {
+        int length = value.length();
+
+        // Every character takes at most 6 bytes
+        if (maxBytes >= length * 6L) {
+            this.writeEscaped(value);
+            return false;
+        }
+
+        byte[][] replacements = (this.htmlSafe ? HTML_SAFE_REPLACEMENTS : REPLACEMENTS);
+        int maxSize = this.size + Math.max(maxBytes, 0);
+        int index = 0;
+        while (true) {
+            // Characters of clean run take one byte each
+            index = this.writeCleanRun(value, index, (int) Math.min(length, (long) index + (maxSize - this.size)), replacements);
+            if (index >= length) return false;
+
+            int sizeBefore = this.size;
+            index = this.writeEscapedChar(value, index, length, replacements) + 1;
+
+            if (this.size > maxSize) {
+                this.size = sizeBefore;
+                this.truncated = true;
+                return true;
+            }
+        }
+    }
+
+    // Copies run of ASCII characters, which need no escaping, from "index" to first other character (or to "end");
+    // returns index after run
+    @SuppressWarnings("deprecation")
+    private int writeCleanRun(String value, int index, int end, byte[][] replacements) {
+        int start = index;
+        while (index < end) {
+            char c = value.charAt(index);
+            if (c >= 0x80 || replacements[c] != null) break;
+            index++;
+        }
+
+        int count = index - start;
+        if (count > 0) {
+            this.ensureCapacity(count);
+            // Characters of run are ASCII - so their low bytes are their UTF-8 bytes, and whole run is copied at once
+            value.getBytes(start, index, this.bytes, this.size);
+            this.size += count;
+        }
+
+        return index;
+    }
+
+    // Writes character at "index" (or surrogate pair, starting at "index"); returns index of last written character
+    private int writeEscapedChar(String value, int index, int length, byte[][] replacements) {
+        char c = value.charAt(index);
+        if (c < 0x80) {
+            byte[] replacement = replacements[c];
+            if (replacement == null) {
+                this.write(c);
+            } else {
+                this.write(replacement);
+            }
+        } else if (c == '\u2028') {
+            this.write(LINE_SEPARATOR_REPLACEMENT);
+        } else if (c == '\u2029') {
+            this.write(PARAGRAPH_SEPARATOR_REPLACEMENT);
+        } else if (Character.isHighSurrogate(c) && (index + 1 < length) && Character.isLowSurrogate(value.charAt(index + 1))) {
+            this.writeCodePoint(Character.toCodePoint(c, value.charAt(++index)));
+        } else {
+            this.writeCodePoint(c);
+        }
+
+        return index;
+    }
+
+    /**
+     * Cuts escaped content of JSON string (written from {@code contentStart}, without quotes) to at most {@code maxBytes} bytes
+     *
+     * <p>
+     *     Content is cut between characters, so escape sequences and UTF-8 sequences are not broken;
+     *     {@link #isTruncated()} becomes {@code true}
+     * </p>
+     *
+     * @param contentStart index of first byte of content
+     * @param maxBytes max count of bytes of content
+     */
+    public void truncateEscaped(int contentStart, int maxBytes) {
+        int maxSize = contentStart + Math.max(maxBytes, 0);
+        if (this.size <= maxSize) return;
+
+        int position = contentStart;
+        while (position < maxSize) {
+            int b = this.bytes[position] & 0xFF;
+
+            int length;
+            if (b == '\\') {
+                length = (this.bytes[position + 1] == 'u' ? 6 : 2);
+            } else if (b < 0x80) {
+                length = 1;
+            } else if (b < 0xE0) {
+                length = 2;
+            } else if (b < 0xF0) {
+                length = 3;
+            } else {
+                length = 4;
+            }
+
+            if (position + length > maxSize) break;
+            position += length;
+        }
+
+        this.size = position;
+        this.truncated = true;
+    }
+    // endregion
+
+
+    // region JSON structure
+    private void push() {
+        if (this.depth == this.nonEmpty.length) this.nonEmpty = Arrays.copyOf(this.nonEmpty, this.depth << 1);
+        this.nonEmpty[this.depth++] = false;
+    }
+
+    private void pop() {
+        if (this.depth == 0) throw new IllegalStateException("Nesting problem");
+        this.depth--;
+        this.afterName = false;
+    }
+
+    private void beforeName() {
+        if (this.depth == 0) throw new IllegalStateException("Nesting problem");
+
+        int index = this.depth - 1;
+        if (this.nonEmpty[index]) {
+            this.write(',');
+        } else {
+            this.nonEmpty[index] = true;
+        }
+    }
+
+    /**
+     * Writes separator before next JSON value, if needed
+     *
+     * <p>
+     *     Must be called before writing of JSON value by third-party code
+     *     (for example - by {@link com.google.gson.Gson} through {@link #asWriter()})
+     * </p>
+     */
+    public void beforeValue() {
+        if (this.afterName) {
+            this.afterName = false;
+        } else if (this.depth > 0) {
+            int index = this.depth - 1;
+            if (this.nonEmpty[index]) {
+                this.write(',');
+            } else {
+                this.nonEmpty[index] = true;
+            }
+        }
+    }
+
+    /**
+     * Begins JSON object
+     */
+    public void beginObject() {
+        this.beforeValue();
+        this.write('{');
+        this.push();
+    }
+
+    /**
+     * Ends JSON object
+     */
+    public void endObject() {
+        this.pop();
+        this.write('}');
+    }
+
+    /**
+     * Begins JSON array
+     */
+    public void beginArray() {
+        this.beforeValue();
+        this.write('[');
+        this.push();
+    }
+
+    /**
+     * Ends JSON array
+     */
+    public void endArray() {
+        this.pop();
+        this.write(']');
+    }
+
+    /**
+     * Writes name of JSON property
+     *
+     * @param encodedName property name, encoded by {@link #encodeName(String, boolean)}
+     */
+    public void name(byte[] encodedName) {
+        this.beforeName();
+        this.write(encodedName);
+        this.afterName = true;
+    }
+
+    /**
+     * Writes name of JSON property
+     *
+     * @param name property name
+     */
+    public void name(String name) {
+        this.beforeName();
+        this.writeJsonString(name);
+        this.write(':');
+        this.afterName = true;
+    }
+
+    /**
+     * Writes JSON string value
+     *
+     * @param value string value; if {@code null} - JSON null will be written
+     */
+    public void value(String value) {
+        this.beforeValue();
+        if (value == null) {
+            this.write(NULL);
+        } else {
+            this.writeJsonString(value);
+        }
+    }
+
+    /**
+     * Writes JSON string value, truncated if needed
+     *
+     * <p>
+     *     Escaped content of string takes at most {@code maxBytes} bytes and does not exceed {@link #getLimit() limit} of buffer
+     * </p>
+     *
+     * @param value string value; if {@code null} - JSON null will be written
+     * @param maxBytes max count of bytes of escaped content (without quotes)
+     * @return {@code true} if {@code value} has been truncated
+     */
+    public boolean value(String value, int maxBytes) {
+        this.beforeValue();
+        if (value == null) {
+            this.write(NULL);
+            return false;
+        }
+
+        return this.writeJsonString(value, Math.min(maxBytes, this.limit - this.size - 2));
+    }
+
+    /**
+     * Writes JSON number value
+     *
+     * @param value number value
+     */
+    public void value(long value) {
+        this.beforeValue();
+        this.writeLong(value);
+    }
+
+    /**
+     * Writes JSON number value
+     *
+     * @param value number value; must be finite
+     */
+    public void value(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) throw new IllegalArgumentException("Numeric values must be finite, but was " + value);
+
+        this.beforeValue();
+        this.writeAscii(Double.toString(value));
+    }
+
+    /**
+     * Writes JSON boolean value
+     *
+     * @param value boolean value
+     */
+    public void value(boolean value) {
+        this.beforeValue();
+        this.write(value ? TRUE : FALSE);
+    }
+
+    /**
+     * Writes JSON null value
+     */
+    public void nullValue() {
+        this.beforeValue();
+        this.write(NULL);
+    }
+
+    /**
+     * Writes JSON string value, which contains unsigned hexadecimal representation of {@code value}
+     *
+     * @param value number value
+     *
+     * @see #writeHex(long)
+     */
+    public void hexValue(long value) {
+        this.beforeValue();
+        this.write('"');
+        this.writeHex(value);
+        this.write('"');
+    }
+
+    /**
+     * Writes already encoded JSON value
+     *
+     * @param encodedValue encoded JSON value, for example - result of {@link #encodeString(String, boolean)}
+     */
+    public void rawValue(byte[] encodedValue) {
+        this.beforeValue();
+        this.write(encodedValue);
+    }
+
+    /**
+     * Writes already encoded properties of current JSON object, for example {@code "service":"app","env":"prod"}
+     *
+     * @param encodedProperties encoded properties, separated by commas; must not be empty
+     */
+    public void rawProperties(byte[] encodedProperties) {
+        this.beforeName();
+        this.write(encodedProperties);
+    }
+    // endregion
+
+
+    // region Writer view
+    /**
+     * Returns {@link Writer} which encodes all written characters to UTF-8 and appends them to this buffer
+     *
+     * <p>
+     *     Returned writer is the same for every call; methods {@link Writer#flush()} and {@link Writer#close()} of this writer do nothing
+     * </p>
+     *
+     * @return writer of this buffer
+     */
+    public Writer asWriter() { return this.asWriter(Integer.MAX_VALUE); }
+
+    /**
+     * Returns {@link Writer} which encodes all written characters to UTF-8 and appends them to this buffer,
+     * until size of buffer exceeds {@code maxSize}
+     *
+     * <p>
+     *     When size of buffer exceeds {@code maxSize}, next write throws {@link SizeLimitExceededException},
+     *     so huge values are not written in full; returned writer is the same as {@link #asWriter()}, with another limit
+     * </p>
+     *
+     * @param maxSize max size of buffer
+     * @return writer of this buffer
+     */
+    public Writer asWriter(int maxSize) {
+        this.writer.maxSize = maxSize;
+        return this.writer;
+    }
+    // endregion
+
+
+    // region Reading
+    /**
+     * @return copy of written bytes
+     */
+    public byte[] toByteArray() { return Arrays.copyOf(this.bytes, this.size); }
+
+    /**
+     * Writes content of this buffer to {@code outputStream}
+     *
+     * @param outputStream target stream
+     * @throws IOException if {@code outputStream} throws it
+     */
+    public void writeTo(OutputStream outputStream) throws IOException { outputStream.write(this.bytes, 0, this.size); }
+
+    /**
+     * @return content of this buffer decoded as UTF-8 text
+     */
+    @Override
+    public String toString() { return new String(this.bytes, 0, this.size, StandardCharsets.UTF_8); }
+    // endregion
+}
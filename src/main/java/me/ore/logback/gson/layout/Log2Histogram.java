@@ -0,0 +1,53 @@
+package me.ore.logback.gson.layout;
+
+
+/**
+ * Utilities of histograms with power-of-2 buckets
+ *
+ * <p>
+ *     Bucket {@code 0} counts value {@code 0}; bucket {@code i} counts values from {@code 2^(i-1)} to {@code 2^i - 1};
+ *     last bucket also counts all greater values
+ * </p>
+ */
+final class Log2Histogram {
+    private Log2Histogram() {}
+
+
+    /**
+     * @param value value to count, not negative
+     * @param bucketCount count of buckets
+     * @return index of bucket, which counts {@code value}
+     */
+    static int bucket(long value, int bucketCount) {
+        return Math.min(64 - Long.numberOfLeadingZeros(value), bucketCount - 1);
+    }
+
+    /**
+     * @param bucket index of bucket
+     * @param bucketCount count of buckets
+     * @return max value, counted by bucket ({@link Long#MAX_VALUE} for last bucket)
+     */
+    static long upperBound(int bucket, int bucketCount) {
+        if (bucket >= bucketCount - 1) return Long.MAX_VALUE;
+        return (bucket == 0 ? 0 : (1L << bucket) - 1);
+    }
+
+    /**
+     * @param counts counts of buckets
+     * @param fraction fraction of values, from {@code 0} to {@code 1}
+     * @return upper bound of bucket, which contains value at {@code fraction} of all values; {@code 0} - if there are no values
+     */
+    static long percentile(long[] counts, double fraction) {
+        long total = 0;
+        for (long count : counts) total += count;
+        if (total == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(total * fraction));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) return upperBound(i, counts.length);
+        }
+        return upperBound(counts.length - 1, counts.length);
+    }
+}
@@ -0,0 +1,34 @@
+package me.ore.logback.gson.layout;
+
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+
+/**
+ * Logback {@link AsyncAppender}, which keeps {@link LogbackGsonLayout#EXTRA_PARAMS_HOLDER extra parameters} of logging thread
+ *
+ * <p>
+ *     With plain {@link AsyncAppender} layout is called by worker thread, so extra parameters of logging thread are lost;
+ *     this appender attaches snapshot of them to every log event (see {@link LogbackGsonLayout#captureExtraParams(ILoggingEvent)})
+ *     before log event is queued
+ * </p>
+ *
+ * <pre>{@code
+ * <appender name="ASYNC" class="me.ore.logback.gson.layout.LogbackGsonAsyncAppender">
+ *     <appender-ref ref="FILE"/>
+ * </appender>
+ * }</pre>
+ *
+ * <p>
+ *     Use this appender as drop-in replacement of {@link AsyncAppender} - configuration and behaviour
+ *     (queue size, discarding threshold, &quot;never block&quot;, one worker) are the same;
+ *     for lock-free queue, overflow policies, several workers and latency metrics, use {@link AsyncGsonAppender}
+ * </p>
+ *
+ * @see AsyncGsonAppender
+ */
+public class LogbackGsonAsyncAppender extends AsyncAppender {
+    @Override
+    protected void append(ILoggingEvent event) { super.append(LogbackGsonLayout.captureExtraParams(event)); }
+}
@@ -0,0 +1,38 @@
+package me.ore.logback.gson.layout;
+
+
+/**
+ * Modes of reuse of output buffers, to which log events are serialized
+ *
+ * <p>
+ *     In all modes new buffers are created with capacity, which follows recent (95th percentile) size of log events,
+ *     and buffers, which have grown over {@link LogbackGsonLayout#getMaxRetainedBufferBytes() limit}, are not reused
+ * </p>
+ *
+ * @see LogbackGsonLayout#getBufferReuse()
+ * @see LogbackGsonLayout#setBufferReuse(LogbackGsonBufferReuse)
+ */
+public enum LogbackGsonBufferReuse {
+    /**
+     * Every platform thread has its own buffer; virtual threads take buffers from bounded pool (like in mode {@link #POOL})
+     *
+     * <p>
+     *     Fastest mode for pools of platform threads
+     * </p>
+     */
+    THREAD_LOCAL,
+
+    /**
+     * Buffers are taken from bounded pool, shared by all threads, see {@link LogbackGsonLayout#getBufferPoolSize()}
+     *
+     * <p>
+     *     Count of retained buffers does not depend on count of threads - for applications with many short-living threads
+     * </p>
+     */
+    POOL,
+
+    /**
+     * New buffer for every log event
+     */
+    NONE
+}
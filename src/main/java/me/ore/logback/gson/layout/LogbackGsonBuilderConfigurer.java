@@ -14,4 +14,15 @@ public interface LogbackGsonBuilderConfigurer {
      * @param gsonBuilder GSON builder to configure
      */
     void configure(GsonBuilder gsonBuilder);
+
+    /**
+     * Registers writers of values (for example - of values of extra parameters), which are used instead of GSON
+     *
+     * <p>
+     *     Called after {@link #configure(GsonBuilder)}; by default - does nothing, so only built-in writers are used
+     * </p>
+     *
+     * @param valueWriters registry of value writers
+     */
+    default void configureValueWriters(LogbackGsonValueWriters valueWriters) {}
 }
@@ -0,0 +1,156 @@
+package me.ore.logback.gson.layout;
+
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.encoder.EncoderBase;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+
+/**
+ * Encoder which writes JSON objects of log events as UTF-8 bytes, without intermediate {@link String}
+ *
+ * <p>
+ *     JSON objects are generated by {@link LogbackGsonLayout}; if layout is not set, layout with default configuration is used
+ * </p>
+ */
+@SuppressWarnings("unused")
+public class LogbackGsonEncoder extends EncoderBase<ILoggingEvent> {
+    // region Instance properties
+    private LogbackGsonLayout layout;
+
+    /**
+     * @return layout which generates JSON objects of log events
+     *
+     * @see #setLayout(LogbackGsonLayout)
+     */
+    public LogbackGsonLayout getLayout() { return layout; }
+
+    /**
+     * Sets layout which generates JSON objects of log events
+     *
+     * @param layout layout
+     *
+     * @see #getLayout()
+     */
+    public void setLayout(LogbackGsonLayout layout) { this.layout = layout; }
+
+    private boolean ownLayout = false;
+    // endregion
+
+
+    // region Lifecycle
+    @Override
+    public void start() {
+        if (this.layout == null) {
+            LogbackGsonLayout defaultLayout = new LogbackGsonLayout();
+            defaultLayout.setContext(this.getContext());
+            this.layout = defaultLayout;
+            this.ownLayout = true;
+        }
+
+        if (!this.layout.isStarted()) this.layout.start();
+
+        super.start();
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+
+        if (this.ownLayout) {
+            this.layout.stop();
+            this.layout = null;
+            this.ownLayout = false;
+        }
+    }
+    // endregion
+
+
+    // region Encoding
+    @Override
+    public byte[] headerBytes() { return null; }
+
+    @Override
+    public byte[] footerBytes() { return null; }
+
+    @Override
+    public byte[] encode(ILoggingEvent event) {
+        LogbackGsonLayout layout = this.layout;
+        JsonOutputBuffer buffer = layout.acquireBuffer();
+        try {
+            layout.writeTo(event, buffer);
+            return buffer.toByteArray();
+        } finally {
+            layout.releaseBuffer(buffer);
+        }
+    }
+
+    /**
+     * Writes JSON object of log event directly to {@code outputStream}
+     *
+     * <p>
+     *     Unlike {@link #encode(ILoggingEvent)}, this method does not create copy of encoded bytes
+     * </p>
+     *
+     * @param event log event
+     * @param outputStream target stream
+     * @throws IOException if {@code outputStream} throws it
+     */
+    public void encode(ILoggingEvent event, OutputStream outputStream) throws IOException {
+        LogbackGsonLayout layout = this.layout;
+        JsonOutputBuffer buffer = layout.acquireBuffer();
+        try {
+            layout.writeTo(event, buffer);
+            buffer.writeTo(outputStream);
+        } finally {
+            layout.releaseBuffer(buffer);
+        }
+    }
+
+    /**
+     * Encodes log events to one array, as newline-delimited JSON
+     * (if {@link LogbackGsonLayout#getLogLineSeparator() log line separator} is {@code "\n"})
+     *
+     * @param events log events; {@code null} items are skipped
+     * @return encoded log events
+     *
+     * @see #encodeBatch(List, OutputStream)
+     */
+    public byte[] encodeBatch(List<? extends ILoggingEvent> events) {
+        LogbackGsonLayout layout = this.layout;
+        JsonOutputBuffer buffer = layout.acquireBuffer();
+        try {
+            layout.writeBatchTo(events, buffer);
+            return buffer.toByteArray();
+        } finally {
+            layout.releaseBuffer(buffer);
+        }
+    }
+
+    /**
+     * Writes JSON objects of log events directly to {@code outputStream}, with one call of {@link OutputStream#write(byte[], int, int)}
+     *
+     * <p>
+     *     Log events are written to one reusable buffer, so preparation of buffer and writing to stream
+     *     are done once per batch, not once per log event
+     * </p>
+     *
+     * @param events log events; {@code null} items are skipped
+     * @param outputStream target stream
+     * @throws IOException if {@code outputStream} throws it
+     */
+    public void encodeBatch(List<? extends ILoggingEvent> events, OutputStream outputStream) throws IOException {
+        LogbackGsonLayout layout = this.layout;
+        JsonOutputBuffer buffer = layout.acquireBuffer();
+        try {
+            layout.writeBatchTo(events, buffer);
+            if (buffer.size() > 0) buffer.writeTo(outputStream);
+        } finally {
+            layout.releaseBuffer(buffer);
+        }
+    }
+    // endregion
+}
@@ -0,0 +1,38 @@
+package me.ore.logback.gson.layout;
+
+
+/**
+ * Formats of &quot;error&quot; property
+ *
+ * @see LogbackGsonLayout#getErrorFormat()
+ * @see LogbackGsonLayout#setErrorFormat(LogbackGsonErrorFormat)
+ */
+public enum LogbackGsonErrorFormat {
+    /**
+     * Stack trace as one string, lines are separated by {@link LogbackGsonLayout#getStackTraceLineSeparator() stack trace line separator}
+     */
+    TEXT,
+
+    /**
+     * Stack trace as JSON object:
+     * <pre>{@code
+     * {
+     *     "class": "java.lang.RuntimeException",
+     *     "message": "Wrapping error",
+     *     "frames": ["me.ore.Main.main(Main.java:17)", ...],
+     *     "framesOmitted": 3,
+     *     "commonFramesOmitted": 2,
+     *     "cause": {...}
+     * }
+     * }</pre>
+     *
+     * <p>
+     *     {@code framesOmitted} - count of frames skipped because of {@link LogbackGsonLayout#getMaxFramesPerThrowable()}
+     *     and {@link LogbackGsonLayout#getExcludedFramePackages()}; {@code framesOmitted} and {@code commonFramesOmitted}
+     *     are written only if they are not zero.
+     *     If chain of causes is longer than {@link LogbackGsonLayout#getMaxCauseDepth()}, last written object contains
+     *     {@code "causesOmitted": <count>} instead of {@code cause}; if chain of causes is cyclic - {@code "causeCyclic": true}
+     * </p>
+     */
+    STRUCTURED
+}
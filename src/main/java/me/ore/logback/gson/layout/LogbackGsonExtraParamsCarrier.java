@@ -0,0 +1,24 @@
+package me.ore.logback.gson.layout;
+
+
+import java.util.Map;
+
+
+/**
+ * Log event which carries its own extra parameters
+ *
+ * <p>
+ *     If log event implements this interface, {@link LogbackGsonLayout} uses extra parameters of log event
+ *     instead of {@link LogbackGsonLayout#EXTRA_PARAMS_HOLDER} of current thread - so extra parameters are not lost,
+ *     when log event is written by another thread (for example, by worker of asynchronous appender)
+ * </p>
+ *
+ * @see LogbackGsonLayout#captureExtraParams(ch.qos.logback.classic.spi.ILoggingEvent)
+ * @see LogbackGsonAsyncAppender
+ */
+public interface LogbackGsonExtraParamsCarrier {
+    /**
+     * @return extra parameters, captured when log event has been created; {@code null} - no extra parameters
+     */
+    Map<String, Object> getExtraParams();
+}
@@ -0,0 +1,27 @@
+package me.ore.logback.gson.layout;
+
+
+/**
+ * Modes of writing of extra parameters ({@link LogbackGsonLayout#EXTRA_PARAMS_HOLDER}) in JSON object of log event
+ *
+ * @see LogbackGsonLayout#getExtraParamsGrouping()
+ * @see LogbackGsonLayout#setExtraParamsGrouping(LogbackGsonExtraParamsGrouping)
+ */
+public enum LogbackGsonExtraParamsGrouping {
+    /**
+     * Extra parameters are written as properties of JSON object of log event; parameters with reserved names are skipped
+     */
+    FLAT,
+
+    /**
+     * Extra parameters are written as properties of nested JSON object, see {@link LogbackGsonLayout#getPropertyExtraParams()};
+     * names of parameters are not checked against reserved names. Nested object is not written, if there are no parameters
+     */
+    NESTED,
+
+    /**
+     * Extra parameters are written as properties of JSON object of log event, names are prefixed
+     * with {@link LogbackGsonLayout#getExtraParamsPrefix() prefix}
+     */
+    PREFIXED
+}
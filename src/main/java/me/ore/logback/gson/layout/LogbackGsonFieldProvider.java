@@ -0,0 +1,54 @@
+package me.ore.logback.gson.layout;
+
+
+import java.util.Collection;
+
+
+/**
+ * Provider of one or more JSON properties of log event
+ *
+ * <p>
+ *     Providers are added to layout in Logback configuration:
+ * </p>
+ * <pre>{@code
+ * <layout class="me.ore.logback.gson.layout.LogbackGsonLayout">
+ *     <field class="me.ore.logback.gson.layout.HostnameFieldProvider">
+ *         <name>host</name>
+ *     </field>
+ * </layout>
+ * }</pre>
+ *
+ * <p>
+ *     When layout starts, every provider, which is enabled by {@link LogbackGsonLayout#getFields()}, is compiled
+ *     to {@link LogbackGsonFieldWriter}; so there are no configuration lookups while log events are written
+ * </p>
+ *
+ * @see LogbackGsonFieldProviderBase
+ * @see LogbackGsonLayout#addField(LogbackGsonFieldProvider)
+ */
+public interface LogbackGsonFieldProvider {
+    /**
+     * @return identifier of provider, used in {@link LogbackGsonLayout#getFields()}; must be unique in one layout
+     */
+    String getId();
+
+    /**
+     * Returns names of JSON properties written by this provider
+     *
+     * <p>
+     *     These names are reserved - extra parameters, MDC entries and key-value pairs with same names are skipped;
+     *     layout does not start, if name is already used by other field
+     * </p>
+     *
+     * @return names of JSON properties; called after {@link #compile(LogbackGsonLayout)}
+     */
+    Collection<String> getPropertyNames();
+
+    /**
+     * Prepares writer of JSON properties; called once, when layout starts
+     *
+     * @param layout starting layout; methods like {@link LogbackGsonLayout#encodeName(String)} can be used to prepare encoded values
+     * @return writer of JSON properties; {@code null} - nothing will be written by this provider
+     */
+    LogbackGsonFieldWriter compile(LogbackGsonLayout layout);
+}
@@ -0,0 +1,65 @@
+package me.ore.logback.gson.layout;
+
+
+import java.util.Collection;
+import java.util.Collections;
+
+
+/**
+ * Base class for providers which write one JSON property with configurable name
+ *
+ * <p>
+ *     {@link #getId() Identifier} of provider by default is the same as {@link #getName() property name}
+ * </p>
+ */
+@SuppressWarnings("unused")
+public abstract class LogbackGsonFieldProviderBase implements LogbackGsonFieldProvider {
+    // region Instance properties
+    private String id = null;
+
+    /**
+     * @return identifier of provider; by default - {@link #getName() property name}
+     *
+     * @see #setId(String)
+     */
+    @Override
+    public String getId() { return (id == null ? this.getName() : id); }
+
+    /**
+     * Sets identifier of provider
+     *
+     * @param id new identifier
+     *
+     * @see #getId()
+     */
+    public void setId(String id) { this.id = id; }
+
+
+    private String name;
+
+    /**
+     * @return name of JSON property; by default - {@link #getDefaultName()}
+     *
+     * @see #setName(String)
+     */
+    public String getName() { return (name == null ? this.getDefaultName() : name); }
+
+    /**
+     * Sets name of JSON property
+     *
+     * @param name new property name
+     *
+     * @see #getName()
+     */
+    public void setName(String name) { this.name = name; }
+    // endregion
+
+
+    /**
+     * @return name of JSON property, used if name is not configured
+     */
+    protected abstract String getDefaultName();
+
+    @Override
+    public Collection<String> getPropertyNames() { return Collections.singletonList(this.getName()); }
+}
@@ -0,0 +1,26 @@
+package me.ore.logback.gson.layout;
+
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+
+/**
+ * Writer of one or more JSON properties of log event
+ *
+ * <p>
+ *     Writers are prepared by {@link LogbackGsonFieldProvider#compile(LogbackGsonLayout)} once, when layout starts;
+ *     so method {@link #write(ILoggingEvent, JsonOutputBuffer)} should use only prepared values (encoded names and so on)
+ *     and should not look into configuration
+ * </p>
+ */
+@FunctionalInterface
+public interface LogbackGsonFieldWriter {
+    /**
+     * Writes JSON properties of log event - names and values, for example
+     * with {@link JsonOutputBuffer#name(byte[])} and {@link JsonOutputBuffer#value(String)}
+     *
+     * @param event log event
+     * @param buffer target buffer; JSON object of event is already started in this buffer
+     */
+    void write(ILoggingEvent event, JsonOutputBuffer buffer);
+}
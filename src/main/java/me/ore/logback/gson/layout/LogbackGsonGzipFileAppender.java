@@ -0,0 +1,243 @@
+package me.ore.logback.gson.layout;
+
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.FileAppender;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+
+/**
+ * File appender, which writes GZIP-compressed output of encoder (for example - NDJSON of {@link LogbackGsonEncoder})
+ *
+ * <p>
+ *     Output is written as sequence of independent GZIP members (see {@link GzipFrameOutputStream}); member is written when
+ *     {@link #getFrameSize() frame size} of uncompressed data is collected, or when {@link #getFrameInterval() frame interval} is over,
+ *     or when appender stops. Resulting file is valid GZIP file; it can be tailed and split by member boundaries
+ * </p>
+ *
+ * <pre>{@code
+ * <appender name="FILE" class="me.ore.logback.gson.layout.LogbackGsonGzipFileAppender">
+ *     <file>logs/app.json.gz</file>
+ *     <compressionLevel>6</compressionLevel>
+ *     <encoder class="me.ore.logback.gson.layout.LogbackGsonEncoder"/>
+ * </appender>
+ * }</pre>
+ *
+ * <p>
+ *     Mode {@link #isPrudent() prudent} is not supported
+ * </p>
+ */
+@SuppressWarnings("unused")
+public class LogbackGsonGzipFileAppender extends FileAppender<ILoggingEvent> {
+    // region Class constants
+    /**
+     * Default compression level
+     *
+     * @see #getCompressionLevel()
+     * @see #setCompressionLevel(int)
+     */
+    public static final int COMPRESSION_LEVEL = 6;
+
+    /**
+     * Default max count of uncompressed bytes in one GZIP member
+     *
+     * @see #getFrameSize()
+     * @see #setFrameSize(int)
+     */
+    public static final int FRAME_SIZE = 256 * 1024;
+
+    /**
+     * Default max age (in milliseconds) of GZIP member
+     *
+     * @see #getFrameInterval()
+     * @see #setFrameInterval(long)
+     */
+    public static final long FRAME_INTERVAL = 1000;
+    // endregion
+
+
+    // region Instance properties
+    private int compressionLevel = COMPRESSION_LEVEL;
+
+    /**
+     * @return compression level, from {@code 0} (no compression) to {@code 9} (best compression); by default - {@link #COMPRESSION_LEVEL}
+     *
+     * @see #COMPRESSION_LEVEL
+     * @see #setCompressionLevel(int)
+     */
+    public int getCompressionLevel() { return compressionLevel; }
+
+    /**
+     * Sets compression level; {@code 1} - fastest compression
+     *
+     * @param compressionLevel compression level, from {@code 0} (no compression) to {@code 9} (best compression)
+     *
+     * @see #COMPRESSION_LEVEL
+     * @see #getCompressionLevel()
+     */
+    public void setCompressionLevel(int compressionLevel) { this.compressionLevel = compressionLevel; }
+
+
+    private int frameSize = FRAME_SIZE;
+
+    /**
+     * @return max count of uncompressed bytes in one GZIP member; by default - {@link #FRAME_SIZE}
+     *
+     * @see #FRAME_SIZE
+     * @see #setFrameSize(int)
+     */
+    public int getFrameSize() { return frameSize; }
+
+    /**
+     * @param frameSize max count of uncompressed bytes in one GZIP member, must be positive
+     *
+     * @see #FRAME_SIZE
+     * @see #getFrameSize()
+     */
+    public void setFrameSize(int frameSize) { this.frameSize = frameSize; }
+
+
+    private long frameInterval = FRAME_INTERVAL;
+
+    /**
+     * @return max age (in milliseconds) of GZIP member - how long written log events can stay not compressed and not written to file;
+     * by default - {@link #FRAME_INTERVAL}
+     *
+     * @see #FRAME_INTERVAL
+     * @see #setFrameInterval(long)
+     */
+    public long getFrameInterval() { return frameInterval; }
+
+    /**
+     * @param frameInterval max age (in milliseconds) of GZIP member; {@code 0} - members are written only when they are full
+     *
+     * @see #FRAME_INTERVAL
+     * @see #getFrameInterval()
+     */
+    public void setFrameInterval(long frameInterval) { this.frameInterval = frameInterval; }
+    // endregion
+
+
+    // region Metrics
+    // Counts of closed streams
+    private long closedUncompressedByteCount = 0;
+    private long closedCompressedByteCount = 0;
+
+    private GzipFrameOutputStream currentStream() {
+        OutputStream outputStream = this.getOutputStream();
+        return (outputStream instanceof GzipFrameOutputStream ? (GzipFrameOutputStream) outputStream : null);
+    }
+
+    /**
+     * @return count of uncompressed bytes, written to file since appender created
+     */
+    public long getUncompressedByteCount() {
+        this.lock.lock();
+        try {
+            GzipFrameOutputStream stream = this.currentStream();
+            return this.closedUncompressedByteCount + (stream == null ? 0 : stream.getUncompressedByteCount());
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * @return count of compressed bytes, written to file since appender created
+     */
+    public long getCompressedByteCount() {
+        this.lock.lock();
+        try {
+            GzipFrameOutputStream stream = this.currentStream();
+            return this.closedCompressedByteCount + (stream == null ? 0 : stream.getCompressedByteCount());
+        } finally {
+            this.lock.unlock();
+        }
+    }
+    // endregion
+
+
+    // region Output stream
+    private ScheduledFuture<?> frameFuture;
+
+    @Override
+    public void setOutputStream(OutputStream outputStream) {
+        super.setOutputStream(new GzipFrameOutputStream(outputStream, this.getCompressionLevel(), this.getFrameSize(), this.getFrameInterval()));
+    }
+
+    @Override
+    protected void closeOutputStream() {
+        GzipFrameOutputStream stream = this.currentStream();
+        super.closeOutputStream();
+
+        if (stream != null) {
+            this.closedUncompressedByteCount += stream.getUncompressedByteCount();
+            this.closedCompressedByteCount += stream.getCompressedByteCount();
+        }
+    }
+
+    // Writes GZIP member, when there are no new log events
+    private void finishFrameIfDue() {
+        this.lock.lock();
+        try {
+            GzipFrameOutputStream stream = this.currentStream();
+            if (stream != null) stream.flush();
+        } catch (IOException e) {
+            this.addError("Cannot write compressed frame", e);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+    // endregion
+
+
+    @Override
+    public void start() {
+        if (this.isStarted()) return;
+
+        if (this.isPrudent()) {
+            this.addError("Prudent mode is not supported by compressing appender \"" + this.getName() + "\"");
+            return;
+        }
+        if (this.getCompressionLevel() < Deflater.NO_COMPRESSION || this.getCompressionLevel() > Deflater.BEST_COMPRESSION) {
+            this.addError("Invalid compression level [" + this.getCompressionLevel() + "]");
+            return;
+        }
+        if (this.getFrameSize() < 1) {
+            this.addError("Invalid frame size [" + this.getFrameSize() + "]");
+            return;
+        }
+        if (this.getFrameInterval() < 0) {
+            this.addError("Invalid frame interval [" + this.getFrameInterval() + "]");
+            return;
+        }
+
+        super.start();
+        if (!this.isStarted()) return;
+
+        if (this.getFrameInterval() > 0) {
+            this.frameFuture = this.getContext().getScheduledExecutorService().scheduleWithFixedDelay(
+                    this::finishFrameIfDue,
+                    this.getFrameInterval(),
+                    this.getFrameInterval(),
+                    TimeUnit.MILLISECONDS
+            );
+            this.getContext().addScheduledFuture(this.frameFuture);
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (!this.isStarted()) return;
+
+        if (this.frameFuture != null) {
+            this.frameFuture.cancel(false);
+            this.frameFuture = null;
+        }
+        super.stop();
+    }
+}
@@ -4,19 +4,40 @@ package me.ore.logback.gson.layout;
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.classic.spi.IThrowableProxy;
-import ch.qos.logback.classic.spi.StackTraceElementProxy;
 import ch.qos.logback.core.LayoutBase;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonParser;
+import com.google.gson.TypeAdapter;
 import com.google.gson.stream.JsonWriter;
+import org.slf4j.Marker;
+import org.slf4j.event.KeyValuePair;
 
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
@@ -27,11 +48,6 @@ import java.util.function.Function;
 @SuppressWarnings("unused")
 public class LogbackGsonLayout extends LayoutBase<ILoggingEvent> {
     // region Class constants
-    private static final Object LOCK = new Object();
-
-    private static final AtomicLong SEQUENCE = new AtomicLong(Long.MIN_VALUE);
-
-
     /**
      * Default value for line separator which separates JSON objects of log events
      *
@@ -55,6 +71,7 @@ public class LogbackGsonLayout extends LayoutBase<ILoggingEvent> {
      *
      * <p>
      * &quot;Sequence number&quot; - number of log event, unique in whole application since application started
+     * (depends on {@link #getSequenceMode() sequence mode})
      * </p>
      *
      * @see #getPropertySequenceNumber()
@@ -134,6 +151,241 @@ public class LogbackGsonLayout extends LayoutBase<ILoggingEvent> {
      */
     public static final String PROPERTY_ERROR = "error";
 
+    /**
+     * Default name for &quot;markers&quot; property
+     *
+     * <p>
+     * &quot;Markers&quot; - array of names of markers of log event; written only if {@link #isIncludeMarkers()}
+     * </p>
+     *
+     * @see #getPropertyMarkers()
+     * @see #setPropertyMarkers(String)
+     */
+    public static final String PROPERTY_MARKERS = "markers";
+
+    /**
+     * Default name for &quot;caller&quot; property
+     *
+     * <p>
+     * &quot;Caller&quot; - object with class, method, file and line of call site of log event; written only if {@link #isIncludeCallerData()}
+     * </p>
+     *
+     * @see #getPropertyCaller()
+     * @see #setPropertyCaller(String)
+     */
+    public static final String PROPERTY_CALLER = "caller";
+
+    /**
+     * Default name for &quot;extra&quot; property
+     *
+     * <p>
+     * &quot;Extra&quot; - object with extra parameters of log event; written only in mode {@link LogbackGsonExtraParamsGrouping#NESTED}
+     * </p>
+     *
+     * @see #getPropertyExtraParams()
+     * @see #setPropertyExtraParams(String)
+     */
+    public static final String PROPERTY_EXTRA_PARAMS = "extra";
+
+    /**
+     * Default name for &quot;truncated&quot; property
+     *
+     * <p>
+     * &quot;Truncated&quot; - {@code true}, if some value of log event has been truncated because of size limits;
+     * written only in such log events
+     * </p>
+     *
+     * @see #getPropertyTruncated()
+     * @see #setPropertyTruncated(String)
+     */
+    public static final String PROPERTY_TRUNCATED = "truncated";
+
+
+    /**
+     * Default mode of generation of &quot;sequence number&quot; property
+     *
+     * @see #getSequenceMode()
+     * @see #setSequenceMode(LogbackGsonSequenceMode)
+     */
+    public static final LogbackGsonSequenceMode SEQUENCE_MODE = LogbackGsonSequenceMode.GLOBAL;
+
+    /**
+     * Default size of block of sequence numbers, leased by thread in mode {@link LogbackGsonSequenceMode#THREAD_BLOCK}
+     *
+     * @see #getSequenceBlockSize()
+     * @see #setSequenceBlockSize(int)
+     */
+    public static final int SEQUENCE_BLOCK_SIZE = 1024;
+
+    /**
+     * Default max count of throwables, whose rendered stack frames are cached
+     *
+     * @see #getThrowableCacheSize()
+     * @see #setThrowableCacheSize(int)
+     */
+    public static final int THROWABLE_CACHE_SIZE = 256;
+
+    /**
+     * Default format of &quot;error&quot; property
+     *
+     * @see #getErrorFormat()
+     * @see #setErrorFormat(LogbackGsonErrorFormat)
+     */
+    public static final LogbackGsonErrorFormat ERROR_FORMAT = LogbackGsonErrorFormat.TEXT;
+
+    /**
+     * Default format of &quot;timestamp&quot; property
+     *
+     * @see #getTimestampFormat()
+     * @see #setTimestampFormat(LogbackGsonTimestampFormat)
+     */
+    public static final LogbackGsonTimestampFormat TIMESTAMP_FORMAT = LogbackGsonTimestampFormat.EPOCH_MILLIS;
+
+    /**
+     * Default zone of formatted &quot;timestamp&quot; property
+     *
+     * @see #getTimestampZone()
+     * @see #setTimestampZone(String)
+     */
+    public static final String TIMESTAMP_ZONE = "UTC";
+
+    /**
+     * Default max count of cached encoded names of extra parameters, MDC entries and key-value pairs
+     *
+     * @see #getNameCacheSize()
+     * @see #setNameCacheSize(int)
+     */
+    public static final int NAME_CACHE_SIZE = 256;
+
+    /**
+     * Default max count of cached encoded call sites of &quot;caller&quot; property
+     *
+     * @see #getCallerDataCacheSize()
+     * @see #setCallerDataCacheSize(int)
+     */
+    public static final int CALLER_DATA_CACHE_SIZE = 4096;
+
+    /**
+     * Default mode of writing of extra parameters
+     *
+     * @see #getExtraParamsGrouping()
+     * @see #setExtraParamsGrouping(LogbackGsonExtraParamsGrouping)
+     */
+    public static final LogbackGsonExtraParamsGrouping EXTRA_PARAMS_GROUPING = LogbackGsonExtraParamsGrouping.FLAT;
+
+    /**
+     * Default prefix of names of extra parameters in mode {@link LogbackGsonExtraParamsGrouping#PREFIXED}
+     *
+     * @see #getExtraParamsPrefix()
+     * @see #setExtraParamsPrefix(String)
+     */
+    public static final String EXTRA_PARAMS_PREFIX = "extra.";
+
+    /**
+     * Default mode of reuse of output buffers
+     *
+     * @see #getBufferReuse()
+     * @see #setBufferReuse(LogbackGsonBufferReuse)
+     */
+    public static final LogbackGsonBufferReuse BUFFER_REUSE = LogbackGsonBufferReuse.THREAD_LOCAL;
+
+    /**
+     * Default max count of output buffers in pool; {@code 0} - twice the count of available processors
+     *
+     * @see #getBufferPoolSize()
+     * @see #setBufferPoolSize(int)
+     */
+    public static final int BUFFER_POOL_SIZE = 0;
+
+    /**
+     * Default max capacity (in bytes) of reused output buffers
+     *
+     * @see #getMaxRetainedBufferBytes()
+     * @see #setMaxRetainedBufferBytes(int)
+     */
+    public static final int MAX_RETAINED_BUFFER_BYTES = 64 * 1024;
+
+    /**
+     * Default sample rate of measuring of serialization time, when metrics are enabled - one of 128 log events is timed
+     *
+     * @see #getMetricsTimingSampleRate()
+     * @see #setMetricsTimingSampleRate(int)
+     */
+    public static final int METRICS_TIMING_SAMPLE_RATE = 128;
+
+    /**
+     * Domain of JMX names of {@link LogbackGsonLayoutMetricsMBean metrics}, registered by layouts
+     *
+     * @see #getMetricsJmxName()
+     */
+    public static final String METRICS_JMX_DOMAIN = "me.ore.logback.gson.layout";
+
+
+    /**
+     * Identifier of built-in field &quot;sequence number&quot;, see {@link #getFields()}
+     */
+    public static final String FIELD_SEQUENCE_NUMBER = "sequenceNumber";
+
+    /**
+     * Identifier of built-in field &quot;timestamp&quot;, see {@link #getFields()}
+     */
+    public static final String FIELD_TIMESTAMP = "timestamp";
+
+    /**
+     * Identifier of built-in field &quot;thread&quot;, see {@link #getFields()}
+     */
+    public static final String FIELD_THREAD = "thread";
+
+    /**
+     * Identifier of built-in field &quot;level&quot;, see {@link #getFields()}
+     */
+    public static final String FIELD_LEVEL = "level";
+
+    /**
+     * Identifier of built-in field &quot;logger&quot;, see {@link #getFields()}
+     */
+    public static final String FIELD_LOGGER = "logger";
+
+    /**
+     * Identifier of built-in field &quot;message&quot;, see {@link #getFields()}
+     */
+    public static final String FIELD_MESSAGE = "message";
+
+    /**
+     * Identifier of built-in field &quot;error&quot;, see {@link #getFields()}
+     */
+    public static final String FIELD_ERROR = "error";
+
+    /**
+     * Identifier of built-in field &quot;MDC entries&quot;, see {@link #getFields()}
+     */
+    public static final String FIELD_MDC = "mdc";
+
+    /**
+     * Identifier of built-in field &quot;key-value pairs&quot;, see {@link #getFields()}
+     */
+    public static final String FIELD_KEY_VALUE_PAIRS = "keyValuePairs";
+
+    /**
+     * Identifier of built-in field &quot;markers&quot;, see {@link #getFields()}
+     */
+    public static final String FIELD_MARKERS = "markers";
+
+    /**
+     * Identifier of built-in field &quot;caller&quot;, see {@link #getFields()}
+     */
+    public static final String FIELD_CALLER = "caller";
+
+    /**
+     * Identifier of built-in field &quot;static fields&quot; ({@link #addStaticField(LogbackGsonStaticField)}), see {@link #getFields()}
+     */
+    public static final String FIELD_STATIC_FIELDS = "staticFields";
+
+    /**
+     * Identifier of built-in field &quot;extra parameters&quot; ({@link #EXTRA_PARAMS_HOLDER}), see {@link #getFields()}
+     */
+    public static final String FIELD_EXTRA_PARAMS = "extraParams";
+
 
     /**
      * Default value for &quot;message&quot; property
@@ -187,10 +439,22 @@ public class LogbackGsonLayout extends LayoutBase<ILoggingEvent> {
     public static void removeExtraParams() { EXTRA_PARAMS_HOLDER.remove(); }
 
     /**
-     * Creates and saves new {@link HashMap} in {@link #EXTRA_PARAMS_HOLDER}; after sends this map to `usage` function
+     * Starts new scope of extra parameters and sends map of this scope to `usage` function
+     *
+     * <p>
+     * Inside `usage` - map can be filled, after logs can be generated
+     * </p>
+     *
+     * <p>
+     *     Map is {@link ExtraParamsMap} of current thread, it is reused by all scopes of this thread, so scope does not create new map;
+     *     entries added in scope are removed when scope ends. Scopes can be nested - entries of inner scope hide
+     *     entries of outer scope with same keys, outer entries are visible in inner scope and are not copied.
+     *     Map must not be used after end of scope
+     * </p>
      *
      * <p>
-     * Inside `usage` - created map can be filled, after logs can be generated
+     *     When scope ends, previous value of {@link #EXTRA_PARAMS_HOLDER} is restored; if there was no value,
+     *     holder is cleared
      * </p>
      *
      * @param usage function, typically - logging
@@ -203,21 +467,32 @@ public class LogbackGsonLayout extends LayoutBase<ILoggingEvent> {
      * @see #useExtraParamsMap(Consumer)
      */
     public static <T> T useExtraParamsMap(Function<Map<String, Object>, T> usage) {
+        ExtraParamsMap map = ExtraParamsMap.forCurrentThread();
+        Map<String, Object> previous = enterExtraParamsScope(map);
         try {
-            Map<String, Object> map = new HashMap<>();
-            EXTRA_PARAMS_HOLDER.set(map);
-
             return usage.apply(map);
         } finally {
-            EXTRA_PARAMS_HOLDER.remove();
+            exitExtraParamsScope(map, previous);
         }
     }
 
     /**
-     * Creates and saves new {@link HashMap} in {@link #EXTRA_PARAMS_HOLDER}; after sends this map to `usage` function
+     * Starts new scope of extra parameters and sends map of this scope to `usage` function
+     *
+     * <p>
+     * Inside `usage` - map can be filled, after logs can be generated
+     * </p>
+     *
+     * <p>
+     *     Map is {@link ExtraParamsMap} of current thread, it is reused by all scopes of this thread, so scope does not create new map;
+     *     entries added in scope are removed when scope ends. Scopes can be nested - entries of inner scope hide
+     *     entries of outer scope with same keys, outer entries are visible in inner scope and are not copied.
+     *     Map must not be used after end of scope
+     * </p>
      *
      * <p>
-     * Inside `usage` - created map can be filled, after logs can be generated
+     *     When scope ends, previous value of {@link #EXTRA_PARAMS_HOLDER} is restored; if there was no value,
+     *     holder is cleared
      * </p>
      *
      * @param usage function, typically - logging
@@ -228,15 +503,66 @@ public class LogbackGsonLayout extends LayoutBase<ILoggingEvent> {
      * @see #useExtraParamsMap(Function)
      */
     public static void useExtraParamsMap(Consumer<Map<String, Object>> usage) {
+        ExtraParamsMap map = ExtraParamsMap.forCurrentThread();
+        Map<String, Object> previous = enterExtraParamsScope(map);
         try {
-            Map<String, Object> map = new HashMap<>();
-            EXTRA_PARAMS_HOLDER.set(map);
-
             usage.accept(map);
         } finally {
+            exitExtraParamsScope(map, previous);
+        }
+    }
+
+    private static Map<String, Object> enterExtraParamsScope(ExtraParamsMap map) {
+        Map<String, Object> previous = EXTRA_PARAMS_HOLDER.get();
+        // Holder is not changed, when it already contains map of current thread
+        if (previous != map) EXTRA_PARAMS_HOLDER.set(map);
+        map.enterScope();
+        return previous;
+    }
+
+    private static void exitExtraParamsScope(ExtraParamsMap map, Map<String, Object> previous) {
+        map.exitScope();
+        if (previous == null) {
             EXTRA_PARAMS_HOLDER.remove();
+        } else if (previous != map) {
+            EXTRA_PARAMS_HOLDER.set(previous);
         }
     }
+
+    /**
+     * Creates immutable snapshot of extra parameters of current thread ({@link #EXTRA_PARAMS_HOLDER})
+     *
+     * @return snapshot; {@code null} - if there are no extra parameters
+     *
+     * @see ExtraParamsSnapshot#of(Map)
+     * @see #captureExtraParams(ILoggingEvent)
+     */
+    public static ExtraParamsSnapshot snapshotExtraParams() {
+        Map<String, Object> extraParams = EXTRA_PARAMS_HOLDER.get();
+        return (extraParams == null || extraParams.isEmpty() ? null : ExtraParamsSnapshot.of(extraParams));
+    }
+
+    /**
+     * Attaches snapshot of extra parameters of current thread to log event
+     *
+     * <p>
+     *     Should be called in logging thread, when log event will be written by another thread
+     *     (for example - by asynchronous appender); layout takes extra parameters from returned log event,
+     *     not from {@link #EXTRA_PARAMS_HOLDER} of writing thread
+     * </p>
+     *
+     * @param event log event
+     * @return log event with snapshot of extra parameters (see {@link LogbackGsonExtraParamsCarrier});
+     * {@code event} - if there are no extra parameters, or if {@code event} already carries extra parameters
+     *
+     * @see LogbackGsonAsyncAppender
+     */
+    public static ILoggingEvent captureExtraParams(ILoggingEvent event) {
+        if (event instanceof LogbackGsonExtraParamsCarrier) return event;
+
+        ExtraParamsSnapshot extraParams = snapshotExtraParams();
+        return (extraParams == null ? event : new ExtraParamsLoggingEvent(event, extraParams));
+    }
     // endregion
 
 
@@ -245,63 +571,64 @@ public class LogbackGsonLayout extends LayoutBase<ILoggingEvent> {
 
     private static String valueOrDefault(String value, String defaultValue, @SuppressWarnings("SameParameterValue") boolean replaceBlankValue) {
         if (value == null) return defaultValue;
-        if (replaceBlankValue && (value.trim().length() == 0)) return defaultValue;
+        if (replaceBlankValue && isBlank(value)) return defaultValue;
         return value;
     }
 
-    private static String readThrowable(String stackTraceLineSeparator, IThrowableProxy source) {
-        if (source == null) return null;
-
-        StringBuilder resultBuilder = new StringBuilder();
-        //noinspection SpellCheckingInspection
-        HashSet<IThrowableProxy> passedThrowables = new HashSet<>();
-        boolean first = true;
-        IThrowableProxy currentThrowable = source;
-
-        while (currentThrowable != null) {
-            if (first) {
-                first = false;
-            } else {
-                resultBuilder.append(stackTraceLineSeparator).append("Caused by: ");
-            }
+    // Same as "value.trim().length() == 0", but without creation of new string
+    private static boolean isBlank(String value) {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            if (value.charAt(i) > ' ') return false;
+        }
+        return true;
+    }
 
-            if (passedThrowables.contains(currentThrowable)) {
-                //noinspection SpellCheckingInspection
-                resultBuilder.append("[Cyclic chain of throwables detected]");
-                break;
-            }
-            passedThrowables.add(currentThrowable);
-
-            resultBuilder.append(currentThrowable.getClassName()).append(": ").append(currentThrowable.getMessage());
-
-            StackTraceElementProxy[] stackTraceElementProxyArray = currentThrowable.getStackTraceElementProxyArray();
-            if (stackTraceElementProxyArray != null) {
-                for (StackTraceElementProxy stackTraceElementProxy : stackTraceElementProxyArray) {
-                    if (stackTraceElementProxy != null) {
-                        resultBuilder
-                                .append(stackTraceLineSeparator)
-                                .append("\t")
-                                .append(stackTraceElementProxy.getSTEAsString());
-                    }
-                }
-            }
+    private static final byte[] LEVEL_OFF = JsonOutputBuffer.encodeString(Level.OFF.levelStr, false);
+    private static final byte[] LEVEL_ERROR = JsonOutputBuffer.encodeString(Level.ERROR.levelStr, false);
+    private static final byte[] LEVEL_WARN = JsonOutputBuffer.encodeString(Level.WARN.levelStr, false);
+    private static final byte[] LEVEL_INFO = JsonOutputBuffer.encodeString(Level.INFO.levelStr, false);
+    private static final byte[] LEVEL_DEBUG = JsonOutputBuffer.encodeString(Level.DEBUG.levelStr, false);
+    private static final byte[] LEVEL_TRACE = JsonOutputBuffer.encodeString(Level.TRACE.levelStr, false);
+    private static final byte[] LEVEL_ALL = JsonOutputBuffer.encodeString(Level.ALL.levelStr, false);
+
+    private static byte[] encodedLevel(Level level) {
+        if (level == null) return LEVEL_TRACE;
+
+        switch (level.levelInt) {
+            case Level.OFF_INT: return LEVEL_OFF;
+            case Level.ERROR_INT: return LEVEL_ERROR;
+            case Level.WARN_INT: return LEVEL_WARN;
+            case Level.INFO_INT: return LEVEL_INFO;
+            case Level.DEBUG_INT: return LEVEL_DEBUG;
+            case Level.TRACE_INT: return LEVEL_TRACE;
+            case Level.ALL_INT: return LEVEL_ALL;
+            default: return JsonOutputBuffer.encodeString(level.levelStr, false);
+        }
+    }
 
-            int commonFrames = currentThrowable.getCommonFrames();
-            if (commonFrames > 0) {
-                resultBuilder
-                        .append(stackTraceLineSeparator)
-                        .append("\t<")
-                        .append(commonFrames)
-                        .append(" common frame(s) omitted")
-                        .append('>');
-            }
+    /**
+     * Splits comma-separated list; items are trimmed, empty items are skipped
+     *
+     * @param source comma-separated list, can be {@code null}
+     * @return items of list
+     */
+    static String[] splitList(String source) {
+        if (source == null) return new String[0];
 
-            currentThrowable = currentThrowable.getCause();
-        }
+        return Arrays.stream(source.split(","))
+                .map(String::trim)
+                .filter(item -> !item.isEmpty())
+                .toArray(String[]::new);
+    }
 
-        return resultBuilder.toString();
+    private static Set<String> splitListToSet(String source) {
+        String[] items = splitList(source);
+        return (items.length == 0 ? null : new HashSet<>(Arrays.asList(items)));
     }
 
+    private static int limitOrMax(int limit) { return (limit > 0 ? limit : Integer.MAX_VALUE); }
+
     private static String readPossibleQuoted(String source) {
         if (source.equals("\"")) return "";
 
@@ -584,82 +911,1297 @@ public class LogbackGsonLayout extends LayoutBase<ILoggingEvent> {
     public void setPropertyError(String propertyError) { this.propertyError = propertyError; }
 
 
-    private String gsonBuilderConfigurer = null;
+    private String propertyMarkers = PROPERTY_MARKERS;
 
     /**
-     * @return Name of class which implements interface {@link LogbackGsonBuilderConfigurer}
+     * Gets name for &quot;markers&quot; property
      *
-     * @see #setGsonBuilderConfigurer(String)
+     * <p>
+     * &quot;Markers&quot; - array of names of markers of log event; written only if {@link #isIncludeMarkers()}
+     * </p>
+     *
+     * @return property name
+     *
+     * @see #PROPERTY_MARKERS
+     * @see #setPropertyMarkers(String)
      */
-    public String getGsonBuilderConfigurer() { return gsonBuilderConfigurer; }
+    public String getPropertyMarkers() { return propertyMarkers; }
 
     /**
-     * Sets name of class which implements interface {@link LogbackGsonBuilderConfigurer}
+     * Sets name for &quot;markers&quot; property
      *
-     * @param gsonBuilderConfigurer class name
+     * <p>
+     * &quot;Markers&quot; - array of names of markers of log event; written only if {@link #isIncludeMarkers()}
+     * </p>
      *
-     * @see #getGsonBuilderConfigurer()
+     * @param propertyMarkers new property name
+     *
+     * @see #PROPERTY_MARKERS
+     * @see #getPropertyMarkers()
      */
-    public void setGsonBuilderConfigurer(String gsonBuilderConfigurer) { this.gsonBuilderConfigurer = gsonBuilderConfigurer; }
-
-    private Gson gson;
+    public void setPropertyMarkers(String propertyMarkers) { this.propertyMarkers = propertyMarkers; }
 
 
-    private String defaultMessage = DEFAULT_MESSAGE;
+    private String propertyCaller = PROPERTY_CALLER;
 
     /**
-     * Gets default value for &quot;message&quot; property
+     * Gets name for &quot;caller&quot; property
      *
      * <p>
-     * &quot;Message&quot; - message of log event
+     * &quot;Caller&quot; - object with class, method, file and line of call site of log event; written only if {@link #isIncludeCallerData()}
      * </p>
      *
-     * @return default value
+     * @return property name
      *
-     * @see #DEFAULT_MESSAGE
-     * @see #setDefaultMessage(String)
+     * @see #PROPERTY_CALLER
+     * @see #setPropertyCaller(String)
      */
-    public String getDefaultMessage() { return this.defaultMessage; }
+    public String getPropertyCaller() { return propertyCaller; }
 
     /**
-     * Sets default value for &quot;message&quot; property
+     * Sets name for &quot;caller&quot; property
      *
      * <p>
-     * &quot;Message&quot; - message of log event
+     * &quot;Caller&quot; - object with class, method, file and line of call site of log event; written only if {@link #isIncludeCallerData()}
      * </p>
      *
-     * @param defaultMessage new property name
+     * @param propertyCaller new property name
      *
-     * @see #DEFAULT_MESSAGE
-     * @see #getDefaultMessage()
+     * @see #PROPERTY_CALLER
+     * @see #getPropertyCaller()
      */
-    public void setDefaultMessage(String defaultMessage) { this.defaultMessage = defaultMessage; }
-    // endregion
+    public void setPropertyCaller(String propertyCaller) { this.propertyCaller = propertyCaller; }
 
 
-    @Override
-    public void start() {
-        super.start();
+    private String propertyExtraParams = PROPERTY_EXTRA_PARAMS;
 
-        String gsonBuilderConfigurerClassName = this.getGsonBuilderConfigurer();
+    /**
+     * Gets name for &quot;extra&quot; property
+     *
+     * <p>
+     * &quot;Extra&quot; - object with extra parameters of log event; written only in mode {@link LogbackGsonExtraParamsGrouping#NESTED}
+     * </p>
+     *
+     * @return property name
+     *
+     * @see #PROPERTY_EXTRA_PARAMS
+     * @see #setPropertyExtraParams(String)
+     */
+    public String getPropertyExtraParams() { return propertyExtraParams; }
 
-        Class<?> gsonBuilderConfigurerClass = null;
-        if (gsonBuilderConfigurerClassName != null) {
-            try {
-                gsonBuilderConfigurerClass = LogbackGsonLayout.class.getClassLoader().loadClass(gsonBuilderConfigurerClassName);
-            } catch (ClassNotFoundException e) {
-                throw new RuntimeException("Cannot load class of GSON builder configurer", e);
-            }
-        }
+    /**
+     * Sets name for &quot;extra&quot; property
+     *
+     * <p>
+     * &quot;Extra&quot; - object with extra parameters of log event; written only in mode {@link LogbackGsonExtraParamsGrouping#NESTED}
+     * </p>
+     *
+     * @param propertyExtraParams new property name
+     *
+     * @see #PROPERTY_EXTRA_PARAMS
+     * @see #getPropertyExtraParams()
+     */
+    public void setPropertyExtraParams(String propertyExtraParams) { this.propertyExtraParams = propertyExtraParams; }
 
-        Object gsonBuilderConfigurerRaw = null;
-        if (gsonBuilderConfigurerClass != null) {
-            try {
-                gsonBuilderConfigurerRaw = gsonBuilderConfigurerClass.getDeclaredConstructor().newInstance();
-            } catch (Exception e) {
-                throw new RuntimeException("Cannot create instance of class \"" + gsonBuilderConfigurerClass.getName() + "\"", e);
-            }
-        }
+
+    private String propertyTruncated = PROPERTY_TRUNCATED;
+
+    /**
+     * Gets name for &quot;truncated&quot; property
+     *
+     * <p>
+     * &quot;Truncated&quot; - {@code true}, if some value of log event has been truncated because of size limits;
+     * written only in such log events
+     * </p>
+     *
+     * @return property name
+     *
+     * @see #PROPERTY_TRUNCATED
+     * @see #setPropertyTruncated(String)
+     */
+    public String getPropertyTruncated() { return propertyTruncated; }
+
+    /**
+     * Sets name for &quot;truncated&quot; property
+     *
+     * <p>
+     * &quot;Truncated&quot; - {@code true}, if some value of log event has been truncated because of size limits;
+     * written only in such log events
+     * </p>
+     *
+     * @param propertyTruncated new property name
+     *
+     * @see #PROPERTY_TRUNCATED
+     * @see #getPropertyTruncated()
+     */
+    public void setPropertyTruncated(String propertyTruncated) { this.propertyTruncated = propertyTruncated; }
+
+
+    private boolean includeMdc = false;
+
+    /**
+     * Returns whether entries of MDC ({@link ILoggingEvent#getMDCPropertyMap()}) are written as JSON properties
+     *
+     * <p>
+     *     Entries whose keys overlap with &quot;main&quot; properties are skipped; entries whose keys are written
+     *     by key-value pairs or by extra parameters (in mode {@link LogbackGsonExtraParamsGrouping#FLAT}) of the same log event
+     *     are skipped too - precedence is: key-value pairs, extra parameters, MDC entries
+     * </p>
+     *
+     * @return {@code true} if MDC entries are written; by default - {@code false}
+     *
+     * @see #setIncludeMdc(boolean)
+     * @see #getIncludedMdcKeys()
+     * @see #getExcludedMdcKeys()
+     */
+    public boolean isIncludeMdc() { return includeMdc; }
+
+    /**
+     * Sets whether entries of MDC ({@link ILoggingEvent#getMDCPropertyMap()}) are written as JSON properties
+     *
+     * @param includeMdc {@code true} to write MDC entries
+     *
+     * @see #isIncludeMdc()
+     */
+    public void setIncludeMdc(boolean includeMdc) { this.includeMdc = includeMdc; }
+
+
+    private String includedMdcKeys = null;
+
+    /**
+     * @return comma-separated keys of MDC entries which are written; by default - {@code null}, all entries are written
+     *
+     * @see #isIncludeMdc()
+     * @see #setIncludedMdcKeys(String)
+     */
+    public String getIncludedMdcKeys() { return includedMdcKeys; }
+
+    /**
+     * Sets comma-separated keys of MDC entries which are written
+     *
+     * @param includedMdcKeys comma-separated keys; {@code null} or empty - all entries are written
+     *
+     * @see #getIncludedMdcKeys()
+     */
+    public void setIncludedMdcKeys(String includedMdcKeys) { this.includedMdcKeys = includedMdcKeys; }
+
+
+    private String excludedMdcKeys = null;
+
+    /**
+     * @return comma-separated keys of MDC entries which are not written; by default - {@code null}
+     *
+     * @see #isIncludeMdc()
+     * @see #setExcludedMdcKeys(String)
+     */
+    public String getExcludedMdcKeys() { return excludedMdcKeys; }
+
+    /**
+     * Sets comma-separated keys of MDC entries which are not written
+     *
+     * @param excludedMdcKeys comma-separated keys
+     *
+     * @see #getExcludedMdcKeys()
+     */
+    public void setExcludedMdcKeys(String excludedMdcKeys) { this.excludedMdcKeys = excludedMdcKeys; }
+
+
+    private boolean includeKeyValuePairs = false;
+
+    /**
+     * Returns whether key-value pairs of log event ({@link ILoggingEvent#getKeyValuePairs()}, SLF4J fluent API) are written as JSON properties
+     *
+     * <p>
+     *     Pairs whose keys overlap with &quot;main&quot; properties are skipped; keys of pairs take precedence over keys of MDC entries
+     *     and of extra parameters (in mode {@link LogbackGsonExtraParamsGrouping#FLAT}), see {@link #isIncludeMdc()}
+     * </p>
+     *
+     * @return {@code true} if key-value pairs are written; by default - {@code false}
+     *
+     * @see #setIncludeKeyValuePairs(boolean)
+     * @see #getIncludedKeyValuePairKeys()
+     * @see #getExcludedKeyValuePairKeys()
+     */
+    public boolean isIncludeKeyValuePairs() { return includeKeyValuePairs; }
+
+    /**
+     * Sets whether key-value pairs of log event ({@link ILoggingEvent#getKeyValuePairs()}, SLF4J fluent API) are written as JSON properties
+     *
+     * @param includeKeyValuePairs {@code true} to write key-value pairs
+     *
+     * @see #isIncludeKeyValuePairs()
+     */
+    public void setIncludeKeyValuePairs(boolean includeKeyValuePairs) { this.includeKeyValuePairs = includeKeyValuePairs; }
+
+
+    private String includedKeyValuePairKeys = null;
+
+    /**
+     * @return comma-separated keys of key-value pairs which are written; by default - {@code null}, all pairs are written
+     *
+     * @see #isIncludeKeyValuePairs()
+     * @see #setIncludedKeyValuePairKeys(String)
+     */
+    public String getIncludedKeyValuePairKeys() { return includedKeyValuePairKeys; }
+
+    /**
+     * Sets comma-separated keys of key-value pairs which are written
+     *
+     * @param includedKeyValuePairKeys comma-separated keys; {@code null} or empty - all pairs are written
+     *
+     * @see #getIncludedKeyValuePairKeys()
+     */
+    public void setIncludedKeyValuePairKeys(String includedKeyValuePairKeys) { this.includedKeyValuePairKeys = includedKeyValuePairKeys; }
+
+
+    private String excludedKeyValuePairKeys = null;
+
+    /**
+     * @return comma-separated keys of key-value pairs which are not written; by default - {@code null}
+     *
+     * @see #isIncludeKeyValuePairs()
+     * @see #setExcludedKeyValuePairKeys(String)
+     */
+    public String getExcludedKeyValuePairKeys() { return excludedKeyValuePairKeys; }
+
+    /**
+     * Sets comma-separated keys of key-value pairs which are not written
+     *
+     * @param excludedKeyValuePairKeys comma-separated keys
+     *
+     * @see #getExcludedKeyValuePairKeys()
+     */
+    public void setExcludedKeyValuePairKeys(String excludedKeyValuePairKeys) { this.excludedKeyValuePairKeys = excludedKeyValuePairKeys; }
+
+
+    private boolean includeMarkers = false;
+
+    /**
+     * @return {@code true} if names of markers of log event are written as array in &quot;markers&quot; property;
+     * by default - {@code false}
+     *
+     * @see #getPropertyMarkers()
+     * @see #setIncludeMarkers(boolean)
+     */
+    public boolean isIncludeMarkers() { return includeMarkers; }
+
+    /**
+     * Sets whether names of markers of log event are written as array in &quot;markers&quot; property
+     *
+     * @param includeMarkers {@code true} to write names of markers
+     *
+     * @see #isIncludeMarkers()
+     */
+    public void setIncludeMarkers(boolean includeMarkers) { this.includeMarkers = includeMarkers; }
+
+
+    private boolean includeCallerData = false;
+
+    /**
+     * Returns whether call site of log event is written as object in &quot;caller&quot; property
+     *
+     * <p>
+     *     Getting of caller data walks stack of thread - it can be limited by {@link #getCallerDataLevel() level} of log events
+     * </p>
+     *
+     * @return {@code true} if call site of log event is written; by default - {@code false}
+     *
+     * @see #getPropertyCaller()
+     * @see #setIncludeCallerData(boolean)
+     */
+    public boolean isIncludeCallerData() { return includeCallerData; }
+
+    /**
+     * Sets whether call site of log event is written as object in &quot;caller&quot; property
+     *
+     * @param includeCallerData {@code true} to write call site
+     *
+     * @see #isIncludeCallerData()
+     */
+    public void setIncludeCallerData(boolean includeCallerData) { this.includeCallerData = includeCallerData; }
+
+
+    private String callerDataLevel = null;
+
+    /**
+     * Returns min level of log events, for which &quot;caller&quot; property is written
+     *
+     * <p>
+     *     For log events with lower level stack of thread is not walked at all
+     * </p>
+     *
+     * @return name of level (for example, {@code "WARN"}); by default - {@code null}, all log events
+     *
+     * @see #setCallerDataLevel(String)
+     */
+    public String getCallerDataLevel() { return callerDataLevel; }
+
+    /**
+     * Sets min level of log events, for which &quot;caller&quot; property is written
+     *
+     * @param callerDataLevel name of level (for example, {@code "WARN"}); {@code null} - all log events
+     *
+     * @see #getCallerDataLevel()
+     */
+    public void setCallerDataLevel(String callerDataLevel) { this.callerDataLevel = callerDataLevel; }
+
+
+    private int callerDataCacheSize = CALLER_DATA_CACHE_SIZE;
+
+    /**
+     * Returns max count of cached encoded call sites of &quot;caller&quot; property
+     *
+     * <p>
+     *     Call sites are repeated from event to event, so every call site is escaped only once;
+     *     when cache is full, new call sites are not cached
+     * </p>
+     *
+     * @return max count of cached call sites; by default - {@link #CALLER_DATA_CACHE_SIZE}
+     *
+     * @see #CALLER_DATA_CACHE_SIZE
+     * @see #setCallerDataCacheSize(int)
+     */
+    public int getCallerDataCacheSize() { return callerDataCacheSize; }
+
+    /**
+     * Sets max count of cached encoded call sites of &quot;caller&quot; property
+     *
+     * @param callerDataCacheSize max count of cached call sites; {@code 0} - disables cache
+     *
+     * @see #CALLER_DATA_CACHE_SIZE
+     * @see #getCallerDataCacheSize()
+     */
+    public void setCallerDataCacheSize(int callerDataCacheSize) { this.callerDataCacheSize = callerDataCacheSize; }
+
+
+    private LogbackGsonExtraParamsGrouping extraParamsGrouping = EXTRA_PARAMS_GROUPING;
+
+    /**
+     * @return mode of writing of extra parameters; by default - {@link #EXTRA_PARAMS_GROUPING}
+     *
+     * @see #EXTRA_PARAMS_GROUPING
+     * @see #setExtraParamsGrouping(LogbackGsonExtraParamsGrouping)
+     */
+    public LogbackGsonExtraParamsGrouping getExtraParamsGrouping() { return extraParamsGrouping; }
+
+    /**
+     * Sets mode of writing of extra parameters
+     *
+     * @param extraParamsGrouping new mode
+     *
+     * @see #EXTRA_PARAMS_GROUPING
+     * @see #getExtraParamsGrouping()
+     */
+    public void setExtraParamsGrouping(LogbackGsonExtraParamsGrouping extraParamsGrouping) { this.extraParamsGrouping = extraParamsGrouping; }
+
+
+    private String extraParamsPrefix = EXTRA_PARAMS_PREFIX;
+
+    /**
+     * Returns prefix of names of extra parameters in mode {@link LogbackGsonExtraParamsGrouping#PREFIXED}
+     *
+     * <p>
+     *     Prefixed names are encoded once and cached with names of extra parameters, see {@link #getNameCacheSize()}
+     * </p>
+     *
+     * @return prefix; by default - {@link #EXTRA_PARAMS_PREFIX}
+     *
+     * @see #EXTRA_PARAMS_PREFIX
+     * @see #setExtraParamsPrefix(String)
+     */
+    public String getExtraParamsPrefix() { return extraParamsPrefix; }
+
+    /**
+     * Sets prefix of names of extra parameters in mode {@link LogbackGsonExtraParamsGrouping#PREFIXED}
+     *
+     * @param extraParamsPrefix new prefix, not empty
+     *
+     * @see #EXTRA_PARAMS_PREFIX
+     * @see #getExtraParamsPrefix()
+     */
+    public void setExtraParamsPrefix(String extraParamsPrefix) { this.extraParamsPrefix = extraParamsPrefix; }
+
+
+    private boolean sortExtraParams = false;
+
+    /**
+     * Returns whether extra parameters are written in order of their names
+     *
+     * <p>
+     *     Sorted order is cached for every set of names of parameters (in iteration order of map),
+     *     so parameters of the same call site are sorted only once, not on every log event
+     * </p>
+     *
+     * @return {@code true} if extra parameters are sorted by names; by default - {@code false}, iteration order of map
+     *
+     * @see #setSortExtraParams(boolean)
+     */
+    public boolean isSortExtraParams() { return sortExtraParams; }
+
+    /**
+     * Sets whether extra parameters are written in order of their names
+     *
+     * @param sortExtraParams {@code true} to sort extra parameters by names
+     *
+     * @see #isSortExtraParams()
+     */
+    public void setSortExtraParams(boolean sortExtraParams) { this.sortExtraParams = sortExtraParams; }
+
+
+    private LogbackGsonSequenceMode sequenceMode = SEQUENCE_MODE;
+
+    /**
+     * @return mode of generation of &quot;sequence number&quot; property; by default - {@link #SEQUENCE_MODE}
+     *
+     * @see #SEQUENCE_MODE
+     * @see #setSequenceMode(LogbackGsonSequenceMode)
+     */
+    public LogbackGsonSequenceMode getSequenceMode() { return sequenceMode; }
+
+    /**
+     * Sets mode of generation of &quot;sequence number&quot; property
+     *
+     * @param sequenceMode new mode
+     *
+     * @see #SEQUENCE_MODE
+     * @see #getSequenceMode()
+     */
+    public void setSequenceMode(LogbackGsonSequenceMode sequenceMode) { this.sequenceMode = sequenceMode; }
+
+
+    private int sequenceBlockSize = SEQUENCE_BLOCK_SIZE;
+
+    /**
+     * @return size of block of sequence numbers, leased by thread in mode {@link LogbackGsonSequenceMode#THREAD_BLOCK};
+     * by default - {@link #SEQUENCE_BLOCK_SIZE}
+     *
+     * @see #SEQUENCE_BLOCK_SIZE
+     * @see #setSequenceBlockSize(int)
+     */
+    public int getSequenceBlockSize() { return sequenceBlockSize; }
+
+    /**
+     * Sets size of block of sequence numbers, leased by thread in mode {@link LogbackGsonSequenceMode#THREAD_BLOCK}
+     *
+     * @param sequenceBlockSize new block size, must be positive
+     *
+     * @see #SEQUENCE_BLOCK_SIZE
+     * @see #getSequenceBlockSize()
+     */
+    public void setSequenceBlockSize(int sequenceBlockSize) { this.sequenceBlockSize = sequenceBlockSize; }
+
+
+    private int throwableCacheSize = THROWABLE_CACHE_SIZE;
+
+    /**
+     * Returns max count of throwables, whose rendered stack frames are cached
+     *
+     * <p>
+     *     When same errors are logged repeatedly, their stack frames are not rendered again; cache key - class of throwable,
+     *     its stack frames and count of common frames, so throwables with different messages share same cache entry
+     * </p>
+     *
+     * @return max count of cached throwables; by default - {@link #THROWABLE_CACHE_SIZE}
+     *
+     * @see #THROWABLE_CACHE_SIZE
+     * @see #setThrowableCacheSize(int)
+     * @see #getThrowableCacheHitCount()
+     * @see #getThrowableCacheMissCount()
+     */
+    public int getThrowableCacheSize() { return throwableCacheSize; }
+
+    /**
+     * Sets max count of throwables, whose rendered stack frames are cached
+     *
+     * @param throwableCacheSize new max count of cached throwables; {@code 0} - disables cache
+     *
+     * @see #THROWABLE_CACHE_SIZE
+     * @see #getThrowableCacheSize()
+     */
+    public void setThrowableCacheSize(int throwableCacheSize) { this.throwableCacheSize = throwableCacheSize; }
+
+    /**
+     * @return count of throwables whose rendered stack frames have been found in cache, since layout started
+     *
+     * @see #getThrowableCacheSize()
+     */
+    public long getThrowableCacheHitCount() {
+        ThrowableRenderer throwableRenderer = this.throwableRenderer;
+        return (throwableRenderer == null ? 0 : throwableRenderer.getHitCount());
+    }
+
+    /**
+     * @return count of throwables whose stack frames have been rendered because they were not found in cache, since layout started
+     *
+     * @see #getThrowableCacheSize()
+     */
+    public long getThrowableCacheMissCount() {
+        ThrowableRenderer throwableRenderer = this.throwableRenderer;
+        return (throwableRenderer == null ? 0 : throwableRenderer.getMissCount());
+    }
+
+
+    private LogbackGsonErrorFormat errorFormat = ERROR_FORMAT;
+
+    /**
+     * @return format of &quot;error&quot; property; by default - {@link #ERROR_FORMAT}
+     *
+     * @see #ERROR_FORMAT
+     * @see #setErrorFormat(LogbackGsonErrorFormat)
+     */
+    public LogbackGsonErrorFormat getErrorFormat() { return errorFormat; }
+
+    /**
+     * Sets format of &quot;error&quot; property
+     *
+     * @param errorFormat new format
+     *
+     * @see #ERROR_FORMAT
+     * @see #getErrorFormat()
+     */
+    public void setErrorFormat(LogbackGsonErrorFormat errorFormat) { this.errorFormat = errorFormat; }
+
+
+    private int maxFramesPerThrowable = 0;
+
+    /**
+     * Returns max count of stack frames written for every throwable in format {@link LogbackGsonErrorFormat#STRUCTURED}
+     *
+     * @return max count of stack frames; by default - {@code 0}, without limit
+     *
+     * @see #setMaxFramesPerThrowable(int)
+     */
+    public int getMaxFramesPerThrowable() { return maxFramesPerThrowable; }
+
+    /**
+     * Sets max count of stack frames written for every throwable in format {@link LogbackGsonErrorFormat#STRUCTURED}
+     *
+     * @param maxFramesPerThrowable max count of stack frames; {@code 0} - without limit
+     *
+     * @see #getMaxFramesPerThrowable()
+     */
+    public void setMaxFramesPerThrowable(int maxFramesPerThrowable) { this.maxFramesPerThrowable = maxFramesPerThrowable; }
+
+
+    private int maxCauseDepth = 0;
+
+    /**
+     * Returns max count of throwables of one cause chain, written in format {@link LogbackGsonErrorFormat#STRUCTURED}
+     *
+     * @return max count of throwables; by default - {@code 0}, without limit
+     *
+     * @see #setMaxCauseDepth(int)
+     */
+    public int getMaxCauseDepth() { return maxCauseDepth; }
+
+    /**
+     * Sets max count of throwables of one cause chain, written in format {@link LogbackGsonErrorFormat#STRUCTURED}
+     *
+     * @param maxCauseDepth max count of throwables; {@code 0} - without limit
+     *
+     * @see #getMaxCauseDepth()
+     */
+    public void setMaxCauseDepth(int maxCauseDepth) { this.maxCauseDepth = maxCauseDepth; }
+
+
+    private String excludedFramePackages = null;
+
+    /**
+     * Returns comma-separated prefixes of class names, whose stack frames are not written in format {@link LogbackGsonErrorFormat#STRUCTURED}
+     *
+     * @return prefixes of class names, for example - {@code "sun.reflect.,java.lang.reflect."}; by default - {@code null}
+     *
+     * @see #setExcludedFramePackages(String)
+     */
+    public String getExcludedFramePackages() { return excludedFramePackages; }
+
+    /**
+     * Sets comma-separated prefixes of class names, whose stack frames are not written in format {@link LogbackGsonErrorFormat#STRUCTURED}
+     *
+     * @param excludedFramePackages prefixes of class names
+     *
+     * @see #getExcludedFramePackages()
+     */
+    public void setExcludedFramePackages(String excludedFramePackages) { this.excludedFramePackages = excludedFramePackages; }
+
+
+    private LogbackGsonTimestampFormat timestampFormat = TIMESTAMP_FORMAT;
+
+    /**
+     * Returns format of &quot;timestamp&quot; property
+     *
+     * <p>
+     *     Formatted timestamps ({@link LogbackGsonTimestampFormat#ISO_8601}, {@link LogbackGsonTimestampFormat#PATTERN})
+     *     are formatted once per second; for every event only digits of fraction of second are written
+     * </p>
+     *
+     * @return format of timestamp; by default - {@link #TIMESTAMP_FORMAT}
+     *
+     * @see #TIMESTAMP_FORMAT
+     * @see #setTimestampFormat(LogbackGsonTimestampFormat)
+     * @see #getTimestampPattern()
+     * @see #getTimestampZone()
+     */
+    public LogbackGsonTimestampFormat getTimestampFormat() { return timestampFormat; }
+
+    /**
+     * Sets format of &quot;timestamp&quot; property
+     *
+     * @param timestampFormat new format
+     *
+     * @see #TIMESTAMP_FORMAT
+     * @see #getTimestampFormat()
+     */
+    public void setTimestampFormat(LogbackGsonTimestampFormat timestampFormat) { this.timestampFormat = timestampFormat; }
+
+
+    private String timestampPattern = null;
+
+    /**
+     * @return pattern of {@link java.time.format.DateTimeFormatter} for format {@link LogbackGsonTimestampFormat#PATTERN};
+     * by default - {@code null}
+     *
+     * @see #setTimestampPattern(String)
+     */
+    public String getTimestampPattern() { return timestampPattern; }
+
+    /**
+     * Sets pattern of {@link java.time.format.DateTimeFormatter} for format {@link LogbackGsonTimestampFormat#PATTERN}
+     *
+     * @param timestampPattern pattern, for example {@code "yyyy-MM-dd HH:mm:ss.SSSSSS"}
+     *
+     * @see #getTimestampPattern()
+     */
+    public void setTimestampPattern(String timestampPattern) { this.timestampPattern = timestampPattern; }
+
+
+    private String timestampZone = TIMESTAMP_ZONE;
+
+    /**
+     * @return ID of zone of formatted &quot;timestamp&quot; property; by default - {@link #TIMESTAMP_ZONE}
+     *
+     * @see #TIMESTAMP_ZONE
+     * @see #setTimestampZone(String)
+     */
+    public String getTimestampZone() { return timestampZone; }
+
+    /**
+     * Sets ID of zone of formatted &quot;timestamp&quot; property
+     *
+     * @param timestampZone ID of zone, see {@link ZoneId#of(String)}; for example {@code "Europe/Moscow"} or {@code "+03:00"}
+     *
+     * @see #TIMESTAMP_ZONE
+     * @see #getTimestampZone()
+     */
+    public void setTimestampZone(String timestampZone) { this.timestampZone = timestampZone; }
+
+
+    private int maxMessageBytes = 0;
+
+    /**
+     * Returns max count of bytes of &quot;message&quot; property value (escaped, without quotes)
+     *
+     * <p>
+     *     Longer messages are truncated while they are written, and &quot;truncated&quot; property is added to log event
+     * </p>
+     *
+     * @return max count of bytes; by default - {@code 0}, without limit
+     *
+     * @see #setMaxMessageBytes(int)
+     * @see #getTruncatedMessageCount()
+     */
+    public int getMaxMessageBytes() { return maxMessageBytes; }
+
+    /**
+     * Sets max count of bytes of &quot;message&quot; property value (escaped, without quotes)
+     *
+     * @param maxMessageBytes max count of bytes; {@code 0} - without limit
+     *
+     * @see #getMaxMessageBytes()
+     */
+    public void setMaxMessageBytes(int maxMessageBytes) { this.maxMessageBytes = maxMessageBytes; }
+
+
+    private int maxErrorBytes = 0;
+
+    /**
+     * Returns max count of bytes of &quot;error&quot; property value
+     *
+     * <p>
+     *     In format {@link LogbackGsonErrorFormat#TEXT} longer stack traces are cut; in format {@link LogbackGsonErrorFormat#STRUCTURED}
+     *     only class and message of error are written
+     * </p>
+     *
+     * @return max count of bytes; by default - {@code 0}, without limit
+     *
+     * @see #setMaxErrorBytes(int)
+     * @see #getTruncatedErrorCount()
+     */
+    public int getMaxErrorBytes() { return maxErrorBytes; }
+
+    /**
+     * Sets max count of bytes of &quot;error&quot; property value
+     *
+     * @param maxErrorBytes max count of bytes; {@code 0} - without limit
+     *
+     * @see #getMaxErrorBytes()
+     */
+    public void setMaxErrorBytes(int maxErrorBytes) { this.maxErrorBytes = maxErrorBytes; }
+
+
+    private int maxValueBytes = 0;
+
+    /**
+     * Returns max count of bytes of every value of extra parameter, MDC entry and key-value pair
+     *
+     * <p>
+     *     Longer strings are truncated; other values, serialized by GSON, are serialized until limit, and their truncated JSON
+     *     is written as string
+     * </p>
+     *
+     * @return max count of bytes; by default - {@code 0}, without limit
+     *
+     * @see #setMaxValueBytes(int)
+     * @see #getTruncatedValueCount()
+     */
+    public int getMaxValueBytes() { return maxValueBytes; }
+
+    /**
+     * Sets max count of bytes of every value of extra parameter, MDC entry and key-value pair
+     *
+     * @param maxValueBytes max count of bytes; {@code 0} - without limit
+     *
+     * @see #getMaxValueBytes()
+     */
+    public void setMaxValueBytes(int maxValueBytes) { this.maxValueBytes = maxValueBytes; }
+
+
+    private int maxEventBytes = 0;
+
+    /**
+     * Returns max count of bytes of JSON object of log event (without log line separator)
+     *
+     * <p>
+     *     Values which do not fit are truncated, properties which do not fit at all are skipped; ignored when pretty printing is enabled in GSON
+     * </p>
+     *
+     * <p>
+     *     Fields are written in {@link #getFields() order}, and every field leaves room for fields after it:
+     *     every field has equal share of half of limit, but field leaves not more than half of remaining room.
+     *     Room of field depends only on limit, count of fields and content of the same log event. So long value (for example, message)
+     *     is truncated, and fields after it (error, MDC entries, extra parameters and so on) are still written;
+     *     field, which does not fit at all, is skipped, fields after it are still written
+     * </p>
+     *
+     * @return max count of bytes; by default - {@code 0}, without limit
+     *
+     * @see #setMaxEventBytes(int)
+     * @see #getTruncatedEventCount()
+     */
+    public int getMaxEventBytes() { return maxEventBytes; }
+
+    /**
+     * Sets max count of bytes of JSON object of log event (without log line separator)
+     *
+     * @param maxEventBytes max count of bytes; {@code 0} - without limit
+     *
+     * @see #getMaxEventBytes()
+     */
+    public void setMaxEventBytes(int maxEventBytes) { this.maxEventBytes = maxEventBytes; }
+
+
+    private final LongAdder truncatedMessageCount = new LongAdder();
+    private final LongAdder truncatedErrorCount = new LongAdder();
+    private final LongAdder truncatedValueCount = new LongAdder();
+    private final LongAdder truncatedEventCount = new LongAdder();
+
+    /**
+     * @return count of truncated messages since layout created
+     *
+     * @see #getMaxMessageBytes()
+     */
+    public long getTruncatedMessageCount() { return this.truncatedMessageCount.sum(); }
+
+    /**
+     * @return count of truncated errors since layout created
+     *
+     * @see #getMaxErrorBytes()
+     */
+    public long getTruncatedErrorCount() { return this.truncatedErrorCount.sum(); }
+
+    /**
+     * @return count of truncated values of extra parameters, MDC entries and key-value pairs since layout created
+     *
+     * @see #getMaxValueBytes()
+     */
+    public long getTruncatedValueCount() { return this.truncatedValueCount.sum(); }
+
+    /**
+     * @return count of log events with &quot;truncated&quot; property since layout created
+     *
+     * @see #getPropertyTruncated()
+     * @see #getMaxEventBytes()
+     */
+    public long getTruncatedEventCount() { return this.truncatedEventCount.sum(); }
+
+
+    private boolean metricsEnabled = false;
+
+    /**
+     * Returns if metrics of layout are collected
+     *
+     * <p>
+     *     Metrics are counts of log events, bytes, errors and values serialized by GSON, histograms of serialization time
+     *     and of count of extra parameters; they are available with {@link #getMetrics()} and (optionally) with JMX.
+     *     When metrics are disabled, layout does not touch them at all
+     * </p>
+     *
+     * @return {@code true} if metrics are collected; by default - {@code false}
+     *
+     * @see #setMetricsEnabled(boolean)
+     * @see #getMetrics()
+     */
+    public boolean isMetricsEnabled() { return metricsEnabled; }
+
+    /**
+     * Sets if metrics of layout are collected
+     *
+     * @param metricsEnabled {@code true} if metrics should be collected
+     *
+     * @see #isMetricsEnabled()
+     */
+    public void setMetricsEnabled(boolean metricsEnabled) { this.metricsEnabled = metricsEnabled; }
+
+
+    private int metricsTimingSampleRate = METRICS_TIMING_SAMPLE_RATE;
+
+    /**
+     * Returns sample rate of measuring of serialization time - one of {@code metricsTimingSampleRate} log events is timed
+     *
+     * <p>
+     *     Counters are updated for every log event, but {@link System#nanoTime()} is called only for sampled log events
+     * </p>
+     *
+     * @return sample rate; by default - {@link #METRICS_TIMING_SAMPLE_RATE}
+     *
+     * @see #METRICS_TIMING_SAMPLE_RATE
+     * @see #setMetricsTimingSampleRate(int)
+     */
+    public int getMetricsTimingSampleRate() { return metricsTimingSampleRate; }
+
+    /**
+     * Sets sample rate of measuring of serialization time
+     *
+     * @param metricsTimingSampleRate sample rate, must be positive; {@code 1} - every log event is timed
+     *
+     * @see #METRICS_TIMING_SAMPLE_RATE
+     * @see #getMetricsTimingSampleRate()
+     */
+    public void setMetricsTimingSampleRate(int metricsTimingSampleRate) { this.metricsTimingSampleRate = metricsTimingSampleRate; }
+
+
+    private boolean metricsJmxEnabled = true;
+
+    /**
+     * @return {@code true} (by default) if {@link #isMetricsEnabled() enabled} metrics are registered in platform MBean server
+     *
+     * @see #setMetricsJmxEnabled(boolean)
+     * @see #getMetricsJmxName()
+     */
+    public boolean isMetricsJmxEnabled() { return metricsJmxEnabled; }
+
+    /**
+     * @param metricsJmxEnabled {@code true} if {@link #isMetricsEnabled() enabled} metrics should be registered in platform MBean server
+     *
+     * @see #isMetricsJmxEnabled()
+     */
+    public void setMetricsJmxEnabled(boolean metricsJmxEnabled) { this.metricsJmxEnabled = metricsJmxEnabled; }
+
+
+    private String metricsJmxName = null;
+
+    /**
+     * Returns JMX name of metrics
+     *
+     * @return JMX name; by default - {@code null}, name is generated:
+     * {@code me.ore.logback.gson.layout:type=LogbackGsonLayout,context=<name of context>,id=<identity of layout>}
+     *
+     * @see #METRICS_JMX_DOMAIN
+     * @see #setMetricsJmxName(String)
+     */
+    public String getMetricsJmxName() { return metricsJmxName; }
+
+    /**
+     * Sets JMX name of metrics
+     *
+     * @param metricsJmxName JMX name, see {@link ObjectName}; {@code null} - name is generated;
+     *                       if name is already used (e.g. by other layout), metrics are not registered and warning is added
+     *
+     * @see #getMetricsJmxName()
+     */
+    public void setMetricsJmxName(String metricsJmxName) { this.metricsJmxName = metricsJmxName; }
+
+
+    private LogbackGsonLayoutMetrics metrics;
+    private ObjectName registeredMetricsName;
+
+    /**
+     * @return metrics of layout; {@code null} - if layout is not started or metrics are {@link #isMetricsEnabled() disabled}
+     *
+     * @see #isMetricsEnabled()
+     */
+    public LogbackGsonLayoutMetrics getMetrics() { return metrics; }
+
+
+    private int nameCacheSize = NAME_CACHE_SIZE;
+
+    /**
+     * Returns max count of cached encoded names of extra parameters, MDC entries and key-value pairs
+     *
+     * <p>
+     *     Names which are repeated from event to event (like {@code requestId}) are escaped only once;
+     *     when cache is full, new names are not cached
+     * </p>
+     *
+     * @return max count of cached names; by default - {@link #NAME_CACHE_SIZE}
+     *
+     * @see #NAME_CACHE_SIZE
+     * @see #setNameCacheSize(int)
+     */
+    public int getNameCacheSize() { return nameCacheSize; }
+
+    /**
+     * Sets max count of cached encoded names of extra parameters, MDC entries and key-value pairs
+     *
+     * @param nameCacheSize max count of cached names; {@code 0} - disables cache
+     *
+     * @see #NAME_CACHE_SIZE
+     * @see #getNameCacheSize()
+     */
+    public void setNameCacheSize(int nameCacheSize) { this.nameCacheSize = nameCacheSize; }
+
+
+    private LogbackGsonBufferReuse bufferReuse = BUFFER_REUSE;
+
+    /**
+     * Returns mode of reuse of output buffers, to which log events are serialized
+     *
+     * @return mode of reuse; by default - {@link #BUFFER_REUSE}
+     *
+     * @see #BUFFER_REUSE
+     * @see #setBufferReuse(LogbackGsonBufferReuse)
+     */
+    public LogbackGsonBufferReuse getBufferReuse() { return bufferReuse; }
+
+    /**
+     * Sets mode of reuse of output buffers, to which log events are serialized
+     *
+     * @param bufferReuse new mode
+     *
+     * @see #BUFFER_REUSE
+     * @see #getBufferReuse()
+     */
+    public void setBufferReuse(LogbackGsonBufferReuse bufferReuse) { this.bufferReuse = bufferReuse; }
+
+
+    private int bufferPoolSize = BUFFER_POOL_SIZE;
+
+    /**
+     * Returns max count of output buffers in pool
+     *
+     * <p>
+     *     Pool is used in mode {@link LogbackGsonBufferReuse#POOL}, and by virtual threads in mode {@link LogbackGsonBufferReuse#THREAD_LOCAL}
+     * </p>
+     *
+     * @return max count of buffers; by default - {@link #BUFFER_POOL_SIZE}
+     *
+     * @see #BUFFER_POOL_SIZE
+     * @see #setBufferPoolSize(int)
+     */
+    public int getBufferPoolSize() { return bufferPoolSize; }
+
+    /**
+     * Sets max count of output buffers in pool
+     *
+     * @param bufferPoolSize max count of buffers; {@code 0} - twice the count of available processors
+     *
+     * @see #BUFFER_POOL_SIZE
+     * @see #getBufferPoolSize()
+     */
+    public void setBufferPoolSize(int bufferPoolSize) { this.bufferPoolSize = bufferPoolSize; }
+
+
+    private int maxRetainedBufferBytes = MAX_RETAINED_BUFFER_BYTES;
+
+    /**
+     * Returns max capacity (in bytes) of reused output buffers
+     *
+     * <p>
+     *     Buffer, grown over this capacity by huge log event, is not reused - next log events get buffer of usual size
+     *     (capacity of new buffers follows 95th percentile of recent sizes of log events)
+     * </p>
+     *
+     * @return max capacity; by default - {@link #MAX_RETAINED_BUFFER_BYTES}
+     *
+     * @see #MAX_RETAINED_BUFFER_BYTES
+     * @see #setMaxRetainedBufferBytes(int)
+     */
+    public int getMaxRetainedBufferBytes() { return maxRetainedBufferBytes; }
+
+    /**
+     * Sets max capacity (in bytes) of reused output buffers
+     *
+     * @param maxRetainedBufferBytes max capacity
+     *
+     * @see #MAX_RETAINED_BUFFER_BYTES
+     * @see #getMaxRetainedBufferBytes()
+     */
+    public void setMaxRetainedBufferBytes(int maxRetainedBufferBytes) { this.maxRetainedBufferBytes = maxRetainedBufferBytes; }
+
+
+    private String fields = null;
+
+    /**
+     * Returns comma-separated identifiers of fields, which are written in log events, in order of writing
+     *
+     * <p>
+     *     Identifiers of built-in fields - {@link #FIELD_SEQUENCE_NUMBER}, {@link #FIELD_TIMESTAMP}, {@link #FIELD_THREAD},
+     *     {@link #FIELD_LEVEL}, {@link #FIELD_LOGGER}, {@link #FIELD_MESSAGE}, {@link #FIELD_ERROR}, {@link #FIELD_MDC},
+     *     {@link #FIELD_KEY_VALUE_PAIRS}, {@link #FIELD_MARKERS}, {@link #FIELD_CALLER}, {@link #FIELD_STATIC_FIELDS}, {@link #FIELD_EXTRA_PARAMS};
+     *     identifiers of other fields - {@link LogbackGsonFieldProvider#getId() identifiers} of {@link #addField(LogbackGsonFieldProvider) added providers}
+     * </p>
+     *
+     * <p>
+     *     If fields are not set - built-in fields are written in order above (MDC entries, key-value pairs, markers and caller - only if
+     *     {@link #isIncludeMdc()}, {@link #isIncludeKeyValuePairs()}, {@link #isIncludeMarkers()}, {@link #isIncludeCallerData()};
+     *     static fields - if they are added),
+     *     added providers are written before extra parameters, in order of adding
+     * </p>
+     *
+     * @return comma-separated identifiers of fields; by default - {@code null}
+     *
+     * @see #setFields(String)
+     * @see #addField(LogbackGsonFieldProvider)
+     */
+    public String getFields() { return fields; }
+
+    /**
+     * Sets comma-separated identifiers of fields, which are written in log events, in order of writing
+     *
+     * <p>
+     *     Fields, which are not in list, are not written
+     * </p>
+     *
+     * @param fields comma-separated identifiers of fields, for example - {@code "timestamp,level,message,host"};
+     *               {@code null} or empty - default list
+     *
+     * @see #getFields()
+     */
+    public void setFields(String fields) { this.fields = fields; }
+
+
+    private final List<LogbackGsonFieldProvider> fieldProviders = new ArrayList<>();
+
+    /**
+     * @return added providers of fields
+     *
+     * @see #addField(LogbackGsonFieldProvider)
+     */
+    public List<LogbackGsonFieldProvider> getFieldProviders() { return Collections.unmodifiableList(fieldProviders); }
+
+    /**
+     * Adds provider of fields; in Logback configuration - element {@code <field class="...">}
+     *
+     * @param fieldProvider provider of fields
+     *
+     * @see #getFieldProviders()
+     * @see #getFields()
+     */
+    public void addField(LogbackGsonFieldProvider fieldProvider) { this.fieldProviders.add(fieldProvider); }
+
+
+    private final List<LogbackGsonStaticField> staticFields = new ArrayList<>();
+
+    /**
+     * @return added static fields
+     *
+     * @see #addStaticField(LogbackGsonStaticField)
+     */
+    public List<LogbackGsonStaticField> getStaticFields() { return Collections.unmodifiableList(staticFields); }
+
+    /**
+     * Adds static field - property with the same value in every log event; in Logback configuration - element {@code <staticField>}
+     *
+     * <p>
+     *     All static fields are encoded to one JSON fragment when layout starts, and this fragment is copied to every log event.
+     *     Layout does not start, if name of static field is already used by other property (for example, &quot;level&quot;)
+     * </p>
+     *
+     * @param staticField static field
+     *
+     * @see #getStaticFields()
+     * @see #FIELD_STATIC_FIELDS
+     */
+    public void addStaticField(LogbackGsonStaticField staticField) { this.staticFields.add(staticField); }
+
+
+    private String gsonBuilderConfigurer = null;
+
+    /**
+     * @return Name of class which implements interface {@link LogbackGsonBuilderConfigurer}
+     *
+     * @see #setGsonBuilderConfigurer(String)
+     */
+    public String getGsonBuilderConfigurer() { return gsonBuilderConfigurer; }
+
+    /**
+     * Sets name of class which implements interface {@link LogbackGsonBuilderConfigurer}
+     *
+     * @param gsonBuilderConfigurer class name
+     *
+     * @see #getGsonBuilderConfigurer()
+     */
+    public void setGsonBuilderConfigurer(String gsonBuilderConfigurer) { this.gsonBuilderConfigurer = gsonBuilderConfigurer; }
+
+
+    private boolean htmlSafe = true;
+
+    /**
+     * Returns if HTML characters ({@code <}, {@code >}, {@code &}, {@code =} and {@code '}) are escaped in JSON strings,
+     * like in {@link Gson#htmlSafe()}
+     *
+     * <p>
+     *     HTML escaping is also disabled, if {@link #getGsonBuilderConfigurer() GSON builder configurer} calls
+     *     {@link GsonBuilder#disableHtmlEscaping()}
+     * </p>
+     *
+     * @return {@code true} (by default) if HTML characters are escaped
+     *
+     * @see #setHtmlSafe(boolean)
+     */
+    public boolean isHtmlSafe() { return htmlSafe; }
+
+    /**
+     * Sets if HTML characters are escaped in JSON strings; {@code false} also disables HTML escaping in GSON of this layout
+     *
+     * @param htmlSafe {@code false} - HTML characters are written as is
+     *
+     * @see #isHtmlSafe()
+     */
+    public void setHtmlSafe(boolean htmlSafe) { this.htmlSafe = htmlSafe; }
+
+
+    private Gson gson;
+    private LogbackGsonValueWriters valueWriters;
+
+    // Values below are prepared in "start()"
+    private boolean escapeHtml;
+    private boolean serializeNulls;
+    private boolean prettyPrinting;
+    private SequenceGenerator sequenceGenerator;
+    private BufferProvider bufferProvider;
+    private ThrowableRenderer throwableRenderer;
+    private PropertyNames propertyNames;
+    private PropertyNames extraParamNames;
+    // Sources, whose keys take precedence over keys of MDC entries and extra parameters in the same JSON object
+    private boolean keyValuePairsWritten;
+    private boolean flatExtraParamsWritten;
+    private byte[] nameExtraParams;
+    private ExtraParamsOrder extraParamsOrder;
+    private Set<String> includedMdcKeySet;
+    private Set<String> excludedMdcKeySet;
+    private Set<String> includedKeyValuePairKeySet;
+    private Set<String> excludedKeyValuePairKeySet;
+    private LogbackGsonFieldWriter[] fieldWriters;
+    // Room, reserved for every field which is not written yet, when event size is limited
+    private int fieldReserve;
+    private int messageLimit;
+    private int errorLimit;
+    private int valueLimit;
+    private int eventLimit;
+    private byte[] nameTruncated;
+    private byte[] logLineSeparatorBytes;
+
+
+    private String defaultMessage = DEFAULT_MESSAGE;
+
+    /**
+     * Gets default value for &quot;message&quot; property
+     *
+     * <p>
+     * &quot;Message&quot; - message of log event
+     * </p>
+     *
+     * @return default value
+     *
+     * @see #DEFAULT_MESSAGE
+     * @see #setDefaultMessage(String)
+     */
+    public String getDefaultMessage() { return this.defaultMessage; }
+
+    /**
+     * Sets default value for &quot;message&quot; property
+     *
+     * <p>
+     * &quot;Message&quot; - message of log event
+     * </p>
+     *
+     * @param defaultMessage new property name
+     *
+     * @see #DEFAULT_MESSAGE
+     * @see #getDefaultMessage()
+     */
+    public void setDefaultMessage(String defaultMessage) { this.defaultMessage = defaultMessage; }
+    // endregion
+
+
+    // region Buffers
+    /**
+     * Returns empty output buffer
+     *
+     * <p>
+     *     If buffer of current thread is already in use (for example, when some type adapter generates logs during serialization),
+     *     new buffer will be returned
+     * </p>
+     *
+     * @return empty buffer; must be returned by {@link #releaseBuffer(JsonOutputBuffer)}
+     *
+     * @see #getBufferReuse()
+     */
+    JsonOutputBuffer acquireBuffer() { return this.bufferProvider.acquire(); }
+
+    /**
+     * Returns buffer, got from {@link #acquireBuffer()}
+     *
+     * @param buffer buffer to return
+     */
+    void releaseBuffer(JsonOutputBuffer buffer) { this.bufferProvider.release(buffer); }
+    // endregion
+
+
+    @Override
+    public void start() {
+        super.start();
+
+        String gsonBuilderConfigurerClassName = this.getGsonBuilderConfigurer();
+
+        Class<?> gsonBuilderConfigurerClass = null;
+        if (gsonBuilderConfigurerClassName != null) {
+            try {
+                gsonBuilderConfigurerClass = LogbackGsonLayout.class.getClassLoader().loadClass(gsonBuilderConfigurerClassName);
+            } catch (ClassNotFoundException e) {
+                throw new RuntimeException("Cannot load class of GSON builder configurer", e);
+            }
+        }
+
+        Object gsonBuilderConfigurerRaw = null;
+        if (gsonBuilderConfigurerClass != null) {
+            try {
+                gsonBuilderConfigurerRaw = gsonBuilderConfigurerClass.getDeclaredConstructor().newInstance();
+            } catch (Exception e) {
+                throw new RuntimeException("Cannot create instance of class \"" + gsonBuilderConfigurerClass.getName() + "\"", e);
+            }
+        }
 
         LogbackGsonBuilderConfigurer gsonBuilderConfigurer = null;
         if (gsonBuilderConfigurerRaw != null) {
@@ -679,79 +2221,827 @@ public class LogbackGsonLayout extends LayoutBase<ILoggingEvent> {
 
         GsonBuilder gsonBuilder = new GsonBuilder();
         if (gsonBuilderConfigurer != null) gsonBuilderConfigurer.configure(gsonBuilder);
+        if (!this.isHtmlSafe()) gsonBuilder.disableHtmlEscaping();
         this.gson = gsonBuilder.create();
+
+        this.escapeHtml = this.gson.htmlSafe();
+        this.serializeNulls = this.gson.serializeNulls();
+        this.prettyPrinting = isPrettyPrinting(this.gson);
+
+        if (this.getSequenceBlockSize() <= 0) throw new RuntimeException("Sequence block size must be positive");
+        this.sequenceGenerator = SequenceGenerator.create(valueOrDefault(this.getSequenceMode(), SEQUENCE_MODE), this.getSequenceBlockSize());
+
+        if (this.getBufferPoolSize() < 0) throw new RuntimeException("Buffer pool size must not be negative");
+        if (this.getMaxRetainedBufferBytes() < 16) throw new RuntimeException("Max retained buffer bytes must be at least 16");
+        int bufferPoolSize = (this.getBufferPoolSize() == 0 ? Runtime.getRuntime().availableProcessors() * 2 : this.getBufferPoolSize());
+        this.bufferProvider = BufferProvider.create(valueOrDefault(this.getBufferReuse(), BUFFER_REUSE), bufferPoolSize, this.getMaxRetainedBufferBytes());
+
+        this.throwableRenderer = new ThrowableRenderer(this, this.escapeHtml);
+
+        this.includedMdcKeySet = splitListToSet(this.getIncludedMdcKeys());
+        this.excludedMdcKeySet = splitListToSet(this.getExcludedMdcKeys());
+        this.includedKeyValuePairKeySet = splitListToSet(this.getIncludedKeyValuePairKeys());
+        this.excludedKeyValuePairKeySet = splitListToSet(this.getExcludedKeyValuePairKeys());
+
+        this.messageLimit = limitOrMax(this.getMaxMessageBytes());
+        this.errorLimit = limitOrMax(this.getMaxErrorBytes());
+        this.valueLimit = limitOrMax(this.getMaxValueBytes());
+        this.nameTruncated = this.encodeName(this.getPropertyTruncated());
+        // Space for ',"truncated":true}'
+        int truncatedReserve = this.nameTruncated.length + 6;
+        if (this.getMaxEventBytes() > 0 && this.getMaxEventBytes() < truncatedReserve + 2) {
+            throw new RuntimeException("Max event bytes must be at least " + (truncatedReserve + 2));
+        }
+        this.eventLimit = (this.getMaxEventBytes() > 0 && !this.prettyPrinting ? this.getMaxEventBytes() - truncatedReserve : 0);
+
+        this.valueWriters = new LogbackGsonValueWriters(this.gson, this.valueLimit);
+        if (gsonBuilderConfigurer != null) gsonBuilderConfigurer.configureValueWriters(this.valueWriters);
+
+        if (this.isMetricsEnabled()) {
+            if (this.getMetricsTimingSampleRate() <= 0) throw new RuntimeException("Metrics timing sample rate must be positive");
+            this.metrics = new LogbackGsonLayoutMetrics(this.getMetricsTimingSampleRate());
+        } else {
+            this.metrics = null;
+        }
+
+        this.compileFields();
+        this.logLineSeparatorBytes = this.getLogLineSeparator().getBytes(StandardCharsets.UTF_8);
+
+        if (this.metrics != null && this.isMetricsJmxEnabled()) this.registerMetrics(this.metrics);
     }
 
-    public String doLayout(ILoggingEvent event) {
-        String result;
-        try (StringWriter stringWriter = new StringWriter(256)) {
-            try (JsonWriter jsonWriter = this.gson.newJsonWriter(stringWriter)) {
-                jsonWriter.beginObject();
+    @Override
+    public void stop() {
+        this.unregisterMetrics();
+        super.stop();
+    }
 
-                String propertySequenceNumber = this.getPropertySequenceNumber();
-                jsonWriter.name(propertySequenceNumber).value(Long.toHexString(SEQUENCE.getAndIncrement()));
+    // region Metrics
+    private void registerMetrics(LogbackGsonLayoutMetrics metrics) {
+        this.unregisterMetrics();
+
+        ObjectName name;
+        try {
+            String jmxName = this.getMetricsJmxName();
+            if (jmxName == null || jmxName.trim().isEmpty()) {
+                String contextName = (this.getContext() == null ? null : this.getContext().getName());
+                jmxName = METRICS_JMX_DOMAIN + ":type=" + LogbackGsonLayout.class.getSimpleName() +
+                        ",context=" + ObjectName.quote(String.valueOf(contextName)) +
+                        ",id=" + Integer.toHexString(System.identityHashCode(this));
+            }
+            name = new ObjectName(jmxName.trim());
+        } catch (MalformedObjectNameException e) {
+            throw new RuntimeException("Invalid JMX name of metrics \"" + this.getMetricsJmxName() + "\"", e);
+        }
 
-                String propertyTimestamp = this.getPropertyTimestamp();
-                jsonWriter.name(propertyTimestamp).value(event.getTimeStamp());
+        try {
+            // Bean with same name (of other layout) is kept - name of this layout must be changed
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, name);
+            this.registeredMetricsName = name;
+        } catch (InstanceAlreadyExistsException e) {
+            this.addWarn("Metrics of layout are not registered - JMX name \"" + name + "\" is already used, set other \"metricsJmxName\"");
+        } catch (JMException e) {
+            // Metrics stay available with "getMetrics()"
+            this.addWarn("Cannot register metrics of layout with JMX name \"" + name + "\"", e);
+        }
+    }
 
-                String propertyThread = this.getPropertyThread();
-                jsonWriter.name(propertyThread).value(valueOrDefault(event.getThreadName(), ""));
+    // Only bean registered by this layout is unregistered
+    private void unregisterMetrics() {
+        ObjectName name = this.registeredMetricsName;
+        if (name == null) return;
 
-                String propertyLevel = this.getPropertyLevel();
-                jsonWriter.name(propertyLevel).value(valueOrDefault(event.getLevel(), Level.TRACE).levelStr);
+        this.registeredMetricsName = null;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException e) {
+            this.addWarn("Cannot unregister metrics of layout with JMX name \"" + name + "\"", e);
+        }
+    }
+    // endregion
 
-                String propertyLogger = this.getPropertyLogger();
-                jsonWriter.name(propertyLogger).value(valueOrDefault(event.getLoggerName(), ""));
+    // region Fields
+    private List<String> defaultFieldIds() {
+        List<String> result = new ArrayList<>();
+        result.add(FIELD_SEQUENCE_NUMBER);
+        result.add(FIELD_TIMESTAMP);
+        result.add(FIELD_THREAD);
+        result.add(FIELD_LEVEL);
+        result.add(FIELD_LOGGER);
+        result.add(FIELD_MESSAGE);
+        result.add(FIELD_ERROR);
+        if (this.isIncludeMdc()) result.add(FIELD_MDC);
+        if (this.isIncludeKeyValuePairs()) result.add(FIELD_KEY_VALUE_PAIRS);
+        if (this.isIncludeMarkers()) result.add(FIELD_MARKERS);
+        if (this.isIncludeCallerData()) result.add(FIELD_CALLER);
+        if (!this.staticFields.isEmpty()) result.add(FIELD_STATIC_FIELDS);
+        for (LogbackGsonFieldProvider fieldProvider : this.fieldProviders) result.add(fieldProvider.getId());
+        result.add(FIELD_EXTRA_PARAMS);
+        return result;
+    }
 
-                String propertyMessage = this.getPropertyMessage();
-                jsonWriter.name(propertyMessage).value(valueOrDefault(event.getFormattedMessage(), this.getDefaultMessage(), true));
+    // Compiles list of fields to array of writers, so writing of event does not look into configuration
+    private void compileFields() {
+        Map<String, LogbackGsonFieldProvider> providersById = new HashMap<>();
+        for (LogbackGsonFieldProvider fieldProvider : this.fieldProviders) {
+            String id = fieldProvider.getId();
+            if (id == null) throw new RuntimeException("Field provider of class \"" + fieldProvider.getClass().getName() + "\" has no ID");
+            if (providersById.put(id, fieldProvider) != null) throw new RuntimeException("Duplicate ID of field provider: \"" + id + "\"");
+        }
 
-                String propertyError = this.getPropertyError();
-                String throwableText = readThrowable(this.getStackTraceLineSeparator(), event.getThrowableProxy());
-                if (throwableText != null) {
-                    jsonWriter.name(propertyError).value(throwableText);
+        String[] configuredFieldIds = splitList(this.getFields());
+        List<String> fieldIds = (configuredFieldIds.length == 0 ? this.defaultFieldIds() : Arrays.asList(configuredFieldIds));
+
+        List<LogbackGsonFieldWriter> writers = new ArrayList<>(fieldIds.size());
+        List<String> reservedNames = new ArrayList<>();
+        this.keyValuePairsWritten = fieldIds.contains(FIELD_KEY_VALUE_PAIRS);
+        this.flatExtraParamsWritten = (fieldIds.contains(FIELD_EXTRA_PARAMS)
+                && valueOrDefault(this.getExtraParamsGrouping(), EXTRA_PARAMS_GROUPING) == LogbackGsonExtraParamsGrouping.FLAT);
+        Set<String> compiledIds = new HashSet<>();
+        for (String id : fieldIds) {
+            if (!compiledIds.add(id)) throw new RuntimeException("Field \"" + id + "\" is listed more than once");
+
+            LogbackGsonFieldWriter writer;
+            LogbackGsonFieldProvider fieldProvider = providersById.get(id);
+            if (fieldProvider != null) {
+                writer = fieldProvider.compile(this);
+                if (writer != null) {
+                    Collection<String> propertyNames = fieldProvider.getPropertyNames();
+                    if (propertyNames != null) reservedNames.addAll(propertyNames);
                 }
+            } else {
+                writer = this.compileBuiltInField(id, reservedNames);
+            }
+
+            if (writer != null) writers.add(writer);
+        }
+
+        reservedNames.add(this.getPropertyTruncated());
+        // Built-in fields, field providers and static fields cannot share name - JSON would contain same name twice
+        Set<String> uniqueNames = new HashSet<>();
+        for (String name : reservedNames) {
+            if (name != null && !uniqueNames.add(name)) throw new RuntimeException("Property name \"" + name + "\" is used by more than one field");
+        }
+        this.propertyNames = new PropertyNames(reservedNames, this.escapeHtml, Math.max(0, this.getNameCacheSize()));
+        switch (valueOrDefault(this.getExtraParamsGrouping(), EXTRA_PARAMS_GROUPING)) {
+            // Names in nested object cannot conflict with "main" properties
+            case NESTED: this.extraParamNames = new PropertyNames(Collections.emptyList(), this.escapeHtml, Math.max(0, this.getNameCacheSize())); break;
+            case PREFIXED: this.extraParamNames = new PropertyNames(reservedNames, this.escapeHtml, Math.max(0, this.getNameCacheSize()), this.getExtraParamsPrefix()); break;
+            default: this.extraParamNames = this.propertyNames;
+        }
+        // Every field gets equal share of half of limit - so room of field does not depend on other log events
+        this.fieldReserve = (writers.isEmpty() ? 0 : this.eventLimit / (2 * writers.size()));
+        this.fieldWriters = writers.toArray(new LogbackGsonFieldWriter[0]);
+    }
 
-                Map<String, Object> extraParamsMap = EXTRA_PARAMS_HOLDER.get();
-                if (extraParamsMap != null) {
-                    for (Map.Entry<String, Object> entry : extraParamsMap.entrySet()) {
-                        if (entry == null) continue;
-
-                        String name = entry.getKey();
-                        if (name == null) continue;
-                        if (name.equals(propertySequenceNumber)) continue;
-                        if (name.equals(propertyTimestamp)) continue;
-                        if (name.equals(propertyThread)) continue;
-                        if (name.equals(propertyLevel)) continue;
-                        if (name.equals(propertyLogger)) continue;
-                        if (name.equals(propertyMessage)) continue;
-                        if (name.equals(propertyError)) continue;
-
-                        Object value = entry.getValue();
-
-                        jsonWriter.name(name);
-                        if (value == null) jsonWriter.nullValue();
-                        else if (value instanceof String) jsonWriter.value((String) value);
-                        else if (value instanceof Double) jsonWriter.value(((Double) value).doubleValue());
-                        else if (value instanceof Long) jsonWriter.value(((Long) value).longValue());
-                        else if (value instanceof Boolean) jsonWriter.value(((Boolean) value).booleanValue());
-                        else if (value instanceof Number) jsonWriter.value((Number) value);
-                        else this.gson.toJson(value, value.getClass(), jsonWriter);
+    private LogbackGsonFieldWriter compileBuiltInField(String id, List<String> reservedNames) {
+        switch (id) {
+            case FIELD_SEQUENCE_NUMBER: {
+                byte[] name = this.reserveName(this.getPropertySequenceNumber(), reservedNames);
+                SequenceGenerator sequenceGenerator = this.sequenceGenerator;
+                return (event, buffer) -> {
+                    buffer.name(name);
+                    sequenceGenerator.write(buffer);
+                };
+            }
+            case FIELD_TIMESTAMP: {
+                byte[] name = this.reserveName(this.getPropertyTimestamp(), reservedNames);
+                return this.compileTimestamp(name);
+            }
+            case FIELD_THREAD: {
+                byte[] name = this.reserveName(this.getPropertyThread(), reservedNames);
+                return (event, buffer) -> {
+                    buffer.name(name);
+                    buffer.value(valueOrDefault(event.getThreadName(), ""));
+                };
+            }
+            case FIELD_LEVEL: {
+                byte[] name = this.reserveName(this.getPropertyLevel(), reservedNames);
+                return (event, buffer) -> {
+                    buffer.name(name);
+                    buffer.rawValue(encodedLevel(event.getLevel()));
+                };
+            }
+            case FIELD_LOGGER: {
+                byte[] name = this.reserveName(this.getPropertyLogger(), reservedNames);
+                return (event, buffer) -> {
+                    buffer.name(name);
+                    buffer.value(valueOrDefault(event.getLoggerName(), ""));
+                };
+            }
+            case FIELD_MESSAGE: {
+                byte[] name = this.reserveName(this.getPropertyMessage(), reservedNames);
+                String defaultMessage = this.getDefaultMessage();
+                int messageLimit = this.messageLimit;
+                return (event, buffer) -> {
+                    buffer.name(name);
+                    if (buffer.value(valueOrDefault(event.getFormattedMessage(), defaultMessage, true), messageLimit)) {
+                        this.truncatedMessageCount.increment();
+                    }
+                };
+            }
+            case FIELD_ERROR: {
+                byte[] name = this.reserveName(this.getPropertyError(), reservedNames);
+                ThrowableRenderer throwableRenderer = this.throwableRenderer;
+                int errorLimit = this.errorLimit;
+                return (event, buffer) -> {
+                    IThrowableProxy throwableProxy = event.getThrowableProxy();
+                    if (throwableProxy != null) {
+                        buffer.name(name);
+                        if (throwableRenderer.write(throwableProxy, buffer, Math.min(errorLimit, buffer.getLimit() - buffer.size()))) {
+                            this.truncatedErrorCount.increment();
+                        }
+                        if (buffer.metricsCell != null) buffer.metricsCell.recordError();
                     }
+                };
+            }
+            case FIELD_MDC: return this::writeMdc;
+            case FIELD_KEY_VALUE_PAIRS: return this::writeKeyValuePairs;
+            case FIELD_MARKERS: {
+                byte[] name = this.reserveName(this.getPropertyMarkers(), reservedNames);
+                return (event, buffer) -> writeMarkers(name, event, buffer);
+            }
+            case FIELD_CALLER: {
+                byte[] name = this.reserveName(this.getPropertyCaller(), reservedNames);
+                return this.compileCaller(name);
+            }
+            case FIELD_STATIC_FIELDS: return this.compileStaticFields(reservedNames);
+            case FIELD_EXTRA_PARAMS: {
+                LogbackGsonExtraParamsGrouping grouping = valueOrDefault(this.getExtraParamsGrouping(), EXTRA_PARAMS_GROUPING);
+                if (grouping == LogbackGsonExtraParamsGrouping.PREFIXED && (this.getExtraParamsPrefix() == null || this.getExtraParamsPrefix().isEmpty())) {
+                    throw new RuntimeException("Prefix of extra parameters is not set");
                 }
 
-                jsonWriter.endObject();
+                this.nameExtraParams = (grouping == LogbackGsonExtraParamsGrouping.NESTED ? this.reserveName(this.getPropertyExtraParams(), reservedNames) : null);
+                this.extraParamsOrder = (this.isSortExtraParams() ? new ExtraParamsOrder() : null);
+                return this::writeExtraParams;
+            }
+            default: throw new RuntimeException("Unknown field \"" + id + "\"");
+        }
+    }
+
+    private LogbackGsonFieldWriter compileStaticFields(List<String> reservedNames) {
+        JsonOutputBuffer fragment = new JsonOutputBuffer();
+        fragment.setHtmlSafe(this.escapeHtml);
 
-                jsonWriter.flush();
-                stringWriter.write(this.getLogLineSeparator());
-                stringWriter.flush();
+        Set<String> names = new HashSet<>();
+        for (LogbackGsonStaticField staticField : this.staticFields) {
+            String name = staticField.getName();
+            if (name == null || name.isEmpty()) throw new RuntimeException("Static field has no name");
+            if (!names.add(name)) throw new RuntimeException("Duplicate name of static field: \"" + name + "\"");
+
+            String value = staticField.resolveValue(this.getContext());
+            if (value == null) {
+                this.addWarn("Static field \"" + name + "\" has no value and will not be written");
+                continue;
+            }
+
+            if (fragment.size() > 0) fragment.write(',');
+            fragment.writeJsonString(name);
+            fragment.write(':');
+            fragment.writeJsonString(value);
+            reservedNames.add(name);
+        }
+
+        if (fragment.size() == 0) return null;
+
+        // Whole fragment, like '"service":"orders","env":"prod"', is copied at once
+        byte[] encodedProperties = fragment.toByteArray();
+        return (event, buffer) -> buffer.rawProperties(encodedProperties);
+    }
+
+    private LogbackGsonFieldWriter compileCaller(byte[] name) {
+        Level minLevel = null;
+        if (this.getCallerDataLevel() != null && !this.getCallerDataLevel().trim().isEmpty()) {
+            minLevel = Level.toLevel(this.getCallerDataLevel().trim(), null);
+            if (minLevel == null) throw new RuntimeException("Unknown caller data level \"" + this.getCallerDataLevel() + "\"");
+        }
+        if (this.getCallerDataCacheSize() < 0) throw new RuntimeException("Caller data cache size must not be negative");
+
+        int minLevelInt = (minLevel == null ? Level.ALL_INT : minLevel.levelInt);
+        CallerDataCache callerDataCache = new CallerDataCache(this.escapeHtml, this.getCallerDataCacheSize());
+        return (event, buffer) -> {
+            // Level is checked first - so stack of thread is not walked for other log events
+            Level level = event.getLevel();
+            if (level != null && level.levelInt < minLevelInt) return;
+
+            StackTraceElement[] callerData = event.getCallerData();
+            if (callerData == null || callerData.length == 0 || callerData[0] == null) return;
+
+            buffer.name(name);
+            buffer.rawValue(callerDataCache.encode(callerData[0]));
+        };
+    }
+
+    private LogbackGsonFieldWriter compileTimestamp(byte[] name) {
+        LogbackGsonTimestampFormat format = valueOrDefault(this.getTimestampFormat(), TIMESTAMP_FORMAT);
+        switch (format) {
+            case EPOCH_MILLIS:
+                return (event, buffer) -> {
+                    buffer.name(name);
+                    buffer.value(event.getTimeStamp());
+                };
+            case EPOCH_NANOS:
+                return (event, buffer) -> {
+                    Instant instant = event.getInstant();
+                    buffer.name(name);
+                    buffer.value(instant.getEpochSecond() * 1_000_000_000L + instant.getNano());
+                };
+            default:
+                break;
+        }
+
+        ZoneId zone;
+        try {
+            zone = ZoneId.of(valueOrDefault(this.getTimestampZone(), TIMESTAMP_ZONE));
+        } catch (DateTimeException e) {
+            throw new RuntimeException("Invalid timestamp zone \"" + this.getTimestampZone() + "\"", e);
+        }
+
+        DateTimeFormatter formatter;
+        if (format == LogbackGsonTimestampFormat.ISO_8601) {
+            formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSXXX", Locale.ROOT);
+        } else {
+            String pattern = this.getTimestampPattern();
+            if (pattern == null) throw new RuntimeException("Timestamp pattern is not set");
+
+            try {
+                formatter = DateTimeFormatter.ofPattern(pattern);
+            } catch (IllegalArgumentException e) {
+                throw new RuntimeException("Invalid timestamp pattern \"" + pattern + "\"", e);
             }
+        }
+
+        TimestampFormatter timestampFormatter = new TimestampFormatter(formatter.withZone(zone), this.escapeHtml);
+        return (event, buffer) -> {
+            buffer.name(name);
+            timestampFormatter.write(event, buffer);
+        };
+    }
+
+    private byte[] reserveName(String name, List<String> reservedNames) {
+        reservedNames.add(name);
+        return this.encodeName(name);
+    }
+
+    /**
+     * Encodes name of JSON property with settings of this layout, see {@link JsonOutputBuffer#encodeName(String, boolean)}
+     *
+     * <p>
+     *     Can be used by {@link LogbackGsonFieldProvider field providers} while layout starts
+     * </p>
+     *
+     * @param name property name
+     * @return encoded name, for example {@code "name":}
+     */
+    public byte[] encodeName(String name) { return JsonOutputBuffer.encodeName(name, this.escapeHtml); }
+
+    /**
+     * Encodes JSON string with settings of this layout, see {@link JsonOutputBuffer#encodeString(String, boolean)}
+     *
+     * <p>
+     *     Can be used by {@link LogbackGsonFieldProvider field providers} while layout starts
+     * </p>
+     *
+     * @param value string value
+     * @return encoded string with quotes
+     */
+    public byte[] encodeString(String value) { return JsonOutputBuffer.encodeString(value, this.escapeHtml); }
+    // endregion
 
-            result = stringWriter.toString();
+
+    private static boolean isPrettyPrinting(Gson gson) {
+        StringWriter probe = new StringWriter();
+        try {
+            JsonWriter jsonWriter = gson.newJsonWriter(probe);
+            jsonWriter.beginObject().name("a").value(1).endObject().flush();
         } catch (IOException e) {
             throw new UncheckedIOException(e.getMessage(), e);
         }
 
-        return result;
+        return !probe.toString().equals("{\"a\":1}");
+    }
+
+    public String doLayout(ILoggingEvent event) {
+        JsonOutputBuffer buffer = this.acquireBuffer();
+        try {
+            this.writeTo(event, buffer);
+            return buffer.toString();
+        } finally {
+            this.releaseBuffer(buffer);
+        }
+    }
+
+    /**
+     * Writes JSON object of log event and {@link #getLogLineSeparator() log line separator} to {@code buffer} as UTF-8 bytes
+     *
+     * <p>
+     *     Unlike {@link #doLayout(ILoggingEvent)}, this method does not create intermediate {@link String}
+     * </p>
+     *
+     * @param event log event
+     * @param buffer target buffer; written bytes are appended to current content of buffer
+     *
+     * @see LogbackGsonEncoder
+     */
+    public void writeTo(ILoggingEvent event, JsonOutputBuffer buffer) {
+        LogbackGsonLayoutMetrics metrics = this.metrics;
+        if (metrics == null) {
+            this.writeEventAndSeparator(event, buffer);
+            return;
+        }
+
+        // Field writers find cell in buffer - without lookups of thread-local variable
+        LogbackGsonLayoutMetrics.Cell cell = metrics.cell();
+        LogbackGsonLayoutMetrics.Cell previousCell = buffer.metricsCell;
+        buffer.metricsCell = cell;
+        try {
+            int start = buffer.size();
+            if (cell.shouldTime()) {
+                long startNanos = System.nanoTime();
+                this.writeEventAndSeparator(event, buffer);
+                cell.recordTimedEvent(buffer.size() - start, System.nanoTime() - startNanos);
+            } else {
+                this.writeEventAndSeparator(event, buffer);
+                cell.recordEvent(buffer.size() - start);
+            }
+        } finally {
+            buffer.metricsCell = previousCell;
+        }
+    }
+
+    private void writeEventAndSeparator(ILoggingEvent event, JsonOutputBuffer buffer) {
+        buffer.setHtmlSafe(this.escapeHtml);
+
+        if (this.prettyPrinting) {
+            int start = buffer.size();
+            this.writeEvent(event, buffer);
+
+            // Fast writer knows nothing about formatting - so compact JSON is re-written by GSON
+            String compactJson = new String(buffer.array(), start, buffer.size() - start, StandardCharsets.UTF_8);
+            buffer.truncate(start);
+            this.gson.toJson(JsonParser.parseString(compactJson), buffer.asWriter());
+        } else {
+            this.writeEvent(event, buffer);
+        }
+
+        buffer.write(this.logLineSeparatorBytes);
+    }
+
+    /**
+     * Writes JSON objects of log events, every followed by {@link #getLogLineSeparator() log line separator}, to {@code buffer}
+     *
+     * <p>
+     *     With {@link #getLogLineSeparator() log line separator} {@code "\n"} result is newline-delimited JSON;
+     *     {@code null} items of {@code events} are skipped
+     * </p>
+     *
+     * @param events log events
+     * @param buffer target buffer; written bytes are appended to current content of buffer
+     *
+     * @see #writeTo(ILoggingEvent, JsonOutputBuffer)
+     * @see LogbackGsonEncoder#encodeBatch(List, OutputStream)
+     */
+    public void writeBatchTo(List<? extends ILoggingEvent> events, JsonOutputBuffer buffer) {
+        int size = events.size();
+        for (int i = 0; i < size; i++) {
+            ILoggingEvent event = events.get(i);
+            if (event != null) this.writeTo(event, buffer);
+        }
+    }
+
+    private void writeEvent(ILoggingEvent event, JsonOutputBuffer buffer) {
+        int start = buffer.size();
+        buffer.beginObject();
+        buffer.setTruncated(false);
+
+        LogbackGsonFieldWriter[] fieldWriters = this.fieldWriters;
+        if (this.eventLimit > 0) {
+            this.writeFieldsWithLimit(event, buffer, fieldWriters, start + this.eventLimit);
+        } else {
+            for (LogbackGsonFieldWriter fieldWriter : fieldWriters) fieldWriter.write(event, buffer);
+        }
+
+        if (buffer.isTruncated()) {
+            buffer.name(this.nameTruncated);
+            buffer.value(true);
+            this.truncatedEventCount.increment();
+        }
+
+        buffer.endObject();
+    }
+
+    private void writeFieldsWithLimit(ILoggingEvent event, JsonOutputBuffer buffer, LogbackGsonFieldWriter[] fieldWriters, int limit) {
+        int previousLimit = buffer.getLimit();
+        boolean truncated = buffer.isTruncated();
+        try {
+            for (int i = 0; i < fieldWriters.length; i++) {
+                int size = buffer.size();
+                boolean empty = buffer.isContainerEmpty();
+
+                // Values of field are truncated so that fields after it still fit; but field gets at least half of remaining room
+                long reserve = (long) this.fieldReserve * (fieldWriters.length - i - 1);
+                int fieldLimit = limit - (int) Math.min(reserve, (limit - size) / 2);
+                buffer.setLimit(fieldLimit);
+                buffer.setTruncated(false);
+                fieldWriters[i].write(event, buffer);
+
+                boolean fieldTruncated = buffer.isTruncated();
+                if (buffer.size() > limit) {
+                    // Field does not fit even after truncation of its values - it is dropped, next fields are written
+                    buffer.truncate(size, empty);
+                    fieldTruncated = true;
+                }
+                truncated |= fieldTruncated;
+            }
+        } finally {
+            buffer.setLimit(previousLimit);
+            buffer.setTruncated(truncated);
+        }
+    }
+
+    private static Map<String, Object> extraParamsOf(ILoggingEvent event) {
+        // Log event can carry extra parameters of thread, which created it
+        return (event instanceof LogbackGsonExtraParamsCarrier
+                ? ((LogbackGsonExtraParamsCarrier) event).getExtraParams()
+                : EXTRA_PARAMS_HOLDER.get());
+    }
+
+    private void writeExtraParams(ILoggingEvent event, JsonOutputBuffer buffer) {
+        Map<String, Object> extraParamsMap = extraParamsOf(event);
+
+        int count = 0;
+        if (extraParamsMap != null) {
+            if (this.nameExtraParams == null) {
+                // Key-value pairs of log event take precedence only over flat extra parameters
+                List<KeyValuePair> keyValuePairs = (this.keyValuePairsWritten && this.flatExtraParamsWritten ? event.getKeyValuePairs() : null);
+                count = this.writeExtraParamsMap(extraParamsMap, keyValuePairs, buffer);
+            } else {
+                int size = buffer.size();
+                boolean empty = buffer.isContainerEmpty();
+
+                buffer.name(this.nameExtraParams);
+                buffer.beginObject();
+                count = this.writeExtraParamsMap(extraParamsMap, null, buffer);
+                buffer.endObject();
+
+                // Nested object without parameters is not written
+                if (count == 0) buffer.truncate(size, empty);
+            }
+        }
+        if (buffer.metricsCell != null) buffer.metricsCell.recordExtraParams(count);
+    }
+
+    // Returns count of written properties; parameters, whose keys are written by "keyValuePairs", are skipped
+    private int writeExtraParamsMap(Map<String, Object> extraParamsMap, List<KeyValuePair> keyValuePairs, JsonOutputBuffer buffer) {
+        if (this.extraParamsOrder != null) return this.writeSortedExtraParams(extraParamsMap, keyValuePairs, buffer);
+
+        int count = 0;
+        if (extraParamsMap instanceof ExtraParamsSnapshot) {
+            ExtraParamsSnapshot snapshot = (ExtraParamsSnapshot) extraParamsMap;
+            int size = snapshot.size();
+            for (int i = 0; i < size; i++) {
+                if (this.writeExtraParam(snapshot.keyAt(i), snapshot.valueAt(i), keyValuePairs, buffer)) count++;
+            }
+        } else if (extraParamsMap instanceof ExtraParamsMap) {
+            ExtraParamsMap map = (ExtraParamsMap) extraParamsMap;
+            int rawSize = map.rawSize();
+            for (int i = 0; i < rawSize; i++) {
+                if (map.isVisible(i) && this.writeExtraParam(map.rawKey(i), map.rawValue(i), keyValuePairs, buffer)) count++;
+            }
+        } else {
+            for (Map.Entry<String, Object> entry : extraParamsMap.entrySet()) {
+                if (entry != null && this.writeExtraParam(entry.getKey(), entry.getValue(), keyValuePairs, buffer)) count++;
+            }
+        }
+        return count;
+    }
+
+    private int writeSortedExtraParams(Map<String, Object> extraParamsMap, List<KeyValuePair> keyValuePairs, JsonOutputBuffer buffer) {
+        ExtraParamsOrder.Params params = this.extraParamsOrder.acquire();
+        try {
+            if (extraParamsMap instanceof ExtraParamsSnapshot) {
+                ExtraParamsSnapshot snapshot = (ExtraParamsSnapshot) extraParamsMap;
+                int size = snapshot.size();
+                for (int i = 0; i < size; i++) {
+                    if (snapshot.keyAt(i) != null) params.add(snapshot.keyAt(i), snapshot.valueAt(i));
+                }
+            } else if (extraParamsMap instanceof ExtraParamsMap) {
+                ExtraParamsMap map = (ExtraParamsMap) extraParamsMap;
+                int rawSize = map.rawSize();
+                for (int i = 0; i < rawSize; i++) {
+                    if (map.isVisible(i) && map.rawKey(i) != null) params.add(map.rawKey(i), map.rawValue(i));
+                }
+            } else {
+                for (Map.Entry<String, Object> entry : extraParamsMap.entrySet()) {
+                    if (entry != null && entry.getKey() != null) params.add(entry.getKey(), entry.getValue());
+                }
+            }
+
+            int count = 0;
+            for (int index : this.extraParamsOrder.order(params)) {
+                if (this.writeExtraParam(params.nameAt(index), params.valueAt(index), keyValuePairs, buffer)) count++;
+            }
+            return count;
+        } finally {
+            this.extraParamsOrder.release(params);
+        }
+    }
+
+    // Returns "true" if property has been written
+    private boolean writeExtraParam(String name, Object value, List<KeyValuePair> keyValuePairs, JsonOutputBuffer buffer) {
+        if (name == null) return false;
+
+        byte[] encodedName = this.extraParamNames.encode(name);
+        if (encodedName == PropertyNames.RESERVED) return false;
+
+        if (value == null && !this.serializeNulls) return false;
+        if (keyValuePairs != null && this.isKeyValuePairWritten(name, keyValuePairs)) return false;
+
+        buffer.name(encodedName);
+        this.writeValue(value, buffer);
+        return true;
+    }
+
+    private static boolean isKeyAllowed(String key, Set<String> includedKeys, Set<String> excludedKeys) {
+        if (includedKeys != null && !includedKeys.contains(key)) return false;
+        return (excludedKeys == null || !excludedKeys.contains(key));
+    }
+
+    // Returns "true" if key-value pair with "key" is written by "keyValuePairs" field
+    private boolean isKeyValuePairWritten(String key, List<KeyValuePair> keyValuePairs) {
+        if (!isKeyAllowed(key, this.includedKeyValuePairKeySet, this.excludedKeyValuePairKeySet)) return false;
+
+        int size = keyValuePairs.size();
+        for (int i = 0; i < size; i++) {
+            KeyValuePair keyValuePair = keyValuePairs.get(i);
+            if (keyValuePair != null && key.equals(keyValuePair.key) && (keyValuePair.value != null || this.serializeNulls)) return true;
+        }
+        return false;
+    }
+
+    // Returns "true" if extra parameter with "key" is written by "extraParams" field
+    private boolean isExtraParamWritten(String key, Map<String, Object> extraParamsMap) {
+        return (this.serializeNulls ? extraParamsMap.containsKey(key) : extraParamsMap.get(key) != null);
+    }
+
+    private void writeMdc(ILoggingEvent event, JsonOutputBuffer buffer) {
+        Map<String, String> mdc = event.getMDCPropertyMap();
+        if (mdc == null || mdc.isEmpty()) return;
+
+        // Keys of key-value pairs and extra parameters of log event take precedence over keys of MDC entries
+        List<KeyValuePair> keyValuePairs = (this.keyValuePairsWritten ? event.getKeyValuePairs() : null);
+        if (keyValuePairs != null && keyValuePairs.isEmpty()) keyValuePairs = null;
+        Map<String, Object> extraParamsMap = (this.flatExtraParamsWritten ? extraParamsOf(event) : null);
+        if (extraParamsMap != null && extraParamsMap.isEmpty()) extraParamsMap = null;
+
+        for (Map.Entry<String, String> entry : mdc.entrySet()) {
+            String key = entry.getKey();
+            if (key == null) continue;
+            if (!isKeyAllowed(key, this.includedMdcKeySet, this.excludedMdcKeySet)) continue;
+
+            byte[] encodedName = this.propertyNames.encode(key);
+            if (encodedName == PropertyNames.RESERVED) continue;
+
+            String value = entry.getValue();
+            if (value == null && !this.serializeNulls) continue;
+            if (keyValuePairs != null && this.isKeyValuePairWritten(key, keyValuePairs)) continue;
+            if (extraParamsMap != null && this.isExtraParamWritten(key, extraParamsMap)) continue;
+
+            buffer.name(encodedName);
+            if (buffer.value(value, this.valueLimit)) this.truncatedValueCount.increment();
+        }
+    }
+
+    private void writeKeyValuePairs(ILoggingEvent event, JsonOutputBuffer buffer) {
+        List<KeyValuePair> keyValuePairs = event.getKeyValuePairs();
+        if (keyValuePairs == null) return;
+
+        int size = keyValuePairs.size();
+        for (int i = 0; i < size; i++) {
+            KeyValuePair keyValuePair = keyValuePairs.get(i);
+            if (keyValuePair == null) continue;
+
+            String key = keyValuePair.key;
+            if (key == null) continue;
+            if (!isKeyAllowed(key, this.includedKeyValuePairKeySet, this.excludedKeyValuePairKeySet)) continue;
+
+            byte[] encodedName = this.propertyNames.encode(key);
+            if (encodedName == PropertyNames.RESERVED) continue;
+
+            Object value = keyValuePair.value;
+            if (value == null && !this.serializeNulls) continue;
+
+            buffer.name(encodedName);
+            this.writeValue(value, buffer);
+        }
+    }
+
+    private static void writeMarkers(byte[] name, ILoggingEvent event, JsonOutputBuffer buffer) {
+        List<Marker> markers = event.getMarkerList();
+        if (markers == null || markers.isEmpty()) return;
+
+        buffer.name(name);
+        buffer.beginArray();
+
+        int size = markers.size();
+        for (int i = 0; i < size; i++) {
+            Marker marker = markers.get(i);
+            if (marker != null) buffer.value(marker.getName());
+        }
+
+        buffer.endArray();
+    }
+
+    /**
+     * Writes value of JSON property; simple values are written directly, other values - with GSON of this layout
+     *
+     * <p>
+     *     Can be used by {@link LogbackGsonFieldWriter field writers}
+     * </p>
+     *
+     * @param value value to write, can be {@code null}
+     * @param buffer target buffer; name of property must be already written
+     */
+    public void writeValue(Object value, JsonOutputBuffer buffer) {
+        if (value == null) {
+            buffer.nullValue();
+        } else if (value instanceof String) {
+            if (buffer.value((String) value, this.valueLimit)) this.truncatedValueCount.increment();
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            buffer.value(((Number) value).longValue());
+        } else if (value instanceof Double && Double.isFinite((Double) value)) {
+            buffer.value(((Double) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            buffer.value(((Boolean) value).booleanValue());
+        } else {
+            this.valueWriters.get(value.getClass()).write(value, buffer, this);
+        }
+    }
+
+    /**
+     * Writes value with GSON of this layout
+     *
+     * @param value value to write, not {@code null}
+     * @param adapter type adapter for class of {@code value}; {@code null} - if {@code value} is number
+     * or if adapter should be found by GSON
+     * @param buffer target buffer
+     */
+    void writeValueWithGson(Object value, TypeAdapter<Object> adapter, JsonOutputBuffer buffer) {
+        if (buffer.metricsCell != null && !(value instanceof Number)) buffer.metricsCell.recordGsonFallback();
+        buffer.beforeValue();
+
+        int start = buffer.size();
+        int maxBytes = this.getValueMaxBytes(buffer, start);
+        int maxSize = (int) Math.min(Integer.MAX_VALUE, (long) start + maxBytes);
+        try {
+            JsonWriter jsonWriter = this.gson.newJsonWriter(buffer.asWriter(maxSize));
+            if (value instanceof Number) {
+                jsonWriter.value((Number) value);
+            } else if (adapter != null) {
+                adapter.write(jsonWriter, value);
+            } else {
+                this.gson.toJson(value, value.getClass(), jsonWriter);
+            }
+            jsonWriter.flush();
+        } catch (IOException e) {
+            if (!JsonOutputBuffer.SizeLimitExceededException.isCause(e)) throw new UncheckedIOException(e.getMessage(), e);
+        } catch (JsonIOException e) {
+            if (!JsonOutputBuffer.SizeLimitExceededException.isCause(e)) throw e;
+        }
+
+        if (buffer.size() > maxSize) this.writeTruncatedJson(buffer, start, maxBytes);
+    }
+
+    /**
+     * @param buffer target buffer
+     * @param start position of value in {@code buffer}
+     * @return max count of bytes of value, which starts at {@code start}
+     */
+    int getValueMaxBytes(JsonOutputBuffer buffer, int start) { return Math.min(this.valueLimit, buffer.getLimit() - start); }
+
+    /**
+     * Replaces too long value with truncated JSON string, see {@link #getMaxValueBytes()}
+     *
+     * @param buffer target buffer
+     * @param start position of value in {@code buffer}
+     */
+    void limitWrittenValue(JsonOutputBuffer buffer, int start) {
+        int maxBytes = this.getValueMaxBytes(buffer, start);
+        if (buffer.size() - start > maxBytes) this.writeTruncatedJson(buffer, start, maxBytes);
+    }
+
+    // Replaces JSON, written from "start", with string, which contains beginning of that JSON
+    private void writeTruncatedJson(JsonOutputBuffer buffer, int start, int maxBytes) {
+        byte[] bytes = buffer.array();
+        int end = Math.min(buffer.size(), start + Math.max(maxBytes, 0));
+        // Do not split UTF-8 sequence
+        while (end > start && end < buffer.size() && (bytes[end] & 0xC0) == 0x80) end--;
+
+        String json = new String(bytes, start, end - start, StandardCharsets.UTF_8);
+        buffer.truncate(start);
+        buffer.writeJsonString(json, maxBytes - 2);
+        buffer.setTruncated(true);
+        this.truncatedValueCount.increment();
     }
 }
@@ -0,0 +1,258 @@
+package me.ore.logback.gson.layout;
+
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * Metrics of {@link LogbackGsonLayout}, collected when {@link LogbackGsonLayout#isMetricsEnabled() metrics are enabled}
+ *
+ * <p>
+ *     Every thread writes its own cell of counters with ordered stores (without CAS), so threads do not contend on metrics;
+ *     readers sum cells of all threads. Time of serialization is measured only for {@link LogbackGsonLayout#getMetricsTimingSampleRate() sample}
+ *     of log events
+ * </p>
+ *
+ * @see LogbackGsonLayout#getMetrics()
+ */
+public final class LogbackGsonLayoutMetrics implements LogbackGsonLayoutMetricsMBean {
+    // region Layout of cell
+    // Up to 2^46 nanoseconds
+    private static final int NANOS_BUCKET_COUNT = 48;
+    // Up to 2^16 extra parameters
+    private static final int EXTRA_PARAMS_BUCKET_COUNT = 18;
+
+    private static final int EVENT_COUNT = 0;
+    private static final int BYTE_COUNT = 1;
+    private static final int ERROR_COUNT = 2;
+    private static final int GSON_FALLBACK_COUNT = 3;
+    private static final int TIMED_EVENT_COUNT = 4;
+    private static final int TOTAL_SERIALIZATION_NANOS = 5;
+    private static final int NANOS_BUCKETS = 6;
+    private static final int EXTRA_PARAMS_BUCKETS = NANOS_BUCKETS + NANOS_BUCKET_COUNT;
+    private static final int VALUE_COUNT = EXTRA_PARAMS_BUCKETS + EXTRA_PARAMS_BUCKET_COUNT;
+
+    // Cells of different threads should not share cache lines
+    private static final int PADDING = 8;
+    // endregion
+
+
+    /**
+     * Counters of one thread; written only by this thread
+     */
+    static final class Cell {
+        private final WeakReference<Thread> owner = new WeakReference<>(Thread.currentThread());
+        private final AtomicLongArray values = new AtomicLongArray(PADDING + VALUE_COUNT + PADDING);
+        private final int timingSampleRate;
+        // Count of log events before next timed log event
+        private int untilTimed;
+
+        private Cell(int timingSampleRate) {
+            this.timingSampleRate = timingSampleRate;
+            // Threads, started together, should not time the same log events
+            this.untilTimed = ThreadLocalRandom.current().nextInt(timingSampleRate);
+        }
+
+        private void add(int index, long delta) {
+            int i = PADDING + index;
+            // Only owner writes cell, so ordered store is enough
+            this.values.lazySet(i, this.values.get(i) + delta);
+        }
+
+        private long get(int index) { return this.values.get(PADDING + index); }
+
+        private boolean isAlive() {
+            Thread thread = this.owner.get();
+            return (thread != null && thread.isAlive());
+        }
+
+        /**
+         * @return {@code true} if time of serialization of current log event should be measured
+         */
+        boolean shouldTime() {
+            if (this.untilTimed > 0) {
+                this.untilTimed--;
+                return false;
+            }
+
+            this.untilTimed = this.timingSampleRate - 1;
+            return true;
+        }
+
+        /**
+         * @param byteCount count of written bytes
+         */
+        void recordEvent(int byteCount) {
+            this.add(EVENT_COUNT, 1);
+            this.add(BYTE_COUNT, byteCount);
+        }
+
+        /**
+         * @param byteCount count of written bytes
+         * @param nanos time of serialization
+         */
+        void recordTimedEvent(int byteCount, long nanos) {
+            nanos = Math.max(nanos, 0);
+
+            this.recordEvent(byteCount);
+            this.add(TIMED_EVENT_COUNT, 1);
+            this.add(TOTAL_SERIALIZATION_NANOS, nanos);
+            this.add(NANOS_BUCKETS + Log2Histogram.bucket(nanos, NANOS_BUCKET_COUNT), 1);
+        }
+
+        void recordError() { this.add(ERROR_COUNT, 1); }
+
+        void recordGsonFallback() { this.add(GSON_FALLBACK_COUNT, 1); }
+
+        /**
+         * @param count count of written extra parameters of log event
+         */
+        void recordExtraParams(int count) { this.add(EXTRA_PARAMS_BUCKETS + Log2Histogram.bucket(count, EXTRA_PARAMS_BUCKET_COUNT), 1); }
+    }
+
+
+    private final int timingSampleRate;
+    private final ThreadLocal<Cell> cell = ThreadLocal.withInitial(this::newCell);
+
+    // Values below are guarded by "cells"
+    private final List<Cell> cells = new ArrayList<>();
+    // Sums of cells of finished threads
+    private final long[] retired = new long[VALUE_COUNT];
+    // Sums at last reset
+    private final long[] baseline = new long[VALUE_COUNT];
+    private int purgeThreshold = 16;
+
+    /**
+     * @param timingSampleRate one of {@code timingSampleRate} log events is timed, must be positive
+     */
+    LogbackGsonLayoutMetrics(int timingSampleRate) { this.timingSampleRate = timingSampleRate; }
+
+
+    // region Cells
+    private Cell newCell() {
+        Cell result = new Cell(this.timingSampleRate);
+        synchronized (this.cells) {
+            if (this.cells.size() >= this.purgeThreshold) {
+                this.purge();
+                this.purgeThreshold = Math.max(16, this.cells.size() * 2);
+            }
+            this.cells.add(result);
+        }
+        return result;
+    }
+
+    // Moves counters of finished threads to "retired"; must be called with lock on "cells"
+    private void purge() {
+        Iterator<Cell> iterator = this.cells.iterator();
+        while (iterator.hasNext()) {
+            Cell cell = iterator.next();
+            if (cell.isAlive()) continue;
+
+            for (int i = 0; i < VALUE_COUNT; i++) this.retired[i] += cell.get(i);
+            iterator.remove();
+        }
+    }
+
+    // Sums of all cells, without baseline; must be called with lock on "cells"
+    private long[] rawSums() {
+        this.purge();
+
+        long[] result = this.retired.clone();
+        for (Cell cell : this.cells) {
+            for (int i = 0; i < VALUE_COUNT; i++) result[i] += cell.get(i);
+        }
+        return result;
+    }
+
+    private long[] sums() {
+        synchronized (this.cells) {
+            long[] result = this.rawSums();
+            for (int i = 0; i < VALUE_COUNT; i++) result[i] -= this.baseline[i];
+            return result;
+        }
+    }
+
+    private long sum(int index) { return this.sums()[index]; }
+
+    private static long[] range(long[] sums, int from, int count) {
+        long[] result = new long[count];
+        System.arraycopy(sums, from, result, 0, count);
+        return result;
+    }
+
+    /**
+     * @return cell of current thread
+     */
+    Cell cell() { return this.cell.get(); }
+    // endregion
+
+
+    // region Reading
+    /**
+     * @return snapshot of current values of metrics
+     */
+    public LogbackGsonMetricsSnapshot snapshot() {
+        long[] sums = this.sums();
+        return new LogbackGsonMetricsSnapshot(
+                sums[EVENT_COUNT],
+                sums[BYTE_COUNT],
+                sums[ERROR_COUNT],
+                sums[GSON_FALLBACK_COUNT],
+                sums[TIMED_EVENT_COUNT],
+                sums[TOTAL_SERIALIZATION_NANOS],
+                range(sums, NANOS_BUCKETS, NANOS_BUCKET_COUNT),
+                range(sums, EXTRA_PARAMS_BUCKETS, EXTRA_PARAMS_BUCKET_COUNT)
+        );
+    }
+
+    @Override
+    public long getEventCount() { return this.sum(EVENT_COUNT); }
+
+    @Override
+    public long getByteCount() { return this.sum(BYTE_COUNT); }
+
+    @Override
+    public long getErrorCount() { return this.sum(ERROR_COUNT); }
+
+    @Override
+    public long getGsonFallbackCount() { return this.sum(GSON_FALLBACK_COUNT); }
+
+    @Override
+    public long getTimedEventCount() { return this.sum(TIMED_EVENT_COUNT); }
+
+    @Override
+    public long getAverageSerializationNanos() { return this.snapshot().getAverageSerializationNanos(); }
+
+    @Override
+    public long getSerializationNanosP50() { return this.snapshot().getSerializationNanosPercentile(0.5); }
+
+    @Override
+    public long getSerializationNanosP99() { return this.snapshot().getSerializationNanosPercentile(0.99); }
+
+    @Override
+    public long[] getSerializationNanosHistogram() { return range(this.sums(), NANOS_BUCKETS, NANOS_BUCKET_COUNT); }
+
+    @Override
+    public long[] getExtraParamsCountHistogram() { return range(this.sums(), EXTRA_PARAMS_BUCKETS, EXTRA_PARAMS_BUCKET_COUNT); }
+
+    /**
+     * Resets all metrics
+     *
+     * <p>
+     *     Counters of threads are not modified (they are written without locks) - current sums are remembered and subtracted from next reads
+     * </p>
+     */
+    @Override
+    public void reset() {
+        synchronized (this.cells) {
+            long[] sums = this.rawSums();
+            System.arraycopy(sums, 0, this.baseline, 0, VALUE_COUNT);
+        }
+    }
+    // endregion
+}
@@ -0,0 +1,67 @@
+package me.ore.logback.gson.layout;
+
+
+/**
+ * JMX interface of {@link LogbackGsonLayoutMetrics}
+ *
+ * @see LogbackGsonLayout#isMetricsEnabled()
+ */
+@SuppressWarnings("unused")
+public interface LogbackGsonLayoutMetricsMBean {
+    /**
+     * @return count of written log events
+     */
+    long getEventCount();
+
+    /**
+     * @return count of bytes of written log events (including log line separators)
+     */
+    long getByteCount();
+
+    /**
+     * @return count of written &quot;error&quot; properties
+     */
+    long getErrorCount();
+
+    /**
+     * @return count of values, written by GSON (not by built-in or registered {@link LogbackGsonValueWriter value writers})
+     */
+    long getGsonFallbackCount();
+
+    /**
+     * @return count of log events, for which time of serialization has been measured
+     *
+     * @see LogbackGsonLayout#getMetricsTimingSampleRate()
+     */
+    long getTimedEventCount();
+
+    /**
+     * @return average time of serialization of log event (in nanoseconds)
+     */
+    long getAverageSerializationNanos();
+
+    /**
+     * @return median time of serialization of log event (in nanoseconds), upper bound of bucket of histogram
+     */
+    long getSerializationNanosP50();
+
+    /**
+     * @return 99th percentile of time of serialization of log event (in nanoseconds), upper bound of bucket of histogram
+     */
+    long getSerializationNanosP99();
+
+    /**
+     * @return histogram of time of serialization of log event, see {@link LogbackGsonMetricsSnapshot#getSerializationNanosHistogram()}
+     */
+    long[] getSerializationNanosHistogram();
+
+    /**
+     * @return histogram of count of extra parameters of log event, see {@link LogbackGsonMetricsSnapshot#getExtraParamsCountHistogram()}
+     */
+    long[] getExtraParamsCountHistogram();
+
+    /**
+     * Resets all metrics
+     */
+    void reset();
+}
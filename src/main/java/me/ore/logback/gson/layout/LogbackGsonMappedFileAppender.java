@@ -0,0 +1,421 @@
+package me.ore.logback.gson.layout;
+
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import ch.qos.logback.core.encoder.Encoder;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * File appender, which writes log events to memory-mapped region of file
+ *
+ * <p>
+ *     File is mapped by chunks of {@link #getChunkSize() fixed size}; when current chunk is full, next chunk is mapped
+ *     (and file grows). With {@link LogbackGsonEncoder}, log event is serialized to UTF-8 buffer of layout
+ *     (outside of lock of appender), and then is copied to mapped region by one copy - without {@link java.io.OutputStream}
+ *     and intermediate arrays. With other encoders, result of {@link Encoder#encode(Object)} is copied
+ * </p>
+ *
+ * <pre>{@code
+ * <appender name="FILE" class="me.ore.logback.gson.layout.LogbackGsonMappedFileAppender">
+ *     <file>logs/app.json</file>
+ *     <chunkSize>16777216</chunkSize>
+ *     <forceInterval>1000</forceInterval>
+ *     <encoder class="me.ore.logback.gson.layout.LogbackGsonEncoder"/>
+ * </appender>
+ * }</pre>
+ *
+ * <p>
+ *     Data gets to page cache of OS immediately; to disk - when OS decides or when mapped region is forced
+ *     ({@link #getForceInterval() periodically} and when appender stops). When appender stops, file is truncated to written size;
+ *     after crash, file can end with zero bytes (up to size of chunk) - they are skipped when appender opens file in {@link #isAppend() append} mode
+ * </p>
+ *
+ * <p>
+ *     Chunk is unmapped as soon as next chunk is mapped, and before file is truncated - so only one chunk occupies address space,
+ *     and truncation does not fail on systems, which do not allow to truncate mapped file (Windows). Java has no public API
+ *     for unmapping, so internal one is used (&quot;sun.misc.Unsafe.invokeCleaner&quot; since Java 9, &quot;cleaner&quot; of direct buffer in Java 8);
+ *     if it is not available, released chunks stay mapped until garbage collector frees them, and on Windows file may stay not truncated
+ * </p>
+ */
+@SuppressWarnings("unused")
+public class LogbackGsonMappedFileAppender extends UnsynchronizedAppenderBase<ILoggingEvent> {
+    // region Class constants
+    /**
+     * Default size of mapped chunk of file
+     *
+     * @see #getChunkSize()
+     * @see #setChunkSize(int)
+     */
+    public static final int CHUNK_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * Default interval (in milliseconds) between forces of mapped region to disk
+     *
+     * @see #getForceInterval()
+     * @see #setForceInterval(long)
+     */
+    public static final long FORCE_INTERVAL = 1000;
+
+    // Releases mapping of buffer ("void (ByteBuffer)"), or null - if no way to unmap is available
+    private static final MethodHandle UNMAP = findUnmap();
+
+    private static MethodHandle findUnmap() {
+        // Java 9+: "sun.misc.Unsafe.invokeCleaner(ByteBuffer)"
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            MethodHandle invokeCleaner = MethodHandles.lookup().findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class));
+            return invokeCleaner.bindTo(theUnsafe.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Java 8 - see below
+        }
+
+        // Java 8: "((sun.nio.ch.DirectBuffer) buffer).cleaner().clean()"
+        try {
+            Class<?> directBufferClass = Class.forName("sun.nio.ch.DirectBuffer");
+            Class<?> cleanerClass = Class.forName("sun.misc.Cleaner");
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            MethodHandle cleaner = lookup.findVirtual(directBufferClass, "cleaner", MethodType.methodType(cleanerClass));
+            MethodHandle clean = lookup.findVirtual(cleanerClass, "clean", MethodType.methodType(void.class));
+            MethodHandle unmap = MethodHandles.filterReturnValue(cleaner, clean);
+            return unmap.asType(MethodType.methodType(void.class, ByteBuffer.class));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    // Releases mapping; buffer must not be used after this call
+    private static void unmap(MappedByteBuffer buffer) {
+        if (buffer == null || UNMAP == null) return;
+
+        try {
+            UNMAP.invokeExact((ByteBuffer) buffer);
+        } catch (Throwable e) {
+            // Mapping is released by garbage collector
+        }
+    }
+    // endregion
+
+
+    // region Instance properties
+    private String file;
+
+    /**
+     * @return path of file
+     *
+     * @see #setFile(String)
+     */
+    public String getFile() { return file; }
+
+    /**
+     * @param file path of file
+     *
+     * @see #getFile()
+     */
+    public void setFile(String file) { this.file = (file == null ? null : file.trim()); }
+
+
+    private boolean append = true;
+
+    /**
+     * @return if {@code true} (by default), log events are appended to existing file; otherwise, file is truncated
+     *
+     * @see #setAppend(boolean)
+     */
+    public boolean isAppend() { return append; }
+
+    /**
+     * @param append if {@code true}, log events are appended to existing file; otherwise, file is truncated
+     *
+     * @see #isAppend()
+     */
+    public void setAppend(boolean append) { this.append = append; }
+
+
+    private int chunkSize = CHUNK_SIZE;
+
+    /**
+     * @return size (in bytes) of mapped chunk of file; by default - {@link #CHUNK_SIZE}
+     *
+     * @see #CHUNK_SIZE
+     * @see #setChunkSize(int)
+     */
+    public int getChunkSize() { return chunkSize; }
+
+    /**
+     * @param chunkSize size (in bytes) of mapped chunk of file, must be positive
+     *
+     * @see #CHUNK_SIZE
+     * @see #getChunkSize()
+     */
+    public void setChunkSize(int chunkSize) { this.chunkSize = chunkSize; }
+
+
+    private long forceInterval = FORCE_INTERVAL;
+
+    /**
+     * @return interval (in milliseconds) between forces (&quot;fsync&quot;) of mapped region to disk; by default - {@link #FORCE_INTERVAL}
+     *
+     * @see #FORCE_INTERVAL
+     * @see #setForceInterval(long)
+     */
+    public long getForceInterval() { return forceInterval; }
+
+    /**
+     * @param forceInterval interval (in milliseconds) between forces of mapped region to disk;
+     *                      {@code 0} - mapped region is forced only when appender stops
+     *
+     * @see #FORCE_INTERVAL
+     * @see #getForceInterval()
+     */
+    public void setForceInterval(long forceInterval) { this.forceInterval = forceInterval; }
+
+
+    private Encoder<ILoggingEvent> encoder;
+
+    /**
+     * @return encoder; {@link LogbackGsonEncoder} is recommended
+     *
+     * @see #setEncoder(Encoder)
+     */
+    public Encoder<ILoggingEvent> getEncoder() { return encoder; }
+
+    /**
+     * @param encoder encoder
+     *
+     * @see #getEncoder()
+     */
+    public void setEncoder(Encoder<ILoggingEvent> encoder) { this.encoder = encoder; }
+    // endregion
+
+
+    // region Mapping
+    private final ReentrantLock lock = new ReentrantLock(false);
+
+    // Values below are guarded by "lock"
+    private FileChannel channel;
+    private MappedByteBuffer mapped;
+    // Position of current chunk in file
+    private long chunkPosition;
+    private ScheduledFuture<?> forceFuture;
+
+    // Position in file, after last written byte
+    private long writtenSize() { return this.chunkPosition + (this.mapped == null ? 0 : this.mapped.position()); }
+
+    private void mapChunk(long position) throws IOException {
+        MappedByteBuffer previous = this.mapped;
+        if (previous != null && this.getForceInterval() > 0) previous.force();
+
+        this.mapped = this.channel.map(FileChannel.MapMode.READ_WRITE, position, this.getChunkSize());
+        this.chunkPosition = position;
+        // Previous chunk is full and is not used anymore
+        unmap(previous);
+    }
+
+    private void write(byte[] source, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (!this.mapped.hasRemaining()) this.mapChunk(this.writtenSize());
+
+            int count = Math.min(length, this.mapped.remaining());
+            this.mapped.put(source, offset, count);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    // Finds end of written data - file can end with zero bytes of mapped chunk, if application has not been stopped properly
+    private static long findWrittenSize(FileChannel channel, int chunkSize) throws IOException {
+        long end = channel.size();
+        while (end > 0) {
+            long start = Math.max(0, end - chunkSize);
+            MappedByteBuffer tail = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            int index = (int) (end - start);
+            try {
+                while (index > 0 && tail.get(index - 1) == 0) index--;
+            } finally {
+                unmap(tail);
+            }
+            if (index > 0) return start + index;
+
+            // Whole chunk contains zeros - data ends in previous chunk
+            end = start;
+        }
+        return 0;
+    }
+
+    private void force() {
+        this.lock.lock();
+        try {
+            if (this.mapped != null) this.mapped.force();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+    // endregion
+
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        if (!this.isStarted()) return;
+
+        Encoder<ILoggingEvent> encoder = this.encoder;
+        if (encoder instanceof LogbackGsonEncoder) {
+            // Serialization is done outside of lock, to buffer of thread
+            LogbackGsonLayout layout = ((LogbackGsonEncoder) encoder).getLayout();
+            JsonOutputBuffer buffer = layout.acquireBuffer();
+            try {
+                layout.writeTo(event, buffer);
+                this.writeBytes(buffer.array(), buffer.size());
+            } finally {
+                layout.releaseBuffer(buffer);
+            }
+        } else {
+            byte[] bytes = encoder.encode(event);
+            if (bytes != null) this.writeBytes(bytes, bytes.length);
+        }
+    }
+
+    private void writeBytes(byte[] bytes, int length) {
+        if (length == 0) return;
+
+        this.lock.lock();
+        try {
+            if (this.mapped == null) return; // Appender is stopped
+
+            this.write(bytes, 0, length);
+        } catch (IOException e) {
+            this.started = false;
+            this.addError("Cannot write to file \"" + this.getFile() + "\"", e);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+
+    @Override
+    public void start() {
+        if (this.isStarted()) return;
+
+        if (this.getFile() == null || this.getFile().isEmpty()) {
+            this.addError("\"File\" property not set for appender named [" + this.getName() + "]");
+            return;
+        }
+        if (this.getEncoder() == null) {
+            this.addError("No encoder set for the appender named [" + this.getName() + "]");
+            return;
+        }
+        if (this.getChunkSize() < 1) {
+            this.addError("Invalid chunk size [" + this.getChunkSize() + "]");
+            return;
+        }
+        if (this.getForceInterval() < 0) {
+            this.addError("Invalid force interval [" + this.getForceInterval() + "]");
+            return;
+        }
+
+        this.lock.lock();
+        try {
+            Path path = new File(this.getFile()).toPath().toAbsolutePath();
+            if (path.getParent() != null) Files.createDirectories(path.getParent());
+
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long position = 0;
+            if (this.isAppend()) {
+                position = findWrittenSize(this.channel, this.getChunkSize());
+            } else {
+                this.channel.truncate(0);
+            }
+            this.mapChunk(position);
+
+            byte[] header = this.getEncoder().headerBytes();
+            if (header != null) this.write(header, 0, header.length);
+        } catch (IOException e) {
+            this.addError("Cannot open file \"" + this.getFile() + "\"", e);
+            this.closeChannel();
+            return;
+        } finally {
+            this.lock.unlock();
+        }
+
+        if (this.getForceInterval() > 0) {
+            this.forceFuture = this.getContext().getScheduledExecutorService().scheduleWithFixedDelay(
+                    this::force,
+                    this.getForceInterval(),
+                    this.getForceInterval(),
+                    TimeUnit.MILLISECONDS
+            );
+            this.getContext().addScheduledFuture(this.forceFuture);
+        }
+
+        super.start();
+    }
+
+    @Override
+    public void stop() {
+        if (!this.isStarted()) return;
+
+        super.stop();
+        if (this.forceFuture != null) {
+            this.forceFuture.cancel(false);
+            this.forceFuture = null;
+        }
+
+        this.lock.lock();
+        try {
+            byte[] footer = this.getEncoder().footerBytes();
+            if (footer != null && this.mapped != null) this.write(footer, 0, footer.length);
+        } catch (IOException e) {
+            this.addError("Cannot write to file \"" + this.getFile() + "\"", e);
+        } finally {
+            this.closeChannel();
+            this.lock.unlock();
+        }
+    }
+
+    // Forces and unmaps mapped region, truncates file to written size and closes it
+    private void closeChannel() {
+        if (this.channel == null) return;
+
+        MappedByteBuffer mapped = this.mapped;
+        try {
+            if (mapped != null) {
+                long size = this.writtenSize();
+                mapped.force();
+                // Mapped file cannot be truncated on Windows
+                this.mapped = null;
+                unmap(mapped);
+                mapped = null;
+                this.channel.truncate(size);
+            }
+        } catch (IOException e) {
+            this.addError("Cannot truncate file \"" + this.getFile() + "\"", e);
+        } finally {
+            this.mapped = null;
+            unmap(mapped);
+            try {
+                this.channel.close();
+            } catch (IOException e) {
+                this.addError("Cannot close file \"" + this.getFile() + "\"", e);
+            }
+            this.channel = null;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package me.ore.logback.gson.layout;
+
+
+/**
+ * Immutable snapshot of {@link LogbackGsonLayoutMetrics metrics of layout}
+ *
+ * <p>
+ *     Histograms have power-of-2 buckets: bucket {@code 0} counts value {@code 0}, bucket {@code i} counts values
+ *     from {@code 2^(i-1)} to {@code 2^i - 1}, last bucket also counts all greater values
+ * </p>
+ *
+ * @see LogbackGsonLayoutMetrics#snapshot()
+ */
+public final class LogbackGsonMetricsSnapshot {
+    private final long eventCount;
+    private final long byteCount;
+    private final long errorCount;
+    private final long gsonFallbackCount;
+    private final long timedEventCount;
+    private final long totalSerializationNanos;
+    private final long[] serializationNanosHistogram;
+    private final long[] extraParamsCountHistogram;
+
+    LogbackGsonMetricsSnapshot(
+            long eventCount,
+            long byteCount,
+            long errorCount,
+            long gsonFallbackCount,
+            long timedEventCount,
+            long totalSerializationNanos,
+            long[] serializationNanosHistogram,
+            long[] extraParamsCountHistogram
+    ) {
+        this.eventCount = eventCount;
+        this.byteCount = byteCount;
+        this.errorCount = errorCount;
+        this.gsonFallbackCount = gsonFallbackCount;
+        this.timedEventCount = timedEventCount;
+        this.totalSerializationNanos = totalSerializationNanos;
+        this.serializationNanosHistogram = serializationNanosHistogram;
+        this.extraParamsCountHistogram = extraParamsCountHistogram;
+    }
+
+
+    /**
+     * @return count of written log events
+     */
+    public long getEventCount() { return this.eventCount; }
+
+    /**
+     * @return count of bytes of written log events (including log line separators)
+     */
+    public long getByteCount() { return this.byteCount; }
+
+    /**
+     * @return count of written &quot;error&quot; properties
+     */
+    public long getErrorCount() { return this.errorCount; }
+
+    /**
+     * @return count of values, written by GSON (not by built-in or registered {@link LogbackGsonValueWriter value writers})
+     */
+    public long getGsonFallbackCount() { return this.gsonFallbackCount; }
+
+    /**
+     * @return count of log events, for which time of serialization has been measured
+     */
+    public long getTimedEventCount() { return this.timedEventCount; }
+
+    /**
+     * @return average time of serialization of log event (in nanoseconds)
+     */
+    public long getAverageSerializationNanos() { return (this.timedEventCount == 0 ? 0 : this.totalSerializationNanos / this.timedEventCount); }
+
+    /**
+     * @param fraction fraction of measured log events, from {@code 0} to {@code 1} (for example, {@code 0.99})
+     * @return approximate percentile of time of serialization of log event (in nanoseconds) - upper bound of bucket of histogram
+     */
+    public long getSerializationNanosPercentile(double fraction) { return Log2Histogram.percentile(this.serializationNanosHistogram, fraction); }
+
+    /**
+     * @return histogram of time of serialization of log event (in nanoseconds)
+     */
+    public long[] getSerializationNanosHistogram() { return this.serializationNanosHistogram.clone(); }
+
+    /**
+     * @return histogram of count of extra parameters of log event
+     */
+    public long[] getExtraParamsCountHistogram() { return this.extraParamsCountHistogram.clone(); }
+
+
+    @Override
+    public String toString() {
+        return "LogbackGsonMetricsSnapshot{" +
+                "eventCount=" + this.eventCount +
+                ", byteCount=" + this.byteCount +
+                ", errorCount=" + this.errorCount +
+                ", gsonFallbackCount=" + this.gsonFallbackCount +
+                ", timedEventCount=" + this.timedEventCount +
+                ", averageSerializationNanos=" + this.getAverageSerializationNanos() +
+                ", serializationNanosP50=" + this.getSerializationNanosPercentile(0.5) +
+                ", serializationNanosP99=" + this.getSerializationNanosPercentile(0.99) +
+                '}';
+    }
+}
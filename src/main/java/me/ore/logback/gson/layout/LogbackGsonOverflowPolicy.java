@@ -0,0 +1,27 @@
+package me.ore.logback.gson.layout;
+
+
+/**
+ * Policies of {@link AsyncGsonAppender}, applied when its queue is full (or almost full)
+ *
+ * @see AsyncGsonAppender#getOverflowPolicy()
+ * @see AsyncGsonAppender#setOverflowPolicy(LogbackGsonOverflowPolicy)
+ */
+public enum LogbackGsonOverflowPolicy {
+    /**
+     * Logging thread waits until queue has free space; log events are never lost (except when appender stops,
+     * or when no worker of appender is alive)
+     */
+    BLOCK,
+
+    /**
+     * Log event is dropped when queue is full; logging thread never waits
+     */
+    DROP,
+
+    /**
+     * When queue is more than 3/4 full, only every {@link AsyncGsonAppender#getSampleRate() N-th} log event is queued,
+     * other events are dropped; when queue is full, log events are dropped; logging thread never waits
+     */
+    SAMPLE
+}
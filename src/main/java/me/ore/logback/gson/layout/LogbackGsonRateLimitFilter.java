@@ -0,0 +1,442 @@
+package me.ore.logback.gson.layout;
+
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.Marker;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Turbo filter, which limits rate of repeated log events - events with same logger, level and message template
+ *
+ * <p>
+ *     Turbo filter is called before creation of log event, so suppressed events are not created and not serialized
+ *     by {@link LogbackGsonLayout}:
+ * </p>
+ *
+ * <pre>{@code
+ * <configuration>
+ *     <turboFilter class="me.ore.logback.gson.layout.LogbackGsonRateLimitFilter">
+ *         <permitsPerSecond>10</permitsPerSecond>
+ *         <burst>100</burst>
+ *     </turboFilter>
+ *     ...
+ * </configuration>
+ * }</pre>
+ *
+ * <p>
+ *     For every key (logger, level, message template):
+ * </p>
+ * <ol>
+ *     <li>first {@link #getFirstCount() N} events are always passed;</li>
+ *     <li>next events are passed while token bucket of key is not empty ({@link #getPermitsPerSecond() rate}
+ *     and {@link #getBurst() capacity} of bucket are configured);</li>
+ *     <li>other events are suppressed; one of {@link #getSampleRate() N} suppressed events is passed anyway (randomly).</li>
+ * </ol>
+ *
+ * <p>
+ *     State of keys is kept in fixed striped table of atomic counters, without locks and without allocations;
+ *     index in table is hash of key, so keys with same hash share state. Counts of suppressed events are reported
+ *     periodically by summary events of logger {@link #getSummaryLogger()}; counts after last summary are reported
+ *     as warnings of status manager, when filter stops
+ * </p>
+ */
+@SuppressWarnings("unused")
+public class LogbackGsonRateLimitFilter extends TurboFilter {
+    // region Class constants
+    /**
+     * Default min size of table of counters
+     *
+     * @see #getTableSize()
+     * @see #setTableSize(int)
+     */
+    public static final int TABLE_SIZE = 4096;
+
+    /**
+     * Default rate of refill of token bucket of every key
+     *
+     * @see #getPermitsPerSecond()
+     * @see #setPermitsPerSecond(double)
+     */
+    public static final double PERMITS_PER_SECOND = 10;
+
+    /**
+     * Default capacity of token bucket of every key
+     *
+     * @see #getBurst()
+     * @see #setBurst(int)
+     */
+    public static final int BURST = 100;
+
+    /**
+     * Default count of first log events of every key, which are always passed
+     *
+     * @see #getFirstCount()
+     * @see #setFirstCount(int)
+     */
+    public static final int FIRST_COUNT = 10;
+
+    /**
+     * Default rate of sampling of suppressed log events; {@code 0} - suppressed events are not sampled
+     *
+     * @see #getSampleRate()
+     * @see #setSampleRate(int)
+     */
+    public static final int SAMPLE_RATE = 0;
+
+    /**
+     * Default interval (in milliseconds) between summary events
+     *
+     * @see #getSummaryInterval()
+     * @see #setSummaryInterval(long)
+     */
+    public static final long SUMMARY_INTERVAL = 60000;
+
+    /**
+     * Default name of logger of summary events
+     *
+     * @see #getSummaryLogger()
+     * @see #setSummaryLogger(String)
+     */
+    public static final String SUMMARY_LOGGER = "me.ore.logback.gson.layout.RateLimit";
+    // endregion
+
+
+    // region Instance properties
+    private int tableSize = TABLE_SIZE;
+
+    /**
+     * @return min size of table of counters (real size is power of 2); by default - {@link #TABLE_SIZE}
+     *
+     * @see #TABLE_SIZE
+     * @see #setTableSize(int)
+     */
+    public int getTableSize() { return tableSize; }
+
+    /**
+     * Sets min size of table of counters; real size is rounded up to power of 2
+     *
+     * @param tableSize min size of table
+     *
+     * @see #TABLE_SIZE
+     * @see #getTableSize()
+     */
+    public void setTableSize(int tableSize) { this.tableSize = tableSize; }
+
+
+    private double permitsPerSecond = PERMITS_PER_SECOND;
+
+    /**
+     * @return rate of refill of token bucket of every key (log events per second); by default - {@link #PERMITS_PER_SECOND}
+     *
+     * @see #PERMITS_PER_SECOND
+     * @see #setPermitsPerSecond(double)
+     */
+    public double getPermitsPerSecond() { return permitsPerSecond; }
+
+    /**
+     * @param permitsPerSecond rate of refill of token bucket of every key (log events per second), must be positive
+     *
+     * @see #PERMITS_PER_SECOND
+     * @see #getPermitsPerSecond()
+     */
+    public void setPermitsPerSecond(double permitsPerSecond) { this.permitsPerSecond = permitsPerSecond; }
+
+
+    private int burst = BURST;
+
+    /**
+     * @return capacity of token bucket of every key - max count of log events, passed at once; by default - {@link #BURST}
+     *
+     * @see #BURST
+     * @see #setBurst(int)
+     */
+    public int getBurst() { return burst; }
+
+    /**
+     * @param burst capacity of token bucket of every key, must be positive
+     *
+     * @see #BURST
+     * @see #getBurst()
+     */
+    public void setBurst(int burst) { this.burst = burst; }
+
+
+    private int firstCount = FIRST_COUNT;
+
+    /**
+     * @return count of first log events of every key, which are always passed (and do not take tokens); by default - {@link #FIRST_COUNT}
+     *
+     * @see #FIRST_COUNT
+     * @see #setFirstCount(int)
+     */
+    public int getFirstCount() { return firstCount; }
+
+    /**
+     * @param firstCount count of first log events of every key, which are always passed; {@code 0} - disabled
+     *
+     * @see #FIRST_COUNT
+     * @see #getFirstCount()
+     */
+    public void setFirstCount(int firstCount) { this.firstCount = firstCount; }
+
+
+    private int sampleRate = SAMPLE_RATE;
+
+    /**
+     * @return rate of sampling - one of {@code sampleRate} suppressed log events (randomly) is passed; by default - {@link #SAMPLE_RATE}
+     *
+     * @see #SAMPLE_RATE
+     * @see #setSampleRate(int)
+     */
+    public int getSampleRate() { return sampleRate; }
+
+    /**
+     * @param sampleRate rate of sampling of suppressed log events; {@code 0} - suppressed events are not sampled
+     *
+     * @see #SAMPLE_RATE
+     * @see #getSampleRate()
+     */
+    public void setSampleRate(int sampleRate) { this.sampleRate = sampleRate; }
+
+
+    private long summaryInterval = SUMMARY_INTERVAL;
+
+    /**
+     * @return interval (in milliseconds) between summary events; by default - {@link #SUMMARY_INTERVAL}
+     *
+     * @see #SUMMARY_INTERVAL
+     * @see #setSummaryInterval(long)
+     */
+    public long getSummaryInterval() { return summaryInterval; }
+
+    /**
+     * @param summaryInterval interval (in milliseconds) between summary events; {@code 0} - summary events are disabled
+     *
+     * @see #SUMMARY_INTERVAL
+     * @see #getSummaryInterval()
+     */
+    public void setSummaryInterval(long summaryInterval) { this.summaryInterval = summaryInterval; }
+
+
+    private String summaryLogger = SUMMARY_LOGGER;
+
+    /**
+     * Summary event (level WARN) is generated for every key with suppressed log events; it contains key-value pairs
+     * {@code suppressedCount}, {@code suppressedLogger}, {@code suppressedLevel} and {@code suppressedTemplate}
+     * (see {@link LogbackGsonLayout#isIncludeKeyValuePairs()})
+     *
+     * @return name of logger of summary events; by default - {@link #SUMMARY_LOGGER}
+     *
+     * @see #SUMMARY_LOGGER
+     * @see #setSummaryLogger(String)
+     */
+    public String getSummaryLogger() { return summaryLogger; }
+
+    /**
+     * @param summaryLogger name of logger of summary events; log events of this logger are not limited
+     *
+     * @see #SUMMARY_LOGGER
+     * @see #getSummaryLogger()
+     */
+    public void setSummaryLogger(String summaryLogger) { this.summaryLogger = summaryLogger; }
+    // endregion
+
+
+    // region Metrics
+    private final LongAdder suppressedCount = new LongAdder();
+    private final LongAdder sampledCount = new LongAdder();
+
+    /**
+     * @return count of suppressed log events since filter created
+     */
+    public long getSuppressedCount() { return this.suppressedCount.sum(); }
+
+    /**
+     * @return count of log events, passed by sampling, since filter created
+     */
+    public long getSampledCount() { return this.sampledCount.sum(); }
+    // endregion
+
+
+    // region State
+    // Key of suppressed log events, kept for summary
+    private static final class SuppressedKey {
+        final String loggerName;
+        final Level level;
+        final String template;
+
+        SuppressedKey(String loggerName, Level level, String template) {
+            this.loggerName = loggerName;
+            this.level = level;
+            this.template = template;
+        }
+    }
+
+    // Values below are prepared in "start()"
+    private int mask;
+    // Count of seen log events of every slot, up to "firstCount"
+    private AtomicLongArray seenCounts;
+    // Token bucket of every slot, as "theoretical arrival time" (GCRA): slot has free token while this time is not far in future
+    private AtomicLongArray arrivalTimes;
+    private AtomicLongArray suppressedCounts;
+    private AtomicReferenceArray<SuppressedKey> suppressedKeys;
+    private long emissionIntervalNanos;
+    private long toleranceNanos;
+    private long originNanos;
+    private Logger summaryLoggerInstance;
+    private ScheduledFuture<?> summaryFuture;
+
+    private int slotOf(Logger logger, Level level, String template) {
+        int hash = template.hashCode();
+        hash = hash * 31 + logger.getName().hashCode();
+        hash = hash * 31 + level.levelInt;
+        return (hash ^ (hash >>> 16)) & this.mask;
+    }
+
+    private boolean tryAcquire(int slot) {
+        long now = System.nanoTime() - this.originNanos;
+        while (true) {
+            long arrivalTime = this.arrivalTimes.get(slot);
+            long start = Math.max(arrivalTime, now);
+            if (start - now > this.toleranceNanos) return false;
+            if (this.arrivalTimes.compareAndSet(slot, arrivalTime, start + this.emissionIntervalNanos)) return true;
+        }
+    }
+    // endregion
+
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        // Calls without message (like "isDebugEnabled()") and log events of disabled levels are not counted
+        if (!this.isStarted() || format == null || logger == this.summaryLoggerInstance) return FilterReply.NEUTRAL;
+        if (!level.isGreaterOrEqual(logger.getEffectiveLevel())) return FilterReply.NEUTRAL;
+
+        int slot = this.slotOf(logger, level, format);
+
+        int firstCount = this.firstCount;
+        if (firstCount > 0 && this.seenCounts.get(slot) < firstCount && this.seenCounts.incrementAndGet(slot) <= firstCount) {
+            return FilterReply.NEUTRAL;
+        }
+
+        if (this.tryAcquire(slot)) return FilterReply.NEUTRAL;
+
+        int sampleRate = this.sampleRate;
+        if (sampleRate > 0 && ThreadLocalRandom.current().nextInt(sampleRate) == 0) {
+            this.sampledCount.increment();
+            return FilterReply.NEUTRAL;
+        }
+
+        this.suppressedCount.increment();
+        if (this.suppressedCounts.getAndIncrement(slot) == 0) {
+            SuppressedKey key = this.suppressedKeys.get(slot);
+            if (key == null || key.level != level || !key.template.equals(format) || !key.loggerName.equals(logger.getName())) {
+                this.suppressedKeys.lazySet(slot, new SuppressedKey(logger.getName(), level, format));
+            }
+        }
+        return FilterReply.DENY;
+    }
+
+    // "toStatus" - counts are reported as warnings of status manager, because appenders can be already stopped
+    private void logSummaries(boolean toStatus) {
+        for (int slot = 0; slot <= this.mask; slot++) {
+            if (this.suppressedCounts.get(slot) == 0) continue;
+
+            SuppressedKey key = this.suppressedKeys.get(slot);
+            if (key == null) continue; // Key is being saved - count will be reported next time
+
+            long count = this.suppressedCounts.getAndSet(slot, 0);
+            if (count == 0) continue;
+
+            if (toStatus) {
+                this.addWarn("Suppressed " + count + " log event(s) of logger \"" + key.loggerName + "\" with level " + key.level + ": " + key.template);
+                continue;
+            }
+
+            this.summaryLoggerInstance.atWarn()
+                    .addKeyValue("suppressedCount", count)
+                    .addKeyValue("suppressedLogger", key.loggerName)
+                    .addKeyValue("suppressedLevel", key.level.levelStr)
+                    .addKeyValue("suppressedTemplate", key.template)
+                    .log("Suppressed {} log event(s) of logger \"{}\" with level {}: {}", count, key.loggerName, key.level, key.template);
+        }
+    }
+
+
+    @Override
+    public void start() {
+        if (this.isStarted()) return;
+
+        if (this.getTableSize() < 1) {
+            this.addError("Invalid table size [" + this.getTableSize() + "]");
+            return;
+        }
+        if (!(this.getPermitsPerSecond() > 0)) {
+            this.addError("Invalid permits per second [" + this.getPermitsPerSecond() + "]");
+            return;
+        }
+        if (this.getBurst() < 1) {
+            this.addError("Invalid burst [" + this.getBurst() + "]");
+            return;
+        }
+        if (this.getFirstCount() < 0) {
+            this.addError("Invalid first count [" + this.getFirstCount() + "]");
+            return;
+        }
+        if (this.getSampleRate() < 0) {
+            this.addError("Invalid sample rate [" + this.getSampleRate() + "]");
+            return;
+        }
+        if (this.getSummaryInterval() < 0) {
+            this.addError("Invalid summary interval [" + this.getSummaryInterval() + "]");
+            return;
+        }
+
+        int size = (this.getTableSize() <= 1 ? 1 : Integer.highestOneBit(this.getTableSize() - 1) << 1);
+        this.mask = size - 1;
+        this.seenCounts = new AtomicLongArray(size);
+        this.arrivalTimes = new AtomicLongArray(size);
+        this.suppressedCounts = new AtomicLongArray(size);
+        this.suppressedKeys = new AtomicReferenceArray<>(size);
+
+        this.emissionIntervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / this.getPermitsPerSecond()));
+        this.toleranceNanos = (long) Math.min(Long.MAX_VALUE / 2, (double) this.emissionIntervalNanos * (this.getBurst() - 1));
+        this.originNanos = System.nanoTime();
+
+        this.summaryLoggerInstance = ((LoggerContext) this.getContext()).getLogger(this.getSummaryLogger());
+        if (this.getSummaryInterval() > 0) {
+            this.summaryFuture = this.getContext().getScheduledExecutorService().scheduleAtFixedRate(
+                    () -> this.logSummaries(false),
+                    this.getSummaryInterval(),
+                    this.getSummaryInterval(),
+                    TimeUnit.MILLISECONDS
+            );
+            this.getContext().addScheduledFuture(this.summaryFuture);
+        }
+
+        super.start();
+    }
+
+    @Override
+    public void stop() {
+        if (!this.isStarted()) return;
+
+        super.stop();
+        if (this.summaryFuture != null) {
+            this.summaryFuture.cancel(false);
+            this.summaryFuture = null;
+            // Reset of context stops appenders before turbo filters, so counts after last summary go to status manager
+            this.logSummaries(true);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package me.ore.logback.gson.layout;
+
+
+/**
+ * Modes of generation of &quot;sequence number&quot; property
+ *
+ * @see LogbackGsonLayout#getSequenceMode()
+ * @see LogbackGsonLayout#setSequenceMode(LogbackGsonSequenceMode)
+ */
+public enum LogbackGsonSequenceMode {
+    /**
+     * One counter for whole application (for all layouts and all threads)
+     *
+     * <p>
+     *     Numbers are unique and strictly ordered in whole application;
+     *     every log event increments one shared counter, so threads contend on it
+     * </p>
+     */
+    GLOBAL,
+
+    /**
+     * Every thread leases blocks of numbers from counter of {@link #GLOBAL} mode
+     *
+     * <p>
+     *     Numbers are unique in whole application and ordered inside of every thread,
+     *     but not ordered between threads; shared counter is touched once per block,
+     *     see {@link LogbackGsonLayout#getSequenceBlockSize()}
+     * </p>
+     */
+    THREAD_BLOCK,
+
+    /**
+     * Every layout instance has its own counter
+     *
+     * <p>
+     *     Numbers are unique and strictly ordered inside of one layout (typically - one appender)
+     * </p>
+     */
+    INSTANCE,
+
+    /**
+     * Pair of thread ID and counter of that thread, written as {@code "<thread ID>-<counter>"} (both hexadecimal)
+     *
+     * <p>
+     *     Numbers are unique and ordered inside of every thread of one layout (counters are kept per layout instance,
+     *     so two layouts, used by the same thread, write the same numbers); there is no shared counter at all
+     * </p>
+     */
+    THREAD_COMPOSITE
+}
@@ -0,0 +1,134 @@
+package me.ore.logback.gson.layout;
+
+
+import ch.qos.logback.core.Context;
+
+
+/**
+ * Static property, which is written with the same value in every log event (like {@code "service"} or {@code "env"})
+ *
+ * <p>
+ *     Value is resolved once, when layout starts - from first available source: {@link #getSystemProperty() system property},
+ *     {@link #getEnvironmentVariable() environment variable}, {@link #getContextProperty() property of Logback context},
+ *     {@link #getValue() value}. If there is no value at all, property is not written
+ * </p>
+ *
+ * <pre>{@code
+ * <layout class="me.ore.logback.gson.layout.LogbackGsonLayout">
+ *     <staticField>
+ *         <name>service</name>
+ *         <value>orders</value>
+ *     </staticField>
+ *     <staticField>
+ *         <name>env</name>
+ *         <environmentVariable>APP_ENV</environmentVariable>
+ *         <value>dev</value>
+ *     </staticField>
+ * </layout>
+ * }</pre>
+ *
+ * @see LogbackGsonLayout#addStaticField(LogbackGsonStaticField)
+ */
+@SuppressWarnings("unused")
+public class LogbackGsonStaticField {
+    // region Instance properties
+    private String name;
+
+    /**
+     * @return name of JSON property
+     *
+     * @see #setName(String)
+     */
+    public String getName() { return name; }
+
+    /**
+     * @param name name of JSON property
+     *
+     * @see #getName()
+     */
+    public void setName(String name) { this.name = name; }
+
+
+    private String value;
+
+    /**
+     * @return value of property; used if value is not found in other sources
+     *
+     * @see #setValue(String)
+     */
+    public String getValue() { return value; }
+
+    /**
+     * @param value value of property; used if value is not found in other sources
+     *
+     * @see #getValue()
+     */
+    public void setValue(String value) { this.value = value; }
+
+
+    private String systemProperty;
+
+    /**
+     * @return name of system property with value
+     *
+     * @see #setSystemProperty(String)
+     */
+    public String getSystemProperty() { return systemProperty; }
+
+    /**
+     * @param systemProperty name of system property with value
+     *
+     * @see #getSystemProperty()
+     */
+    public void setSystemProperty(String systemProperty) { this.systemProperty = systemProperty; }
+
+
+    private String environmentVariable;
+
+    /**
+     * @return name of environment variable with value
+     *
+     * @see #setEnvironmentVariable(String)
+     */
+    public String getEnvironmentVariable() { return environmentVariable; }
+
+    /**
+     * @param environmentVariable name of environment variable with value
+     *
+     * @see #getEnvironmentVariable()
+     */
+    public void setEnvironmentVariable(String environmentVariable) { this.environmentVariable = environmentVariable; }
+
+
+    private String contextProperty;
+
+    /**
+     * @return name of property of Logback context (like {@code <property scope="context" name="..." value="..."/>}) with value
+     *
+     * @see #setContextProperty(String)
+     */
+    public String getContextProperty() { return contextProperty; }
+
+    /**
+     * @param contextProperty name of property of Logback context with value
+     *
+     * @see #getContextProperty()
+     */
+    public void setContextProperty(String contextProperty) { this.contextProperty = contextProperty; }
+    // endregion
+
+
+    /**
+     * @param context Logback context of layout, can be {@code null}
+     * @return value from first available source; {@code null} - if there is no value
+     */
+    public String resolveValue(Context context) {
+        String result = null;
+        if (isSet(this.getSystemProperty())) result = System.getProperty(this.getSystemProperty().trim());
+        if (result == null && isSet(this.getEnvironmentVariable())) result = System.getenv(this.getEnvironmentVariable().trim());
+        if (result == null && isSet(this.getContextProperty()) && context != null) result = context.getProperty(this.getContextProperty().trim());
+        return (result == null ? this.getValue() : result);
+    }
+
+    private static boolean isSet(String name) { return (name != null && !name.trim().isEmpty()); }
+}
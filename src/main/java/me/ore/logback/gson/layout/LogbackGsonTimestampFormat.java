@@ -0,0 +1,36 @@
+package me.ore.logback.gson.layout;
+
+
+/**
+ * Formats of &quot;timestamp&quot; property
+ *
+ * @see LogbackGsonLayout#getTimestampFormat()
+ * @see LogbackGsonLayout#setTimestampFormat(LogbackGsonTimestampFormat)
+ */
+public enum LogbackGsonTimestampFormat {
+    /**
+     * Number of milliseconds since epoch, for example {@code 1684490402567}
+     */
+    EPOCH_MILLIS,
+
+    /**
+     * Number of nanoseconds since epoch, for example {@code 1684490402567123456}
+     *
+     * <p>
+     *     Precision depends on clock of JVM, see {@link ch.qos.logback.classic.spi.ILoggingEvent#getInstant()}
+     * </p>
+     */
+    EPOCH_NANOS,
+
+    /**
+     * ISO-8601 string with milliseconds and offset of {@link LogbackGsonLayout#getTimestampZone() zone},
+     * for example {@code "2023-05-19T10:00:02.567Z"}
+     */
+    ISO_8601,
+
+    /**
+     * String formatted by {@link LogbackGsonLayout#getTimestampPattern() pattern} of {@link java.time.format.DateTimeFormatter}
+     * in {@link LogbackGsonLayout#getTimestampZone() zone}
+     */
+    PATTERN
+}
@@ -0,0 +1,26 @@
+package me.ore.logback.gson.layout;
+
+
+/**
+ * Writer of JSON value of some type - for example, value of extra parameter
+ *
+ * <p>
+ *     Writers are registered in {@link LogbackGsonValueWriters} (see {@link LogbackGsonBuilderConfigurer#configureValueWriters(LogbackGsonValueWriters)})
+ *     and are used instead of {@link com.google.gson.Gson} for values of their types
+ * </p>
+ *
+ * @param <T> type of values
+ */
+@FunctionalInterface
+public interface LogbackGsonValueWriter<T> {
+    /**
+     * Writes exactly one JSON value, for example with {@link JsonOutputBuffer#value(String)}
+     * or with {@link LogbackGsonLayout#writeValue(Object, JsonOutputBuffer)}
+     * (which also applies {@link LogbackGsonLayout#getMaxValueBytes() limit} of values)
+     *
+     * @param value value to write, not {@code null}
+     * @param buffer target buffer; name of property (if any) is already written
+     * @param layout layout, which writes value
+     */
+    void write(T value, JsonOutputBuffer buffer, LogbackGsonLayout layout);
+}
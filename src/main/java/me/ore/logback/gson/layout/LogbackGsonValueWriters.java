@@ -0,0 +1,260 @@
+package me.ore.logback.gson.layout;
+
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.SerializedName;
+
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Registry of {@link LogbackGsonValueWriter value writers}, used by {@link LogbackGsonLayout#writeValue(Object, JsonOutputBuffer)}
+ * for values, which are not strings, numbers or booleans
+ *
+ * <p>
+ *     Writer for class of value is resolved once and is cached; order of resolution:
+ * </p>
+ * <ol>
+ *     <li>writer, registered by {@link #register(Class, LogbackGsonValueWriter)} for this class;</li>
+ *     <li>writer, registered by {@link #registerHierarchy(Class, LogbackGsonValueWriter)} for superclass or interface
+ *     (first registered one);</li>
+ *     <li>built-in writer - for {@link UUID}, enums, {@link StringBuilder}, {@link StringBuffer}, {@code int[]}, {@code long[]}
+ *     and {@link Collection collections}; built-in writer is used only if GSON of layout has no custom type adapter for this class,
+ *     and writes the same JSON as default GSON;</li>
+ *     <li>{@link TypeAdapter} of GSON of layout.</li>
+ * </ol>
+ *
+ * @see LogbackGsonBuilderConfigurer#configureValueWriters(LogbackGsonValueWriters)
+ */
+public final class LogbackGsonValueWriters {
+    // GSON without customizations - to find out, if GSON of layout has custom type adapter for class
+    private static final Gson DEFAULT_GSON = new Gson();
+
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    // Length of UUID string, for example "1cb4d47d-3f4b-4c41-9b3e-5b3e8b9b3e3d"
+    private static final int UUID_LENGTH = 36;
+
+
+    private final Gson gson;
+    private final int valueLimit;
+
+    private final Map<Class<?>, LogbackGsonValueWriter<?>> writers = new HashMap<>();
+    private final List<Map.Entry<Class<?>, LogbackGsonValueWriter<?>>> hierarchyWriters = new ArrayList<>();
+
+    private final ConcurrentHashMap<Class<?>, LogbackGsonValueWriter<Object>> resolvedWriters = new ConcurrentHashMap<>();
+
+    /**
+     * @param gson GSON of layout
+     * @param valueLimit max count of bytes of one value; {@link Integer#MAX_VALUE} - unlimited
+     */
+    LogbackGsonValueWriters(Gson gson, int valueLimit) {
+        this.gson = gson;
+        this.valueLimit = valueLimit;
+    }
+
+
+    // region Registration
+    /**
+     * Registers writer for values of class {@code type} (but not of its subclasses)
+     *
+     * @param type class of values
+     * @param writer writer
+     * @param <T> type of values
+     */
+    public <T> void register(Class<T> type, LogbackGsonValueWriter<? super T> writer) {
+        this.writers.put(Objects.requireNonNull(type, "Type is null"), Objects.requireNonNull(writer, "Writer is null"));
+        this.resolvedWriters.clear();
+    }
+
+    /**
+     * Registers writer for values of class (or interface) {@code type} and of all its subclasses
+     *
+     * @param type class or interface of values
+     * @param writer writer
+     * @param <T> type of values
+     */
+    public <T> void registerHierarchy(Class<T> type, LogbackGsonValueWriter<? super T> writer) {
+        this.hierarchyWriters.add(new AbstractMap.SimpleImmutableEntry<>(
+                Objects.requireNonNull(type, "Type is null"),
+                Objects.requireNonNull(writer, "Writer is null")
+        ));
+        this.resolvedWriters.clear();
+    }
+    // endregion
+
+
+    // region Resolution
+    /**
+     * @param type class of value
+     * @return writer for values of class {@code type}
+     */
+    LogbackGsonValueWriter<Object> get(Class<?> type) {
+        LogbackGsonValueWriter<Object> result = this.resolvedWriters.get(type);
+        if (result == null) {
+            result = this.resolve(type);
+            this.resolvedWriters.put(type, result);
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private LogbackGsonValueWriter<Object> resolve(Class<?> type) {
+        LogbackGsonValueWriter<?> writer = this.writers.get(type);
+        if (writer != null) return (LogbackGsonValueWriter<Object>) writer;
+
+        for (Map.Entry<Class<?>, LogbackGsonValueWriter<?>> entry : this.hierarchyWriters) {
+            if (entry.getKey().isAssignableFrom(type)) return (LogbackGsonValueWriter<Object>) entry.getValue();
+        }
+
+        // Numbers are written by GSON without type adapters
+        if (Number.class.isAssignableFrom(type)) return (value, buffer, layout) -> layout.writeValueWithGson(value, null, buffer);
+
+        TypeAdapter<Object> adapter = getAdapter(this.gson, type);
+
+        LogbackGsonValueWriter<Object> builtInWriter = this.builtInWriter(type);
+        if (builtInWriter != null) {
+            TypeAdapter<Object> defaultAdapter = getAdapter(DEFAULT_GSON, type);
+            boolean customized = (adapter == null ? defaultAdapter != null : defaultAdapter == null || adapter.getClass() != defaultAdapter.getClass());
+            if (!customized) return builtInWriter;
+        }
+
+        // If GSON cannot create adapter, it will report error while writing
+        return (value, buffer, layout) -> layout.writeValueWithGson(value, adapter, buffer);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static TypeAdapter<Object> getAdapter(Gson gson, Class<?> type) {
+        try {
+            return (TypeAdapter<Object>) gson.getAdapter(type);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+    // endregion
+
+
+    // region Built-in writers
+    private LogbackGsonValueWriter<Object> builtInWriter(Class<?> type) {
+        if (type == UUID.class) return (value, buffer, layout) -> this.writeUuid((UUID) value, buffer, layout);
+        // Other implementations of CharSequence (and classes like Instant) are serialized by GSON as objects
+        if (type == StringBuilder.class || type == StringBuffer.class) return (value, buffer, layout) -> layout.writeValue(value.toString(), buffer);
+        // Constant with body is instance of subclass of enum
+        if (Enum.class.isAssignableFrom(type)) return this.enumWriter(type.isEnum() ? type : type.getSuperclass());
+        if (type == int[].class) return LogbackGsonValueWriters::writeIntArray;
+        if (type == long[].class) return LogbackGsonValueWriters::writeLongArray;
+        if (Collection.class.isAssignableFrom(type)) return LogbackGsonValueWriters::writeCollection;
+        return null;
+    }
+
+    private void writeUuid(UUID value, JsonOutputBuffer buffer, LogbackGsonLayout layout) {
+        if (this.valueLimit < UUID_LENGTH || buffer.getLimit() - buffer.size() < UUID_LENGTH + 3) {
+            layout.writeValue(value.toString(), buffer);
+            return;
+        }
+
+        buffer.beforeValue();
+        buffer.ensureCapacity(UUID_LENGTH + 2);
+        buffer.write('"');
+        long mostSigBits = value.getMostSignificantBits();
+        long leastSigBits = value.getLeastSignificantBits();
+        writeHexDigits(buffer, mostSigBits >>> 32, 8);
+        buffer.write('-');
+        writeHexDigits(buffer, mostSigBits >>> 16, 4);
+        buffer.write('-');
+        writeHexDigits(buffer, mostSigBits, 4);
+        buffer.write('-');
+        writeHexDigits(buffer, leastSigBits >>> 48, 4);
+        buffer.write('-');
+        writeHexDigits(buffer, leastSigBits, 12);
+        buffer.write('"');
+    }
+
+    private static void writeHexDigits(JsonOutputBuffer buffer, long value, int digits) {
+        for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) buffer.write(HEX_DIGITS[(int) ((value >>> shift) & 0xF)]);
+    }
+
+    // Names of enum constants are encoded once; like GSON, uses names from @SerializedName
+    private LogbackGsonValueWriter<Object> enumWriter(Class<?> enumType) {
+        Object[] constants = enumType.getEnumConstants();
+        String[] names = new String[constants.length];
+        byte[][] encodedNames = new byte[constants.length][];
+        for (int i = 0; i < constants.length; i++) {
+            String name = ((Enum<?>) constants[i]).name();
+            try {
+                Field field = enumType.getField(name);
+                SerializedName serializedName = field.getAnnotation(SerializedName.class);
+                if (serializedName != null) name = serializedName.value();
+            } catch (NoSuchFieldException | SecurityException e) {
+                // Name of constant is used
+            }
+
+            names[i] = name;
+            encodedNames[i] = JsonOutputBuffer.encodeString(name, this.gson.htmlSafe());
+        }
+
+        return (value, buffer, layout) -> {
+            int ordinal = ((Enum<?>) value).ordinal();
+            byte[] encodedName = encodedNames[ordinal];
+            if (encodedName.length - 2 <= this.valueLimit && encodedName.length < buffer.getLimit() - buffer.size()) {
+                buffer.rawValue(encodedName);
+            } else {
+                layout.writeValue(names[ordinal], buffer);
+            }
+        };
+    }
+
+    private static void writeIntArray(Object value, JsonOutputBuffer buffer, LogbackGsonLayout layout) {
+        int[] array = (int[]) value;
+        int start = beginArray(buffer);
+        int maxBytes = layout.getValueMaxBytes(buffer, start);
+        for (int i = 0; i < array.length && buffer.size() - start <= maxBytes; i++) buffer.value(array[i]);
+        buffer.endArray();
+        layout.limitWrittenValue(buffer, start);
+    }
+
+    private static void writeLongArray(Object value, JsonOutputBuffer buffer, LogbackGsonLayout layout) {
+        long[] array = (long[]) value;
+        int start = beginArray(buffer);
+        int maxBytes = layout.getValueMaxBytes(buffer, start);
+        for (int i = 0; i < array.length && buffer.size() - start <= maxBytes; i++) buffer.value(array[i]);
+        buffer.endArray();
+        layout.limitWrittenValue(buffer, start);
+    }
+
+    private static void writeCollection(Object value, JsonOutputBuffer buffer, LogbackGsonLayout layout) {
+        int start = beginArray(buffer);
+        int maxBytes = layout.getValueMaxBytes(buffer, start);
+        if (value instanceof List && value instanceof RandomAccess) {
+            // Without iterator
+            List<?> list = (List<?>) value;
+            int size = list.size();
+            for (int i = 0; i < size && buffer.size() - start <= maxBytes; i++) layout.writeValue(list.get(i), buffer);
+        } else {
+            for (Object item : (Collection<?>) value) {
+                if (buffer.size() - start > maxBytes) break;
+                layout.writeValue(item, buffer);
+            }
+        }
+        buffer.endArray();
+        layout.limitWrittenValue(buffer, start);
+    }
+
+    // Begins JSON array; returns position of "["
+    private static int beginArray(JsonOutputBuffer buffer) {
+        buffer.beginArray();
+        return buffer.size() - 1;
+    }
+    // endregion
+}
@@ -0,0 +1,45 @@
+package me.ore.logback.gson.layout;
+
+
+import java.lang.management.ManagementFactory;
+
+
+/**
+ * Provider of &quot;pid&quot; property - ID of process of application
+ *
+ * <p>
+ *     ID of process is resolved and encoded once, when layout starts; if ID cannot be resolved, property is not written
+ * </p>
+ */
+public class ProcessIdFieldProvider extends LogbackGsonFieldProviderBase {
+    /**
+     * Default name of property
+     */
+    public static final String DEFAULT_NAME = "pid";
+
+    @Override
+    protected String getDefaultName() { return DEFAULT_NAME; }
+
+    private static long readProcessId() {
+        // Name of runtime is "<pid>@<host>" in most JVMs
+        String runtimeName = ManagementFactory.getRuntimeMXBean().getName();
+        int index = runtimeName.indexOf('@');
+        try {
+            return Long.parseLong(index < 0 ? runtimeName : runtimeName.substring(0, index));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public LogbackGsonFieldWriter compile(LogbackGsonLayout layout) {
+        long processId = readProcessId();
+        if (processId < 0) return null;
+
+        byte[] name = layout.encodeName(this.getName());
+        return (event, buffer) -> {
+            buffer.name(name);
+            buffer.value(processId);
+        };
+    }
+}
@@ -0,0 +1,122 @@
+package me.ore.logback.gson.layout;
+
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Names of JSON properties, prepared in {@link LogbackGsonLayout#start()}
+ *
+ * <ul>
+ *     <li>set of reserved names (names of &quot;main&quot; properties), which cannot be used by extra parameters, MDC entries and so on;</li>
+ *     <li>bounded cache of encoded names of other properties (like {@code "requestId":}), which are repeated from event to event.</li>
+ * </ul>
+ *
+ * <p>
+ *     Names can be written with prefix (like {@code "extra.requestId":}) - then reserved names are checked with prefix
+ * </p>
+ */
+final class PropertyNames {
+    /**
+     * Marker, returned by {@link #encode(String)} for reserved names
+     */
+    static final byte[] RESERVED = new byte[0];
+
+
+    // region Reserved names
+    // Open addressing hash table; size - power of 2, at least 2 times greater than count of names
+    private final String[] reservedNames;
+    private final int[] reservedHashes;
+    private final int reservedMask;
+
+    private static int spread(int hash) { return hash ^ (hash >>> 16); }
+
+    /**
+     * @param name property name
+     * @return {@code true} if {@code name} is one of reserved names
+     */
+    boolean isReserved(String name) {
+        int hash = name.hashCode();
+        int index = spread(hash) & this.reservedMask;
+
+        String reservedName;
+        while ((reservedName = this.reservedNames[index]) != null) {
+            if (this.reservedHashes[index] == hash && reservedName.length() == name.length() && reservedName.equals(name)) return true;
+            index = (index + 1) & this.reservedMask;
+        }
+
+        return false;
+    }
+    // endregion
+
+
+    // region Encoded names
+    private final String prefix;
+    private final boolean htmlSafe;
+    private final int cacheSize;
+    private final ConcurrentHashMap<String, byte[]> encodedNames;
+
+    /**
+     * Returns encoded name of property (for example, {@code "requestId":}), see {@link JsonOutputBuffer#encodeName(String, boolean)}
+     *
+     * @param name property name, without prefix
+     * @return encoded name with prefix; {@link #RESERVED} - if name with prefix is reserved
+     */
+    byte[] encode(String name) {
+        if (this.encodedNames == null) return this.encodeNow(name);
+
+        byte[] result = this.encodedNames.get(name);
+        if (result != null) return result;
+
+        result = this.encodeNow(name);
+
+        // When cache is full, new names are not cached - so names with high cardinality do not evict frequent names
+        if (this.encodedNames.size() < this.cacheSize) this.encodedNames.put(name, result);
+
+        return result;
+    }
+
+    private byte[] encodeNow(String name) {
+        String fullName = (this.prefix == null ? name : this.prefix + name);
+        return (this.isReserved(fullName) ? RESERVED : JsonOutputBuffer.encodeName(fullName, this.htmlSafe));
+    }
+    // endregion
+
+
+    /**
+     * @param reservedNames names of &quot;main&quot; properties; {@code null} items are ignored
+     * @param htmlSafe if {@code true}, HTML characters in names will be escaped
+     * @param cacheSize max count of cached encoded names; {@code 0} - cache disabled
+     */
+    PropertyNames(Collection<String> reservedNames, boolean htmlSafe, int cacheSize) { this(reservedNames, htmlSafe, cacheSize, null); }
+
+    /**
+     * @param reservedNames names of &quot;main&quot; properties; {@code null} items are ignored
+     * @param htmlSafe if {@code true}, HTML characters in names will be escaped
+     * @param cacheSize max count of cached encoded names; {@code 0} - cache disabled
+     * @param prefix prefix of all names; {@code null} - no prefix
+     */
+    PropertyNames(Collection<String> reservedNames, boolean htmlSafe, int cacheSize, String prefix) {
+        int tableSize = Integer.highestOneBit(Math.max(reservedNames.size(), 1) * 2 - 1) << 1;
+        this.reservedNames = new String[tableSize];
+        this.reservedHashes = new int[tableSize];
+        this.reservedMask = tableSize - 1;
+
+        for (String reservedName : reservedNames) {
+            if (reservedName == null || this.isReserved(reservedName)) continue;
+
+            int hash = reservedName.hashCode();
+            int index = spread(hash) & this.reservedMask;
+            while (this.reservedNames[index] != null) index = (index + 1) & this.reservedMask;
+
+            this.reservedNames[index] = reservedName;
+            this.reservedHashes[index] = hash;
+        }
+
+        this.prefix = prefix;
+        this.htmlSafe = htmlSafe;
+        this.cacheSize = cacheSize;
+        this.encodedNames = (cacheSize > 0 ? new ConcurrentHashMap<>() : null);
+    }
+}
@@ -0,0 +1,100 @@
+package me.ore.logback.gson.layout;
+
+
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Generator of values of &quot;sequence number&quot; property
+ *
+ * @see LogbackGsonSequenceMode
+ */
+abstract class SequenceGenerator {
+    // region Class constants
+    private static final AtomicLong GLOBAL_SEQUENCE = new AtomicLong(Long.MIN_VALUE);
+    // endregion
+
+
+    // region Implementations
+    private static final class Global extends SequenceGenerator {
+        @Override
+        void write(JsonOutputBuffer buffer) { buffer.hexValue(GLOBAL_SEQUENCE.getAndIncrement()); }
+    }
+
+    private static final class ThreadBlock extends SequenceGenerator {
+        private static final class Block {
+            private long next;
+            private long end;
+        }
+
+        private final int blockSize;
+        private final ThreadLocal<Block> block = ThreadLocal.withInitial(Block::new);
+
+        private ThreadBlock(int blockSize) { this.blockSize = blockSize; }
+
+        @Override
+        void write(JsonOutputBuffer buffer) {
+            Block block = this.block.get();
+            if (block.next == block.end) {
+                block.next = GLOBAL_SEQUENCE.getAndAdd(this.blockSize);
+                block.end = block.next + this.blockSize;
+            }
+
+            buffer.hexValue(block.next++);
+        }
+    }
+
+    private static final class Instance extends SequenceGenerator {
+        private final AtomicLong sequence = new AtomicLong(Long.MIN_VALUE);
+
+        @Override
+        void write(JsonOutputBuffer buffer) { buffer.hexValue(this.sequence.getAndIncrement()); }
+    }
+
+    private static final class ThreadComposite extends SequenceGenerator {
+        private static final class Counter {
+            private final long threadId = Thread.currentThread().getId();
+            private long next = 0;
+        }
+
+        private final ThreadLocal<Counter> counter = ThreadLocal.withInitial(Counter::new);
+
+        @Override
+        void write(JsonOutputBuffer buffer) {
+            Counter counter = this.counter.get();
+
+            buffer.beforeValue();
+            buffer.write('"');
+            buffer.writeHex(counter.threadId);
+            buffer.write('-');
+            buffer.writeHex(counter.next++);
+            buffer.write('"');
+        }
+    }
+    // endregion
+
+
+    /**
+     * Creates generator for specified mode
+     *
+     * @param mode mode of generation
+     * @param blockSize size of block, used in mode {@link LogbackGsonSequenceMode#THREAD_BLOCK}
+     * @return new generator
+     */
+    static SequenceGenerator create(LogbackGsonSequenceMode mode, int blockSize) {
+        switch (mode) {
+            case GLOBAL: return new Global();
+            case THREAD_BLOCK: return new ThreadBlock(blockSize);
+            case INSTANCE: return new Instance();
+            case THREAD_COMPOSITE: return new ThreadComposite();
+            default: throw new IllegalArgumentException("Unknown sequence mode: " + mode);
+        }
+    }
+
+    /**
+     * Generates next value and writes it as JSON value
+     *
+     * @param buffer target buffer
+     */
+    abstract void write(JsonOutputBuffer buffer);
+}
@@ -0,0 +1,465 @@
+package me.ore.logback.gson.layout;
+
+
+import ch.qos.logback.classic.spi.IThrowableProxy;
+import ch.qos.logback.classic.spi.StackTraceElementProxy;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Writes stack trace of error as JSON string or JSON object, see {@link LogbackGsonErrorFormat}
+ *
+ * <p>
+ *     Rendered and escaped parts of stack trace which do not depend on messages of throwables
+ *     (class name and stack frames) are cached; cache key - class name, stack frames and count of common frames of throwable.
+ *     So when errors of the same shape are logged repeatedly, only messages of throwables are escaped
+ * </p>
+ */
+final class ThrowableRenderer {
+    // region Class constants
+    private static final byte[] CAUSED_BY = "Caused by: ".getBytes(StandardCharsets.US_ASCII);
+
+    //noinspection SpellCheckingInspection
+    private static final byte[] CYCLIC_CHAIN = "[Cyclic chain of throwables detected]".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] NULL_MESSAGE = "null".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] STRUCTURED_CLASS = "\"class\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] STRUCTURED_MESSAGE = ",\"message\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] STRUCTURED_FRAMES = ",\"frames\":[".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] STRUCTURED_FRAMES_OMITTED = ",\"framesOmitted\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] STRUCTURED_COMMON_FRAMES_OMITTED = ",\"commonFramesOmitted\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] STRUCTURED_CAUSE = ",\"cause\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] STRUCTURED_CAUSES_OMITTED = ",\"causesOmitted\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] STRUCTURED_CAUSE_CYCLIC = ",\"causeCyclic\":true".getBytes(StandardCharsets.US_ASCII);
+
+    // Chains of throwables shorter than this are checked for cycles without creation of set
+    private static final int MAX_CHAIN_WITHOUT_SET = 32;
+    // endregion
+
+
+    // region Cache
+    private static final class Key {
+        private final String className;
+        private final StackTraceElementProxy[] frames;
+        private final int commonFrames;
+        private final int hash;
+
+        private Key(String className, StackTraceElementProxy[] frames, int commonFrames) {
+            this.className = className;
+            this.frames = frames;
+            this.commonFrames = commonFrames;
+
+            int hash = 31 * String.valueOf(className).hashCode() + commonFrames;
+            if (frames != null) {
+                for (StackTraceElementProxy frame : frames) {
+                    hash = 31 * hash + (frame == null ? 0 : frame.getStackTraceElement().hashCode());
+                }
+            }
+            this.hash = hash;
+        }
+
+        @Override
+        public int hashCode() { return this.hash; }
+
+        @Override
+        public boolean equals(Object object) {
+            if (this == object) return true;
+            if (!(object instanceof Key)) return false;
+
+            Key other = (Key) object;
+            if (this.hash != other.hash) return false;
+            if (this.commonFrames != other.commonFrames) return false;
+            if (!String.valueOf(this.className).equals(String.valueOf(other.className))) return false;
+
+            if (this.frames == other.frames) return true;
+            if (this.frames == null || other.frames == null) return false;
+            if (this.frames.length != other.frames.length) return false;
+
+            for (int i = 0; i < this.frames.length; i++) {
+                StackTraceElementProxy frame = this.frames[i];
+                StackTraceElementProxy otherFrame = other.frames[i];
+                if (frame == otherFrame) continue;
+                if (frame == null || otherFrame == null) return false;
+                if (!frame.getStackTraceElement().equals(otherFrame.getStackTraceElement())) return false;
+            }
+
+            return true;
+        }
+    }
+
+    private static final class Rendered {
+        // Text format: escaped "<class name>: "
+        // Structured format: "class":"<class name>","message":
+        private final byte[] header;
+
+        // Text format: escaped stack frames and "common frames" line
+        // Structured format: ,"frames":[...] and counters of omitted frames
+        private final byte[] frames;
+
+        private Rendered(byte[] header, byte[] frames) {
+            this.header = header;
+            this.frames = frames;
+        }
+    }
+
+    private final int cacheSize;
+    private final ConcurrentHashMap<Key, Rendered> cache;
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    // endregion
+
+
+    private final boolean htmlSafe;
+    private final boolean structured;
+    private final int maxFramesPerThrowable;
+    private final int maxCauseDepth;
+    private final String[] excludedFramePackages;
+    private final byte[] escapedStackTraceLineSeparator;
+
+    /**
+     * @param layout layout, which settings are used
+     * @param htmlSafe if {@code true}, HTML characters will be escaped
+     */
+    ThrowableRenderer(LogbackGsonLayout layout, boolean htmlSafe) {
+        this.htmlSafe = htmlSafe;
+        this.structured = (layout.getErrorFormat() == LogbackGsonErrorFormat.STRUCTURED);
+        this.maxFramesPerThrowable = Math.max(0, layout.getMaxFramesPerThrowable());
+        this.maxCauseDepth = Math.max(0, layout.getMaxCauseDepth());
+        this.excludedFramePackages = LogbackGsonLayout.splitList(layout.getExcludedFramePackages());
+
+        this.cacheSize = Math.max(0, layout.getThrowableCacheSize());
+        this.cache = (this.cacheSize > 0 ? new ConcurrentHashMap<>() : null);
+
+        JsonOutputBuffer separatorBuffer = new JsonOutputBuffer(16);
+        separatorBuffer.setHtmlSafe(htmlSafe);
+        separatorBuffer.writeEscaped(layout.getStackTraceLineSeparator());
+        this.escapedStackTraceLineSeparator = separatorBuffer.toByteArray();
+    }
+
+
+    // region Counters
+    /**
+     * @return count of throwables whose rendered stack frames have been found in cache
+     */
+    long getHitCount() { return this.hitCount.sum(); }
+
+    /**
+     * @return count of throwables whose stack frames have been rendered because they were not found in cache
+     */
+    long getMissCount() { return this.missCount.sum(); }
+    // endregion
+
+
+    // region Rendering
+    private Rendered render(IThrowableProxy throwable) {
+        JsonOutputBuffer buffer = new JsonOutputBuffer(256);
+        buffer.setHtmlSafe(this.htmlSafe);
+
+        if (this.structured) {
+            buffer.write(STRUCTURED_CLASS);
+            buffer.writeJsonString(String.valueOf(throwable.getClassName()));
+            buffer.write(STRUCTURED_MESSAGE);
+        } else {
+            buffer.writeEscaped(String.valueOf(throwable.getClassName()));
+            buffer.write(':');
+            buffer.write(' ');
+        }
+        byte[] header = buffer.toByteArray();
+
+        buffer.reset();
+        if (this.structured) {
+            this.renderStructuredFrames(throwable, buffer);
+        } else {
+            this.renderTextFrames(throwable, buffer);
+        }
+
+        return new Rendered(header, buffer.toByteArray());
+    }
+
+    private void renderTextFrames(IThrowableProxy throwable, JsonOutputBuffer buffer) {
+        StackTraceElementProxy[] frames = throwable.getStackTraceElementProxyArray();
+        if (frames != null) {
+            for (StackTraceElementProxy frame : frames) {
+                if (frame != null) {
+                    buffer.write(this.escapedStackTraceLineSeparator);
+                    buffer.write('\\');
+                    buffer.write('t');
+                    buffer.writeEscaped(frame.getSTEAsString());
+                }
+            }
+        }
+
+        int commonFrames = throwable.getCommonFrames();
+        if (commonFrames > 0) {
+            buffer.write(this.escapedStackTraceLineSeparator);
+            buffer.writeEscaped("\t<" + commonFrames + " common frame(s) omitted>");
+        }
+    }
+
+    private void renderStructuredFrames(IThrowableProxy throwable, JsonOutputBuffer buffer) {
+        buffer.write(STRUCTURED_FRAMES);
+
+        int writtenFrames = 0;
+        int omittedFrames = 0;
+        StackTraceElementProxy[] frames = throwable.getStackTraceElementProxyArray();
+        if (frames != null) {
+            for (StackTraceElementProxy frame : frames) {
+                if (frame == null) continue;
+
+                StackTraceElement stackTraceElement = frame.getStackTraceElement();
+                if (this.isExcluded(stackTraceElement) || (this.maxFramesPerThrowable > 0 && writtenFrames >= this.maxFramesPerThrowable)) {
+                    omittedFrames++;
+                    continue;
+                }
+
+                if (writtenFrames > 0) buffer.write(',');
+                buffer.writeJsonString(stackTraceElement.toString());
+                writtenFrames++;
+            }
+        }
+
+        buffer.write(']');
+
+        if (omittedFrames > 0) {
+            buffer.write(STRUCTURED_FRAMES_OMITTED);
+            buffer.writeLong(omittedFrames);
+        }
+
+        int commonFrames = throwable.getCommonFrames();
+        if (commonFrames > 0) {
+            buffer.write(STRUCTURED_COMMON_FRAMES_OMITTED);
+            buffer.writeLong(commonFrames);
+        }
+    }
+
+    private boolean isExcluded(StackTraceElement stackTraceElement) {
+        if (this.excludedFramePackages.length == 0) return false;
+
+        String className = stackTraceElement.getClassName();
+        for (String excludedFramePackage : this.excludedFramePackages) {
+            if (className.startsWith(excludedFramePackage)) return true;
+        }
+        return false;
+    }
+
+    private Rendered rendered(IThrowableProxy throwable) {
+        if (this.cache == null) return this.render(throwable);
+
+        Key key = new Key(throwable.getClassName(), throwable.getStackTraceElementProxyArray(), throwable.getCommonFrames());
+        Rendered result = this.cache.get(key);
+        if (result != null) {
+            this.hitCount.increment();
+            return result;
+        }
+
+        this.missCount.increment();
+        result = this.render(throwable);
+
+        if (this.cache.size() >= this.cacheSize) this.evict();
+        this.cache.put(key, result);
+
+        return result;
+    }
+
+    private void evict() {
+        // Cache is not LRU - arbitrary quarter of entries is removed
+        int targetSize = this.cacheSize - Math.max(1, this.cacheSize / 4);
+        Iterator<Key> iterator = this.cache.keySet().iterator();
+        while (iterator.hasNext() && this.cache.size() > targetSize) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    // Checks whether "throwable" is one of first "index" throwables of chain
+    private static boolean isPassed(IThrowableProxy source, IThrowableProxy throwable, int index, Set<IThrowableProxy> passedThrowables) {
+        if (passedThrowables != null) return passedThrowables.contains(throwable);
+
+        IThrowableProxy passed = source;
+        for (int i = 0; i < index; i++) {
+            if (passed == throwable) return true;
+            passed = passed.getCause();
+        }
+        return false;
+    }
+
+    // Marks "throwable" (throwable of chain with specified index) as passed; returns set of passed throwables, if it is used
+    private static Set<IThrowableProxy> markPassed(IThrowableProxy source, IThrowableProxy throwable, int index, Set<IThrowableProxy> passedThrowables) {
+        if (passedThrowables != null) {
+            passedThrowables.add(throwable);
+            return passedThrowables;
+        }
+
+        if (index < MAX_CHAIN_WITHOUT_SET) return null;
+
+        Set<IThrowableProxy> result = new HashSet<>();
+        IThrowableProxy passed = source;
+        for (int i = 0; i <= index; i++) {
+            result.add(passed);
+            passed = passed.getCause();
+        }
+        return result;
+    }
+
+    /**
+     * Writes stack trace of {@code source} as JSON value
+     *
+     * <p>
+     *     If value does not fit in {@code maxBytes}: in text format - stack trace is cut; in structured format -
+     *     only class and message of {@code source} are written; messages of throwables are never encoded in full
+     * </p>
+     *
+     * @param source error
+     * @param buffer target buffer
+     * @param maxBytes max count of bytes of written value
+     * @return {@code true} if value has been truncated
+     */
+    boolean write(IThrowableProxy source, JsonOutputBuffer buffer, int maxBytes) {
+        buffer.beforeValue();
+
+        int maxSize = (int) Math.min(Integer.MAX_VALUE, (long) buffer.size() + Math.max(maxBytes, 2));
+        if (this.structured) {
+            return this.writeStructured(source, buffer, maxSize);
+        } else {
+            return this.writeText(source, buffer, maxSize);
+        }
+    }
+
+    // Returns "true" if message has been truncated
+    private boolean writeMessage(IThrowableProxy throwable, JsonOutputBuffer buffer, int maxBytes) {
+        String message = throwable.getMessage();
+        if (message == null) {
+            buffer.write(NULL_MESSAGE);
+            return false;
+        } else if (this.structured) {
+            return buffer.writeJsonString(message, maxBytes);
+        } else {
+            return buffer.writeEscaped(message, maxBytes);
+        }
+    }
+
+    private boolean writeText(IThrowableProxy source, JsonOutputBuffer buffer, int maxSize) {
+        buffer.write('"');
+        int contentStart = buffer.size();
+        // Space for closing quote
+        int maxContentSize = maxSize - 1;
+        boolean truncated = false;
+
+        //noinspection SpellCheckingInspection
+        Set<IThrowableProxy> passedThrowables = null;
+        IThrowableProxy currentThrowable = source;
+        int index = 0;
+
+        while (currentThrowable != null) {
+            if (index > 0) {
+                buffer.write(this.escapedStackTraceLineSeparator);
+                buffer.write(CAUSED_BY);
+            }
+
+            if (isPassed(source, currentThrowable, index, passedThrowables)) {
+                buffer.write(CYCLIC_CHAIN);
+                break;
+            }
+            passedThrowables = markPassed(source, currentThrowable, index, passedThrowables);
+
+            Rendered rendered = this.rendered(currentThrowable);
+            buffer.write(rendered.header);
+            truncated = this.writeMessage(currentThrowable, buffer, maxContentSize - buffer.size());
+            if (truncated) break;
+            buffer.write(rendered.frames);
+
+            if (buffer.size() > maxContentSize) {
+                truncated = true;
+                break;
+            }
+
+            currentThrowable = currentThrowable.getCause();
+            index++;
+        }
+
+        if (buffer.size() > maxContentSize) {
+            buffer.truncateEscaped(contentStart, maxContentSize - contentStart);
+            truncated = true;
+        }
+
+        buffer.write('"');
+        return truncated;
+    }
+
+    private boolean writeStructured(IThrowableProxy source, JsonOutputBuffer buffer, int maxSize) {
+        int start = buffer.size();
+
+        //noinspection SpellCheckingInspection
+        Set<IThrowableProxy> passedThrowables = null;
+        IThrowableProxy currentThrowable = source;
+        int depth = 0;
+
+        while (true) {
+            passedThrowables = markPassed(source, currentThrowable, depth, passedThrowables);
+            depth++;
+
+            Rendered rendered = this.rendered(currentThrowable);
+            buffer.write('{');
+            buffer.write(rendered.header);
+            // Space for closing braces and quotes of message
+            boolean truncated = this.writeMessage(currentThrowable, buffer, maxSize - buffer.size() - depth - 2);
+            buffer.write(rendered.frames);
+
+            if (truncated || buffer.size() + depth > maxSize) {
+                buffer.truncate(start);
+                this.writeSummary(source, buffer, maxSize);
+                return true;
+            }
+
+            IThrowableProxy cause = currentThrowable.getCause();
+            if (cause == null) break;
+
+            if (isPassed(source, cause, depth, passedThrowables)) {
+                buffer.write(STRUCTURED_CAUSE_CYCLIC);
+                break;
+            }
+
+            if (this.maxCauseDepth > 0 && depth >= this.maxCauseDepth) {
+                buffer.write(STRUCTURED_CAUSES_OMITTED);
+                buffer.writeLong(countCauses(source, cause, depth, passedThrowables));
+                break;
+            }
+
+            buffer.write(STRUCTURED_CAUSE);
+            currentThrowable = cause;
+        }
+
+        for (int i = 0; i < depth; i++) buffer.write('}');
+        return false;
+    }
+
+    // Writes only class and message (truncated if needed) of "source", in structured format
+    private void writeSummary(IThrowableProxy source, JsonOutputBuffer buffer, int maxSize) {
+        buffer.write('{');
+        buffer.write(this.rendered(source).header);
+        this.writeMessage(source, buffer, maxSize - buffer.size() - 3);
+        buffer.write('}');
+        buffer.setTruncated(true);
+    }
+
+    // Counts throwables in chain, starting from "throwable" (which has specified index in chain), until end of chain or cycle
+    private static int countCauses(IThrowableProxy source, IThrowableProxy throwable, int index, Set<IThrowableProxy> passedThrowables) {
+        int result = 0;
+        IThrowableProxy currentThrowable = throwable;
+        while (currentThrowable != null && !isPassed(source, currentThrowable, index, passedThrowables)) {
+            passedThrowables = markPassed(source, currentThrowable, index, passedThrowables);
+            result++;
+            index++;
+            currentThrowable = currentThrowable.getCause();
+        }
+        return result;
+    }
+    // endregion
+}
@@ -0,0 +1,219 @@
+package me.ore.logback.gson.layout;
+
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+
+
+/**
+ * Writer of formatted timestamps, which formats every second only once
+ *
+ * <p>
+ *     When layout starts, pattern is probed - if fraction of second is written as one run of digits, formatted second
+ *     is split to encoded prefix and suffix, and for every event only digits of fraction are written between them;
+ *     otherwise whole encoded value of last timestamp is reused by events with same timestamp.
+ *     Position of fraction is found for every formatted second - fields before it (day, month, names, zone) can change width
+ *     from second to second
+ * </p>
+ */
+final class TimestampFormatter {
+    private static final int NANOS_PER_SECOND = 1_000_000_000;
+    private static final int NANOS_PER_MILLI = 1_000_000;
+
+
+    private final DateTimeFormatter formatter;
+    private final boolean htmlSafe;
+
+    // Count of fraction digits; -1 - fraction cannot be patched
+    private final int fractionDigits;
+    private final boolean useInstant;
+
+    private static final class Second {
+        private final long epochSecond;
+        // null - fraction of this second cannot be patched, whole timestamps are formatted
+        private final byte[] prefix;
+        private final byte[] suffix;
+
+        private Second(long epochSecond, byte[] prefix, byte[] suffix) {
+            this.epochSecond = epochSecond;
+            this.prefix = prefix;
+            this.suffix = suffix;
+        }
+    }
+
+    private static final class Timestamp {
+        private final long epochSecond;
+        private final int nanos;
+        private final byte[] encoded;
+
+        private Timestamp(long epochSecond, int nanos, byte[] encoded) {
+            this.epochSecond = epochSecond;
+            this.nanos = nanos;
+            this.encoded = encoded;
+        }
+    }
+
+    private volatile Second lastSecond = null;
+    private volatile Timestamp lastTimestamp = null;
+
+
+    /**
+     * @param formatter formatter with zone
+     * @param htmlSafe if {@code true}, HTML characters will be escaped
+     * @throws RuntimeException if formatter cannot format instants
+     */
+    TimestampFormatter(DateTimeFormatter formatter, boolean htmlSafe) {
+        this.formatter = formatter;
+        this.htmlSafe = htmlSafe;
+
+        // Probe finds count of digits of fraction; its position is found later for every second
+        long probeSecond = 1_000_000_000L;
+        String ones;
+        String twos;
+        String small;
+        try {
+            ones = formatter.format(Instant.ofEpochSecond(probeSecond, 111_111_111));
+            twos = formatter.format(Instant.ofEpochSecond(probeSecond, 222_222_222));
+            small = formatter.format(Instant.ofEpochSecond(probeSecond, 1));
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Cannot format timestamp with pattern \"" + formatter + "\"", e);
+        }
+
+        int start = fractionStart(ones, twos);
+        int end = fractionEnd(ones, twos, start);
+
+        int digits = end - start;
+        if (start < 0 || digits > 9 || !isPatchable(ones, twos, small, start, end)) {
+            digits = -1;
+        }
+
+        this.fractionDigits = digits;
+        this.useInstant = (digits > 3 || digits < 0);
+    }
+
+    // Start of part of "ones", which differs from "twos"; -1 - lengths differ
+    private static int fractionStart(String ones, String twos) {
+        if (ones.length() != twos.length()) return -1;
+
+        int result = 0;
+        while (result < ones.length() && ones.charAt(result) == twos.charAt(result)) result++;
+        return result;
+    }
+
+    // End of part of "ones", which differs from "twos"
+    private static int fractionEnd(String ones, String twos, int start) {
+        if (start < 0) return -1;
+
+        int result = ones.length();
+        while (result > start && ones.charAt(result - 1) == twos.charAt(result - 1)) result--;
+        return result;
+    }
+
+    // Fraction must be one run of first digits of nanos, padded with zeros - like pattern "SSS"
+    private static boolean isPatchable(String ones, String twos, String small, int start, int end) {
+        if (ones.length() != small.length()) return false;
+
+        for (int i = start; i < end; i++) {
+            if (ones.charAt(i) != '1' || twos.charAt(i) != '2') return false;
+        }
+
+        int digits = end - start;
+        for (int i = 0; i < small.length(); i++) {
+            char expected;
+            if (i < start || i >= end) {
+                expected = ones.charAt(i);
+            } else {
+                expected = (digits == 9 && i == end - 1 ? '1' : '0');
+            }
+
+            if (small.charAt(i) != expected) return false;
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Writes formatted timestamp of event as JSON string
+     *
+     * @param event log event
+     * @param buffer target buffer; name of property must be already written
+     */
+    void write(ILoggingEvent event, JsonOutputBuffer buffer) {
+        long epochSecond;
+        int nanos;
+        if (this.useInstant) {
+            Instant instant = event.getInstant();
+            epochSecond = instant.getEpochSecond();
+            nanos = instant.getNano();
+        } else {
+            long timestamp = event.getTimeStamp();
+            epochSecond = Math.floorDiv(timestamp, 1000L);
+            nanos = (int) Math.floorMod(timestamp, 1000L) * NANOS_PER_MILLI;
+        }
+
+        if (this.fractionDigits < 0) {
+            this.writeWhole(epochSecond, nanos, buffer);
+            return;
+        }
+
+        Second second = this.lastSecond;
+        if (second == null || second.epochSecond != epochSecond) {
+            second = this.formatSecond(epochSecond);
+            this.lastSecond = second;
+        }
+
+        if (second.prefix == null) {
+            this.writeWhole(epochSecond, nanos, buffer);
+            return;
+        }
+
+        buffer.beforeValue();
+        buffer.write(second.prefix);
+
+        int divisor = NANOS_PER_SECOND;
+        for (int i = 0; i < this.fractionDigits; i++) {
+            divisor /= 10;
+            buffer.write('0' + (nanos / divisor) % 10);
+        }
+
+        buffer.write(second.suffix);
+    }
+
+    private Second formatSecond(long epochSecond) {
+        String ones = this.formatter.format(Instant.ofEpochSecond(epochSecond, 111_111_111));
+        String twos = this.formatter.format(Instant.ofEpochSecond(epochSecond, 222_222_222));
+        int start = fractionStart(ones, twos);
+        int end = fractionEnd(ones, twos, start);
+        if (start < 0 || end - start != this.fractionDigits) return new Second(epochSecond, null, null);
+        for (int i = start; i < end; i++) {
+            if (ones.charAt(i) != '1' || twos.charAt(i) != '2') return new Second(epochSecond, null, null);
+        }
+
+        String prefix = ones.substring(0, start);
+        String suffix = ones.substring(end);
+
+        byte[] encodedPrefix = JsonOutputBuffer.encodeString(prefix, this.htmlSafe);
+        byte[] encodedSuffix = JsonOutputBuffer.encodeString(suffix, this.htmlSafe);
+        // Closing quote of prefix and opening quote of suffix are cut off
+        return new Second(
+                epochSecond,
+                Arrays.copyOf(encodedPrefix, encodedPrefix.length - 1),
+                Arrays.copyOfRange(encodedSuffix, 1, encodedSuffix.length)
+        );
+    }
+
+    private void writeWhole(long epochSecond, int nanos, JsonOutputBuffer buffer) {
+        Timestamp timestamp = this.lastTimestamp;
+        if (timestamp == null || timestamp.epochSecond != epochSecond || timestamp.nanos != nanos) {
+            String formatted = this.formatter.format(Instant.ofEpochSecond(epochSecond, nanos));
+            timestamp = new Timestamp(epochSecond, nanos, JsonOutputBuffer.encodeString(formatted, this.htmlSafe));
+            this.lastTimestamp = timestamp;
+        }
+
+        buffer.rawValue(timestamp.encoded);
+    }
+}
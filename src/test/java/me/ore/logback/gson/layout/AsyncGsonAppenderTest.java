@@ -0,0 +1,82 @@
+package me.ore.logback.gson.layout;
+
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.AppenderBase;
+import ch.qos.logback.core.status.Status;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+
+class AsyncGsonAppenderTest {
+    // Attached appender, which fails with error on some log events
+    private static final class FailingAppender extends AppenderBase<ILoggingEvent> {
+        private final List<String> messages = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        protected void append(ILoggingEvent event) {
+            if (event.getMessage().startsWith("fail")) throw new StackOverflowError(event.getMessage());
+            this.messages.add(event.getMessage());
+        }
+    }
+
+
+    private static LoggingEvent event(String message) {
+        LoggingEvent event = new LoggingEvent();
+        event.setLevel(Level.INFO);
+        event.setMessage(message);
+        return event;
+    }
+
+
+    @Test
+    void errorOfAttachedAppenderDoesNotStopWorker() throws InterruptedException {
+        LoggerContext context = new LoggerContext();
+        FailingAppender failing = new FailingAppender();
+        failing.setContext(context);
+        failing.start();
+
+        AsyncGsonAppender appender = new AsyncGsonAppender();
+        appender.setContext(context);
+        appender.setName("async");
+        // Small queue - producer waits for worker often
+        appender.setQueueSize(2);
+        appender.setBatchSize(1);
+        appender.setOverflowPolicy(LogbackGsonOverflowPolicy.BLOCK);
+        appender.setMaxFlushTime(0);
+        appender.addAppender(failing);
+        appender.start();
+
+        List<String> expected = new ArrayList<>();
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < 1000; i++) {
+                String message = (i % 10 == 0 ? "fail " : "event ") + i;
+                if (i % 10 != 0) expected.add(message);
+                appender.doAppend(event(message));
+            }
+        });
+        producer.start();
+        producer.join(TimeUnit.MINUTES.toMillis(1));
+        assertFalse(producer.isAlive(), "Producer is blocked");
+
+        appender.stop();
+        assertEquals(expected, failing.messages);
+        assertEquals(1000, appender.getProcessedCount());
+        assertEquals(0, appender.getDroppedCount());
+
+        long errors = context.getStatusManager().getCopyOfStatusList().stream()
+                .filter(status -> status.getLevel() == Status.ERROR && status.getThrowable() instanceof StackOverflowError)
+                .count();
+        assertEquals(100, errors);
+    }
+}
@@ -0,0 +1,147 @@
+package me.ore.logback.gson.layout;
+
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+class EventRingBufferTest {
+    private static final int PRODUCERS = 4;
+    private static final int CONSUMERS = 3;
+    private static final int EVENTS_PER_PRODUCER = 100_000;
+
+
+    private static LoggingEvent event(int producer, int index) {
+        LoggingEvent event = new LoggingEvent();
+        event.setMessage(producer + ":" + index);
+        return event;
+    }
+
+
+    @Test
+    void capacityAndFullQueue() {
+        EventRingBuffer queue = new EventRingBuffer(5);
+        assertEquals(8, queue.capacity());
+        assertTrue(queue.isEmpty());
+
+        for (int i = 0; i < 8; i++) assertTrue(queue.offer(event(0, i), null, i));
+        assertFalse(queue.offer(event(0, 8), null, 8));
+        assertEquals(8, queue.size());
+
+        ILoggingEvent[] events = new ILoggingEvent[3];
+        ExtraParamsSnapshot[] extraParams = new ExtraParamsSnapshot[3];
+        long[] enqueueNanos = new long[3];
+        assertEquals(3, queue.drain(events, extraParams, enqueueNanos, 3));
+        assertEquals("0:0", events[0].getMessage());
+        assertEquals("0:2", events[2].getMessage());
+        assertEquals(2, enqueueNanos[2]);
+
+        // Released slots are reused
+        assertTrue(queue.offer(event(0, 8), null, 8));
+        assertEquals(6, queue.size());
+    }
+
+    @Test
+    void concurrentProducersAndConsumers() throws InterruptedException {
+        // Small queue - producers often find it full, consumers often find it empty
+        EventRingBuffer queue = new EventRingBuffer(64);
+        AtomicReferenceArray<ILoggingEvent> received = new AtomicReferenceArray<>(PRODUCERS * EVENTS_PER_PRODUCER);
+        AtomicInteger receivedCount = new AtomicInteger();
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+
+        for (int producer = 0; producer < PRODUCERS; producer++) {
+            int currentProducer = producer;
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < EVENTS_PER_PRODUCER; i++) {
+                        ILoggingEvent event = event(currentProducer, i);
+                        ExtraParamsSnapshot extraParams = (i % 3 == 0 ? ExtraParamsSnapshot.of(Collections.singletonMap("event", event.getMessage())) : null);
+                        while (!queue.offer(event, extraParams, i)) Thread.yield();
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                    // Stops consumers
+                    receivedCount.set(Integer.MAX_VALUE);
+                }
+            }));
+        }
+
+        for (int consumer = 0; consumer < CONSUMERS; consumer++) {
+            threads.add(new Thread(() -> {
+                ILoggingEvent[] events = new ILoggingEvent[16];
+                ExtraParamsSnapshot[] extraParams = new ExtraParamsSnapshot[events.length];
+                long[] enqueueNanos = new long[events.length];
+                // Every consumer takes log events of one producer in order of adding
+                int[] lastIndexes = new int[PRODUCERS];
+                Arrays.fill(lastIndexes, -1);
+
+                try {
+                    start.await();
+                    while (receivedCount.get() < PRODUCERS * EVENTS_PER_PRODUCER) {
+                        int count = queue.drain(events, extraParams, enqueueNanos, events.length);
+                        if (count == 0) {
+                            Thread.yield();
+                            continue;
+                        }
+
+                        for (int i = 0; i < count; i++) {
+                            String message = events[i].getMessage();
+                            int separator = message.indexOf(':');
+                            int producer = Integer.parseInt(message.substring(0, separator));
+                            int index = Integer.parseInt(message.substring(separator + 1));
+
+                            assertTrue(index > lastIndexes[producer], message);
+                            lastIndexes[producer] = index;
+                            assertEquals(index, enqueueNanos[i]);
+                            if (index % 3 == 0) {
+                                assertEquals(message, extraParams[i].get("event"));
+                            } else {
+                                assertNull(extraParams[i], message);
+                            }
+                            assertNull(received.getAndSet(producer * EVENTS_PER_PRODUCER + index, events[i]), message);
+
+                            events[i] = null;
+                            extraParams[i] = null;
+                        }
+                        receivedCount.addAndGet(count);
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                    receivedCount.set(Integer.MAX_VALUE);
+                }
+            }));
+        }
+
+        for (Thread thread : threads) thread.start();
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.MINUTES.toMillis(1));
+            assertFalse(thread.isAlive(), "Thread is not finished");
+        }
+
+        assertEquals(Collections.emptyList(), errors);
+        assertEquals(PRODUCERS * EVENTS_PER_PRODUCER, receivedCount.get());
+        for (int i = 0; i < received.length(); i++) {
+            assertEquals((i / EVENTS_PER_PRODUCER) + ":" + (i % EVENTS_PER_PRODUCER), received.get(i).getMessage());
+        }
+        assertTrue(queue.isEmpty());
+    }
+}
@@ -0,0 +1,147 @@
+package me.ore.logback.gson.layout;
+
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+class ExtraParamsMapTest {
+    @Test
+    void nestedScopes() {
+        LogbackGsonLayout.useExtraParamsMap(outer -> {
+            outer.put("a", 1);
+            outer.put("b", 2);
+            outer.put("c", 3);
+
+            LogbackGsonLayout.useExtraParamsMap(inner -> {
+                assertSame(outer, inner);
+                assertEquals(1, inner.get("a"));
+
+                // Hide, remove and add over outer scope
+                assertEquals(2, inner.put("b", 20));
+                assertEquals(3, inner.remove("c"));
+                inner.put("d", 4);
+                assertEquals("{a=1, b=20, d=4}", inner.toString());
+                assertEquals(3, inner.size());
+                assertFalse(inner.containsKey("c"));
+
+                // Removal of hiding entry keeps outer entry hidden
+                assertEquals(20, inner.remove("b"));
+                assertNull(inner.get("b"));
+                assertNull(inner.put("c", 30));
+                assertEquals("{a=1, c=30, d=4}", inner.toString());
+
+                LogbackGsonLayout.useExtraParamsMap(deepest -> {
+                    deepest.clear();
+                    assertTrue(deepest.isEmpty());
+                    deepest.put("a", 9);
+                    assertEquals("{a=9}", deepest.toString());
+                });
+
+                assertEquals("{a=1, c=30, d=4}", inner.toString());
+            });
+
+            assertEquals("{a=1, b=2, c=3}", outer.toString());
+            assertEquals(3, outer.size());
+        });
+    }
+
+    @Test
+    void holderIsClearedAfterOutermostScope() {
+        LogbackGsonLayout.removeExtraParams();
+        LogbackGsonLayout.useExtraParamsMap(map -> {
+            assertSame(map, LogbackGsonLayout.EXTRA_PARAMS_HOLDER.get());
+            LogbackGsonLayout.useExtraParamsMap(inner -> {
+                assertSame(map, LogbackGsonLayout.EXTRA_PARAMS_HOLDER.get());
+            });
+            assertSame(map, LogbackGsonLayout.EXTRA_PARAMS_HOLDER.get());
+        });
+        assertNull(LogbackGsonLayout.EXTRA_PARAMS_HOLDER.get());
+
+        Map<String, Object> own = new LinkedHashMap<>();
+        LogbackGsonLayout.setExtraParams(own);
+        try {
+            LogbackGsonLayout.useExtraParamsMap(map -> {
+                map.put("x", 1);
+            });
+            assertSame(own, LogbackGsonLayout.EXTRA_PARAMS_HOLDER.get());
+        } finally {
+            LogbackGsonLayout.removeExtraParams();
+        }
+    }
+
+    @Test
+    void iteratorRemove() {
+        LogbackGsonLayout.useExtraParamsMap(outer -> {
+            outer.put("a", 1);
+            outer.put("b", 2);
+
+            LogbackGsonLayout.useExtraParamsMap(inner -> {
+                inner.put("a", 10);
+                inner.put("c", 3);
+
+                Iterator<Map.Entry<String, Object>> iterator = inner.entrySet().iterator();
+                while (iterator.hasNext()) {
+                    if (!iterator.next().getKey().equals("b")) iterator.remove();
+                }
+                assertEquals("{b=2}", inner.toString());
+            });
+
+            assertEquals("{a=1, b=2}", outer.toString());
+        });
+    }
+
+    @Test
+    void matchesStackOfMaps() {
+        Random random = new Random(7);
+        ExtraParamsMap map = ExtraParamsMap.forCurrentThread();
+        Deque<Map<String, Object>> expected = new ArrayDeque<>();
+
+        for (int round = 0; round < 200; round++) {
+            map.enterScope();
+            expected.push(new LinkedHashMap<>());
+
+            for (int step = 0; step < 3000; step++) {
+                int action = random.nextInt(10);
+                String key = "k" + random.nextInt(12);
+
+                if (action < 4) {
+                    Integer value = random.nextInt(100);
+                    assertEquals(expected.peek().put(key, value), map.put(key, value));
+                } else if (action < 6) {
+                    assertEquals(expected.peek().remove(key), map.remove(key));
+                } else if (action < 7 && expected.size() < 6) {
+                    map.enterScope();
+                    expected.push(new LinkedHashMap<>(expected.peek()));
+                } else if (action < 8 && expected.size() > 1) {
+                    map.exitScope();
+                    expected.pop();
+                }
+
+                Map<String, Object> current = expected.peek();
+                assertEquals(current.size(), map.size());
+                assertEquals(current, map);
+                assertEquals(current, ExtraParamsSnapshot.of(map));
+                assertEquals(current.containsKey(key), map.containsKey(key));
+            }
+
+            while (!expected.isEmpty()) {
+                map.exitScope();
+                expected.pop();
+            }
+            assertTrue(map.isEmpty());
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package me.ore.logback.gson.layout;
+
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+class GzipFrameOutputStreamTest {
+    // Size of GZIP header, written by stream
+    private static final int HEADER_SIZE = 10;
+    private static final int TRAILER_SIZE = 8;
+
+    @TempDir
+    Path directory;
+
+
+    // Splits data to GZIP members by end of deflate stream of every member
+    private static List<byte[]> members(byte[] data) throws DataFormatException {
+        List<byte[]> result = new ArrayList<>();
+        byte[] output = new byte[1024];
+        int offset = 0;
+        while (offset < data.length) {
+            Inflater inflater = new Inflater(true);
+            inflater.setInput(data, offset + HEADER_SIZE, data.length - offset - HEADER_SIZE);
+            while (!inflater.finished()) inflater.inflate(output);
+            int end = data.length - inflater.getRemaining() + TRAILER_SIZE;
+            inflater.end();
+
+            result.add(Arrays.copyOfRange(data, offset, end));
+            offset = end;
+        }
+        return result;
+    }
+
+    private static byte[] decompress(byte[] data) throws IOException {
+        try (InputStream input = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int count;
+            while ((count = input.read(buffer)) >= 0) result.write(buffer, 0, count);
+            return result.toByteArray();
+        }
+    }
+
+    // Decompresses every member separately
+    private static List<String> decompressMembers(byte[] data) throws IOException, DataFormatException {
+        List<String> result = new ArrayList<>();
+        for (byte[] member : members(data)) result.add(new String(decompress(member), StandardCharsets.UTF_8));
+        return result;
+    }
+
+    private static byte[] bytes(String text) { return text.getBytes(StandardCharsets.UTF_8); }
+
+    private static String repeat(char c, int count) {
+        char[] result = new char[count];
+        Arrays.fill(result, c);
+        return new String(result);
+    }
+
+
+    @Test
+    void membersAreWrittenByFrameSize() throws IOException, DataFormatException {
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        GzipFrameOutputStream stream = new GzipFrameOutputStream(target, Deflater.DEFAULT_COMPRESSION, 100, 0);
+
+        stream.write(bytes(repeat('a', 30)));
+        stream.write('b');
+        stream.write(bytes(repeat('c', 69) + repeat('d', 150)));
+        // Full frames are written at once
+        assertEquals(Arrays.asList(repeat('a', 30) + "b" + repeat('c', 69), repeat('d', 100)), decompressMembers(target.toByteArray()));
+
+        stream.write(bytes("tail"));
+        stream.close();
+
+        String expected = repeat('a', 30) + "b" + repeat('c', 69) + repeat('d', 150) + "tail";
+        List<String> members = decompressMembers(target.toByteArray());
+        assertEquals(Arrays.asList(expected.substring(0, 100), expected.substring(100, 200), expected.substring(200)), members);
+        // All members together are one valid GZIP file
+        assertArrayEquals(bytes(expected), decompress(target.toByteArray()));
+
+        assertEquals(expected.length(), stream.getUncompressedByteCount());
+        assertEquals(target.size(), stream.getCompressedByteCount());
+    }
+
+    @Test
+    void flushWritesOnlyDueFrame() throws IOException, DataFormatException, InterruptedException {
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        GzipFrameOutputStream withoutInterval = new GzipFrameOutputStream(target, Deflater.DEFAULT_COMPRESSION, 100, 0);
+        withoutInterval.write(bytes("first"));
+        withoutInterval.flush();
+        // Without frame interval, frame is written only when it is full
+        assertEquals(0, target.size());
+        withoutInterval.finishFrame();
+        assertEquals(Arrays.asList("first"), decompressMembers(target.toByteArray()));
+
+        target.reset();
+        GzipFrameOutputStream withInterval = new GzipFrameOutputStream(target, Deflater.DEFAULT_COMPRESSION, 100, 200);
+        withInterval.write(bytes("second"));
+        withInterval.flush();
+        // Frame is younger than interval
+        assertEquals(0, target.size());
+
+        TimeUnit.MILLISECONDS.sleep(300);
+        withInterval.flush();
+        assertEquals(Arrays.asList("second"), decompressMembers(target.toByteArray()));
+        // Empty frame is not written
+        TimeUnit.MILLISECONDS.sleep(300);
+        withInterval.flush();
+        assertEquals(Arrays.asList("second"), decompressMembers(target.toByteArray()));
+
+        // Frame which became due is written by next write too
+        withInterval.write(bytes("third"));
+        TimeUnit.MILLISECONDS.sleep(300);
+        withInterval.write(bytes(" and more"));
+        withInterval.write(bytes("fourth"));
+        withInterval.close();
+        assertEquals(Arrays.asList("second", "third and more", "fourth"), decompressMembers(target.toByteArray()));
+    }
+
+    @Test
+    void appenderWritesIndependentMembers() throws IOException, DataFormatException, InterruptedException {
+        Path file = this.directory.resolve("app.json.gz");
+        LoggerContext context = new LoggerContext();
+
+        LogbackGsonLayout layout = new LogbackGsonLayout();
+        layout.setContext(context);
+        layout.setFields(LogbackGsonLayout.FIELD_MESSAGE);
+        layout.setLogLineSeparator("\n");
+
+        LogbackGsonEncoder encoder = new LogbackGsonEncoder();
+        encoder.setContext(context);
+        encoder.setLayout(layout);
+        encoder.start();
+
+        LogbackGsonGzipFileAppender appender = new LogbackGsonGzipFileAppender();
+        appender.setContext(context);
+        appender.setName("gzip");
+        appender.setFile(file.toString());
+        appender.setEncoder(encoder);
+        appender.setFrameSize(64);
+        appender.setFrameInterval(500);
+        appender.start();
+        assertTrue(appender.isStarted());
+
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            LoggingEvent event = new LoggingEvent();
+            event.setLevel(Level.INFO);
+            event.setMessage("event " + i);
+            appender.doAppend(event);
+            expected.append("{\"message\":\"event ").append(i).append("\"}\n");
+        }
+
+        // Not full frame is written by timer of appender, without new log events
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (appender.getUncompressedByteCount() < expected.length() && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        assertEquals(expected.length(), appender.getUncompressedByteCount());
+
+        appender.stop();
+        byte[] data = Files.readAllBytes(file);
+        List<String> members = decompressMembers(data);
+        // Members of 64 bytes, and the rest - by frame interval
+        List<String> expectedMembers = new ArrayList<>();
+        for (int start = 0; start < expected.length(); start += 64) {
+            expectedMembers.add(expected.substring(start, Math.min(start + 64, expected.length())));
+        }
+        assertEquals(expectedMembers, members);
+        assertEquals(expected.toString(), new String(decompress(data), StandardCharsets.UTF_8));
+        assertEquals(data.length, appender.getCompressedByteCount());
+    }
+}
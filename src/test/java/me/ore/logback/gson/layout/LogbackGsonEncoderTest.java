@@ -0,0 +1,124 @@
+package me.ore.logback.gson.layout;
+
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.classic.spi.ThrowableProxy;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+class LogbackGsonEncoderTest {
+    // Stream, which counts calls of "write"
+    private static final class CountingOutputStream extends ByteArrayOutputStream {
+        private int writeCount = 0;
+
+        @Override
+        public synchronized void write(byte[] source, int offset, int length) {
+            this.writeCount++;
+            super.write(source, offset, length);
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            this.writeCount++;
+            super.write(b);
+        }
+    }
+
+
+    private static LogbackGsonEncoder encoder(Integer maxEventBytes) {
+        LoggerContext context = new LoggerContext();
+        LogbackGsonLayout layout = new LogbackGsonLayout();
+        layout.setContext(context);
+        layout.setFields(LogbackGsonLayout.FIELD_LEVEL + "," + LogbackGsonLayout.FIELD_MESSAGE + "," + LogbackGsonLayout.FIELD_ERROR);
+        layout.setLogLineSeparator("\n");
+        if (maxEventBytes != null) layout.setMaxEventBytes(maxEventBytes);
+
+        LogbackGsonEncoder result = new LogbackGsonEncoder();
+        result.setContext(context);
+        result.setLayout(layout);
+        result.start();
+        return result;
+    }
+
+    private static List<ILoggingEvent> events() {
+        List<ILoggingEvent> result = new ArrayList<>();
+        String[] messages = {"first", "second \"quoted\" <b>", "\u00e9 \uD83D\uDE00", null, ""};
+        for (int i = 0; i < messages.length; i++) {
+            LoggingEvent event = new LoggingEvent();
+            event.setLevel(i % 2 == 0 ? Level.INFO : Level.WARN);
+            event.setMessage(messages[i]);
+            if (i == 1) event.setThrowableProxy(new ThrowableProxy(new IllegalStateException("failure")));
+            result.add(event);
+        }
+
+        StringBuilder longMessage = new StringBuilder();
+        for (int i = 0; i < 500; i++) longMessage.append((char) ('a' + i % 26));
+        LoggingEvent event = new LoggingEvent();
+        event.setLevel(Level.ERROR);
+        event.setMessage(longMessage.toString());
+        result.add(event);
+        return result;
+    }
+
+    private static byte[] concatenation(LogbackGsonEncoder encoder, List<? extends ILoggingEvent> events) {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        for (ILoggingEvent event : events) {
+            if (event == null) continue;
+            byte[] bytes = encoder.encode(event);
+            result.write(bytes, 0, bytes.length);
+        }
+        return result.toByteArray();
+    }
+
+
+    @Test
+    void batchMatchesSingleEvents() throws IOException {
+        // Without limit, and with limit - every event of batch is limited separately
+        for (Integer maxEventBytes : new Integer[]{null, 120}) {
+            LogbackGsonEncoder encoder = encoder(maxEventBytes);
+            List<ILoggingEvent> events = events();
+            byte[] expected = concatenation(encoder, events);
+
+            assertArrayEquals(expected, encoder.encodeBatch(events));
+
+            CountingOutputStream stream = new CountingOutputStream();
+            encoder.encodeBatch(events, stream);
+            assertArrayEquals(expected, stream.toByteArray());
+            // Whole batch is written by one call
+            assertEquals(1, stream.writeCount);
+        }
+    }
+
+    @Test
+    void nullEventsAreSkipped() throws IOException {
+        LogbackGsonEncoder encoder = encoder(null);
+        List<ILoggingEvent> withoutNulls = events();
+        List<ILoggingEvent> events = new ArrayList<>(withoutNulls);
+        events.add(0, null);
+        events.add(3, null);
+        events.add(null);
+
+        assertArrayEquals(concatenation(encoder, events), encoder.encodeBatch(events));
+        assertArrayEquals(concatenation(encoder, withoutNulls), encoder.encodeBatch(events));
+
+        // Nothing is written for batch without events
+        assertArrayEquals(new byte[0], encoder.encodeBatch(Collections.emptyList()));
+        CountingOutputStream stream = new CountingOutputStream();
+        encoder.encodeBatch(Arrays.asList(null, null), stream);
+        encoder.encodeBatch(Collections.emptyList(), stream);
+        assertEquals(0, stream.writeCount);
+    }
+}
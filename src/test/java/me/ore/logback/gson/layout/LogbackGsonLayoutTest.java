@@ -0,0 +1,432 @@
+package me.ore.logback.gson.layout;
+
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.status.Status;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+import org.slf4j.event.KeyValuePair;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+class LogbackGsonLayoutTest {
+    private static LogbackGsonLayout layout(LoggerContext context) {
+        LogbackGsonLayout result = new LogbackGsonLayout();
+        result.setContext(context);
+        result.setLogLineSeparator("");
+        return result;
+    }
+
+    private static LoggingEvent event(String message) {
+        LoggingEvent event = new LoggingEvent();
+        event.setLevel(Level.INFO);
+        event.setMessage(message);
+        return event;
+    }
+
+
+    @Test
+    void metricsJmxNameIsNotTakenOver() throws Exception {
+        String jmxName = LogbackGsonLayout.METRICS_JMX_DOMAIN + ":type=Test,name=metricsJmxNameIsNotTakenOver";
+        ObjectName name = new ObjectName(jmxName);
+        LoggerContext context = new LoggerContext();
+
+        LogbackGsonLayout first = layout(context);
+        first.setMetricsEnabled(true);
+        first.setMetricsJmxName(jmxName);
+        first.start();
+
+        LogbackGsonLayout second = layout(context);
+        second.setMetricsEnabled(true);
+        second.setMetricsJmxName(jmxName);
+        second.start();
+
+        try {
+            assertTrue(second.isStarted());
+            first.doLayout(event("message"));
+            assertEquals(1L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "EventCount"));
+            assertTrue(context.getStatusManager().getCopyOfStatusList().stream()
+                    .anyMatch(status -> status.getLevel() == Status.WARN && status.getMessage().contains(jmxName)));
+
+            // Second layout does not unregister bean of first layout
+            second.stop();
+            assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+            assertEquals(1L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "EventCount"));
+        } finally {
+            second.stop();
+            first.stop();
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+
+    @Test
+    void staticFieldCannotReplaceOtherProperty() {
+        for (String name : new String[]{"level", LogbackGsonLayout.PROPERTY_TRUNCATED}) {
+            LogbackGsonStaticField staticField = new LogbackGsonStaticField();
+            staticField.setName(name);
+            staticField.setValue("static");
+
+            LogbackGsonLayout layout = layout(new LoggerContext());
+            layout.addStaticField(staticField);
+            RuntimeException e = assertThrows(RuntimeException.class, layout::start);
+            assertTrue(e.getMessage().contains(name), e.getMessage());
+        }
+
+        // Same name is allowed, if other property is not written
+        LogbackGsonStaticField staticField = new LogbackGsonStaticField();
+        staticField.setName("level");
+        staticField.setValue("static");
+
+        LogbackGsonLayout layout = layout(new LoggerContext());
+        layout.setFields(LogbackGsonLayout.FIELD_MESSAGE + "," + LogbackGsonLayout.FIELD_STATIC_FIELDS);
+        layout.addStaticField(staticField);
+        layout.start();
+
+        assertEquals("{\"message\":\"message\",\"level\":\"static\"}", layout.doLayout(event("message")));
+    }
+
+    @Test
+    void messageIsTruncated() {
+        LogbackGsonLayout layout = layout(new LoggerContext());
+        layout.setFields(LogbackGsonLayout.FIELD_LEVEL + "," + LogbackGsonLayout.FIELD_MESSAGE);
+        layout.setMaxMessageBytes(12);
+        layout.start();
+
+        // Escape sequence "<" is not split
+        assertEquals("{\"level\":\"INFO\",\"message\":\"0123456789\",\"truncated\":true}", layout.doLayout(event("0123456789<abcdef>")));
+        assertEquals("{\"level\":\"INFO\",\"message\":\"short\"}", layout.doLayout(event("short")));
+        assertEquals(1, layout.getTruncatedMessageCount());
+    }
+
+    @Test
+    void valuesAreTruncated() {
+        LogbackGsonLayout layout = layout(new LoggerContext());
+        layout.setFields(LogbackGsonLayout.FIELD_MESSAGE + "," + LogbackGsonLayout.FIELD_EXTRA_PARAMS);
+        layout.setMaxValueBytes(5);
+        layout.start();
+
+        Map<String, Object> extraParams = new LinkedHashMap<>();
+        extraParams.put("string", "abcdefghij");
+        extraParams.put("list", Arrays.asList(1, 2, 3, 4));
+        extraParams.put("short", "ab");
+        LogbackGsonLayout.setExtraParams(extraParams);
+        try {
+            // Too long JSON of other values is written as string
+            assertEquals(
+                    "{\"message\":\"message\",\"string\":\"abcde\",\"list\":\"[1,\",\"short\":\"ab\",\"truncated\":true}",
+                    layout.doLayout(event("message"))
+            );
+        } finally {
+            LogbackGsonLayout.removeExtraParams();
+        }
+        assertEquals(2, layout.getTruncatedValueCount());
+    }
+
+    @Test
+    void eventIsTruncated() {
+        int maxEventBytes = 150;
+        LogbackGsonLayout layout = layout(new LoggerContext());
+        layout.setFields(LogbackGsonLayout.FIELD_LEVEL + "," + LogbackGsonLayout.FIELD_MESSAGE + "," + LogbackGsonLayout.FIELD_EXTRA_PARAMS);
+        layout.setMaxEventBytes(maxEventBytes);
+        layout.start();
+
+        LogbackGsonLayout.setExtraParams(Collections.singletonMap("requestId", "r-1"));
+        try {
+            assertEquals("{\"level\":\"INFO\",\"message\":\"short\",\"requestId\":\"r-1\"}", layout.doLayout(event("short")));
+
+            Random random = new Random(3);
+            for (int i = 0; i < 50; i++) {
+                StringBuilder message = new StringBuilder();
+                int length = 100 + random.nextInt(2000);
+                while (message.length() < length) message.append(random.nextBoolean() ? "text " : "é中😀\" ");
+
+                String json = layout.doLayout(event(message.toString()));
+                assertTrue(json.getBytes(StandardCharsets.UTF_8).length <= maxEventBytes, json);
+
+                // Long message is cut, fields after it are kept - starting from first log event
+                JsonObject object = JsonParser.parseString(json).getAsJsonObject();
+                assertEquals("INFO", object.get("level").getAsString());
+                assertTrue(message.toString().startsWith(object.get("message").getAsString()), json);
+                assertEquals("r-1", object.get("requestId").getAsString(), json);
+                assertTrue(object.get("truncated").getAsBoolean());
+            }
+        } finally {
+            LogbackGsonLayout.removeExtraParams();
+        }
+        assertEquals(50, layout.getTruncatedEventCount());
+    }
+
+    @Test
+    void eventTruncationDoesNotDependOnOtherEvents() {
+        LogbackGsonLayout layout = layout(new LoggerContext());
+        layout.setFields(LogbackGsonLayout.FIELD_LEVEL + "," + LogbackGsonLayout.FIELD_MESSAGE + "," + LogbackGsonLayout.FIELD_EXTRA_PARAMS);
+        layout.setMaxEventBytes(150);
+        layout.start();
+
+        StringBuilder longMessage = new StringBuilder();
+        while (longMessage.length() < 500) longMessage.append('x');
+        LoggingEvent longEvent = event(longMessage.toString());
+
+        LogbackGsonLayout.setExtraParams(Collections.singletonMap("requestId", "r-1"));
+        String expected;
+        try {
+            expected = layout.doLayout(longEvent);
+        } finally {
+            LogbackGsonLayout.removeExtraParams();
+        }
+        assertTrue(expected.contains("\"requestId\":\"r-1\""), expected);
+        assertTrue(expected.getBytes(StandardCharsets.UTF_8).length <= 150, expected);
+
+        // Short log event without extra parameters does not shrink room of "requestId" in next log event
+        layout.doLayout(event("short"));
+        LogbackGsonLayout.setExtraParams(Collections.singletonMap("requestId", "r-1"));
+        try {
+            assertEquals(expected, layout.doLayout(longEvent));
+        } finally {
+            LogbackGsonLayout.removeExtraParams();
+        }
+    }
+
+    @Test
+    void fieldProviderCannotReplaceOtherProperty() {
+        HostnameFieldProvider hostname = new HostnameFieldProvider();
+        hostname.setId("host");
+        hostname.setName("level");
+
+        LogbackGsonLayout layout = layout(new LoggerContext());
+        layout.addField(hostname);
+        RuntimeException e = assertThrows(RuntimeException.class, layout::start);
+        assertEquals("Property name \"level\" is used by more than one field", e.getMessage());
+
+        // Two providers with same property name
+        HostnameFieldProvider first = new HostnameFieldProvider();
+        first.setId("first");
+        first.setName("node");
+        ProcessIdFieldProvider second = new ProcessIdFieldProvider();
+        second.setId("second");
+        second.setName("node");
+
+        layout = layout(new LoggerContext());
+        layout.addField(first);
+        layout.addField(second);
+        layout.setFields("message,first,second");
+        e = assertThrows(RuntimeException.class, layout::start);
+        assertTrue(e.getMessage().contains("\"node\""), e.getMessage());
+    }
+
+    private static String layoutWithExtraParams(LogbackGsonLayout layout, Map<String, Object> extraParams) {
+        LogbackGsonLayout.setExtraParams(extraParams);
+        try {
+            return layout.doLayout(event("m"));
+        } finally {
+            LogbackGsonLayout.removeExtraParams();
+        }
+    }
+
+    private static Map<String, Object> params(Object... namesAndValues) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (int i = 0; i < namesAndValues.length; i += 2) result.put((String) namesAndValues[i], namesAndValues[i + 1]);
+        return result;
+    }
+
+    @Test
+    void extraParamsAreGrouped() {
+        Map<String, Object> extraParams = params("message", "x", "b", 1, "a", "y");
+
+        LogbackGsonLayout flat = layout(new LoggerContext());
+        flat.setFields(LogbackGsonLayout.FIELD_MESSAGE + "," + LogbackGsonLayout.FIELD_EXTRA_PARAMS);
+        flat.start();
+        // Parameter with reserved name is skipped
+        assertEquals("{\"message\":\"m\",\"b\":1,\"a\":\"y\"}", layoutWithExtraParams(flat, extraParams));
+
+        LogbackGsonLayout nested = layout(new LoggerContext());
+        nested.setFields(LogbackGsonLayout.FIELD_MESSAGE + "," + LogbackGsonLayout.FIELD_EXTRA_PARAMS);
+        nested.setExtraParamsGrouping(LogbackGsonExtraParamsGrouping.NESTED);
+        nested.start();
+        // Names in nested object do not clash with other properties
+        assertEquals("{\"message\":\"m\",\"extra\":{\"message\":\"x\",\"b\":1,\"a\":\"y\"}}", layoutWithExtraParams(nested, extraParams));
+        // Nested object without parameters is not written
+        assertEquals("{\"message\":\"m\"}", layoutWithExtraParams(nested, Collections.emptyMap()));
+        assertEquals("{\"message\":\"m\"}", layoutWithExtraParams(nested, Collections.singletonMap("null", null)));
+
+        LogbackGsonLayout prefixed = layout(new LoggerContext());
+        prefixed.setFields(LogbackGsonLayout.FIELD_MESSAGE + "," + LogbackGsonLayout.FIELD_EXTRA_PARAMS);
+        prefixed.setExtraParamsGrouping(LogbackGsonExtraParamsGrouping.PREFIXED);
+        prefixed.setExtraParamsPrefix("p_");
+        prefixed.start();
+        assertEquals("{\"message\":\"m\",\"p_message\":\"x\",\"p_b\":1,\"p_a\":\"y\"}", layoutWithExtraParams(prefixed, extraParams));
+        // Prefixed names are cached - second log event gets the same names
+        assertEquals("{\"message\":\"m\",\"p_message\":\"x\",\"p_b\":1,\"p_a\":\"y\"}", layoutWithExtraParams(prefixed, extraParams));
+
+        LogbackGsonLayout withoutPrefix = layout(new LoggerContext());
+        withoutPrefix.setExtraParamsGrouping(LogbackGsonExtraParamsGrouping.PREFIXED);
+        withoutPrefix.setExtraParamsPrefix("");
+        RuntimeException e = assertThrows(RuntimeException.class, withoutPrefix::start);
+        assertEquals("Prefix of extra parameters is not set", e.getMessage());
+    }
+
+    @Test
+    void sortedOrderIsCachedByNames() {
+        for (LogbackGsonExtraParamsGrouping grouping : LogbackGsonExtraParamsGrouping.values()) {
+            LogbackGsonLayout layout = layout(new LoggerContext());
+            layout.setFields(LogbackGsonLayout.FIELD_EXTRA_PARAMS);
+            layout.setExtraParamsGrouping(grouping);
+            if (grouping == LogbackGsonExtraParamsGrouping.PREFIXED) layout.setExtraParamsPrefix("p.");
+            layout.setSortExtraParams(true);
+            layout.start();
+
+            String prefix = (grouping == LogbackGsonExtraParamsGrouping.NESTED ? "{\"extra\":{" : "{");
+            String suffix = (grouping == LogbackGsonExtraParamsGrouping.NESTED ? "}}" : "}");
+            String names = (grouping == LogbackGsonExtraParamsGrouping.PREFIXED ? "p." : "");
+            String abc = prefix + "\"" + names + "a\":1,\"" + names + "b\":2,\"" + names + "c\":3" + suffix;
+
+            // Same shape - order is taken from cache; other shapes with the same names are sorted too
+            assertEquals(abc, layoutWithExtraParams(layout, params("c", 3, "a", 1, "b", 2)));
+            assertEquals(abc, layoutWithExtraParams(layout, params("c", 3, "a", 1, "b", 2)));
+            assertEquals(abc, layoutWithExtraParams(layout, params("b", 2, "c", 3, "a", 1)));
+            assertEquals(abc, layoutWithExtraParams(layout, params("a", 1, "b", 2, "c", 3)));
+            // Other set of names
+            assertEquals(prefix + "\"" + names + "a\":1,\"" + names + "c\":3" + suffix, layoutWithExtraParams(layout, params("c", 3, "a", 1)));
+            assertEquals(abc, layoutWithExtraParams(layout, params("c", 3, "a", 1, "b", 2)));
+
+            // Snapshot and pooled map are sorted the same way
+            assertEquals(abc, layoutWithExtraParams(layout, ExtraParamsSnapshot.of(params("b", 2, "a", 1, "c", 3))));
+            String pooled = LogbackGsonLayout.useExtraParamsMap(map -> {
+                map.put("c", 3);
+                map.put("b", 2);
+                map.put("a", 1);
+                return layout.doLayout(event("m"));
+            });
+            assertEquals(abc, pooled);
+        }
+    }
+
+    @Test
+    void sortedOrderCacheSlotsAreReplaced() {
+        ExtraParamsOrder order = new ExtraParamsOrder();
+        Random random = new Random(7);
+        // More shapes than slots of cache - shapes replace each other, and order always matches names
+        for (int i = 0; i < 5000; i++) {
+            ExtraParamsOrder.Params params = order.acquire();
+            try {
+                int size = 1 + random.nextInt(6);
+                for (int j = 0; j < size; j++) params.add("k" + random.nextInt(20), j);
+
+                int[] indexes = order.order(params);
+                assertEquals(size, indexes.length);
+                boolean[] used = new boolean[size];
+                for (int j = 0; j < size; j++) {
+                    assertFalse(used[indexes[j]]);
+                    used[indexes[j]] = true;
+                    if (j > 0) assertTrue(params.nameAt(indexes[j - 1]).compareTo(params.nameAt(indexes[j])) <= 0);
+                }
+            } finally {
+                order.release(params);
+            }
+        }
+    }
+
+    private static String layoutWithAllSources(LogbackGsonLayout layout, Map<String, Object> keyValuePairs, Map<String, Object> extraParams,
+                                               Map<String, String> mdc) {
+        LoggingEvent event = event("m");
+        for (Map.Entry<String, Object> entry : keyValuePairs.entrySet()) event.addKeyValuePair(new KeyValuePair(entry.getKey(), entry.getValue()));
+        event.setMDCPropertyMap(mdc);
+
+        LogbackGsonLayout.setExtraParams(extraParams);
+        try {
+            return layout.doLayout(event);
+        } finally {
+            LogbackGsonLayout.removeExtraParams();
+        }
+    }
+
+    private static LogbackGsonLayout precedenceLayout(String fields, LogbackGsonExtraParamsGrouping grouping) {
+        LogbackGsonLayout result = layout(new LoggerContext());
+        result.setFields(fields);
+        result.setExtraParamsGrouping(grouping);
+        return result;
+    }
+
+    @Test
+    void keyIsWrittenOnceByPrecedence() {
+        String fields = "message,mdc,keyValuePairs,extraParams";
+        Map<String, Object> keyValuePairs = params("id", "kvp", "k", 1, "message", "kvp");
+        Map<String, Object> extraParams = params("id", "extra", "e", 2);
+        Map<String, String> mdc = new LinkedHashMap<>();
+        mdc.put("id", "mdc");
+        mdc.put("e", "mdc");
+        mdc.put("only", "mdc");
+
+        // Key-value pairs, then extra parameters, then MDC entries; reserved names are never taken
+        LogbackGsonLayout flat = precedenceLayout(fields, LogbackGsonExtraParamsGrouping.FLAT);
+        flat.start();
+        assertEquals("{\"message\":\"m\",\"only\":\"mdc\",\"id\":\"kvp\",\"k\":1,\"e\":2}",
+                layoutWithAllSources(flat, keyValuePairs, extraParams, mdc));
+
+        // Nested extra parameters do not shadow MDC entries, key-value pairs still do
+        LogbackGsonLayout nested = precedenceLayout(fields, LogbackGsonExtraParamsGrouping.NESTED);
+        nested.start();
+        assertEquals("{\"message\":\"m\",\"e\":\"mdc\",\"only\":\"mdc\",\"id\":\"kvp\",\"k\":1,\"extra\":{\"id\":\"extra\",\"e\":2}}",
+                layoutWithAllSources(nested, keyValuePairs, extraParams, mdc));
+
+        // Key-value pairs are not written - they do not shadow other sources
+        LogbackGsonLayout withoutKeyValuePairs = precedenceLayout("message,mdc,extraParams", LogbackGsonExtraParamsGrouping.FLAT);
+        withoutKeyValuePairs.start();
+        assertEquals("{\"message\":\"m\",\"only\":\"mdc\",\"id\":\"extra\",\"e\":2}",
+                layoutWithAllSources(withoutKeyValuePairs, keyValuePairs, extraParams, mdc));
+
+        // Null values are not written - they do not shadow other sources
+        LogbackGsonLayout nulls = precedenceLayout(fields, LogbackGsonExtraParamsGrouping.FLAT);
+        nulls.start();
+        assertEquals("{\"message\":\"m\",\"e\":\"mdc\",\"only\":\"mdc\",\"id\":\"extra\"}",
+                layoutWithAllSources(nulls, params("id", null), params("id", "extra", "e", null), mdc));
+    }
+
+    @Test
+    void excludedKeysDoNotShadowOtherSources() {
+        Map<String, Object> keyValuePairs = params("id", "kvp", "k", 1);
+        Map<String, Object> extraParams = params("id", "extra", "e", 2);
+        Map<String, String> mdc = new LinkedHashMap<>();
+        mdc.put("id", "mdc");
+        mdc.put("k", "mdc");
+        mdc.put("e", "mdc");
+
+        // Excluded key-value pair is not written, so extra parameter with the same key is written
+        LogbackGsonLayout excluded = precedenceLayout("message,mdc,keyValuePairs,extraParams", LogbackGsonExtraParamsGrouping.FLAT);
+        excluded.setExcludedKeyValuePairKeys("id");
+        excluded.start();
+        assertEquals("{\"message\":\"m\",\"k\":1,\"id\":\"extra\",\"e\":2}",
+                layoutWithAllSources(excluded, keyValuePairs, extraParams, mdc));
+
+        // Not included key-value pair does not shadow MDC entry; not included MDC entries are not written at all
+        LogbackGsonLayout included = precedenceLayout("message,mdc,keyValuePairs", LogbackGsonExtraParamsGrouping.FLAT);
+        included.setIncludedKeyValuePairKeys("id");
+        included.setIncludedMdcKeys("id,k");
+        included.start();
+        assertEquals("{\"message\":\"m\",\"k\":\"mdc\",\"id\":\"kvp\"}",
+                layoutWithAllSources(included, keyValuePairs, extraParams, mdc));
+
+        // Excluded MDC entry is not written, even if no other source has its key
+        LogbackGsonLayout excludedMdc = precedenceLayout("message,mdc", LogbackGsonExtraParamsGrouping.FLAT);
+        excludedMdc.setExcludedMdcKeys("e");
+        excludedMdc.start();
+        assertEquals("{\"message\":\"m\",\"id\":\"mdc\",\"k\":\"mdc\"}",
+                layoutWithAllSources(excludedMdc, keyValuePairs, extraParams, mdc));
+    }
+}
@@ -0,0 +1,135 @@
+package me.ore.logback.gson.layout;
+
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+class LogbackGsonMappedFileAppenderTest {
+    // Small chunks - most log events cross chunk boundaries
+    private static final int CHUNK_SIZE = 64;
+
+    @TempDir
+    Path directory;
+
+
+    private static LogbackGsonMappedFileAppender appender(LoggerContext context, Path file, boolean append) {
+        LogbackGsonLayout layout = new LogbackGsonLayout();
+        layout.setContext(context);
+        layout.setFields(LogbackGsonLayout.FIELD_MESSAGE);
+
+        LogbackGsonEncoder encoder = new LogbackGsonEncoder();
+        encoder.setContext(context);
+        encoder.setLayout(layout);
+        encoder.start();
+
+        LogbackGsonMappedFileAppender result = new LogbackGsonMappedFileAppender();
+        result.setContext(context);
+        result.setFile(file.toString());
+        result.setAppend(append);
+        result.setChunkSize(CHUNK_SIZE);
+        result.setForceInterval(0);
+        result.setEncoder(encoder);
+        result.start();
+        assertTrue(result.isStarted());
+        return result;
+    }
+
+    private static LoggingEvent event(String message) {
+        LoggingEvent event = new LoggingEvent();
+        event.setLevel(Level.INFO);
+        event.setMessage(message);
+        return event;
+    }
+
+    // Writes events, returns expected content of file
+    private static String write(LogbackGsonMappedFileAppender appender, String prefix, int count) {
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            // Lengths of events differ, so they end at different positions in chunks
+            StringBuilder message = new StringBuilder(prefix).append(i).append(' ');
+            for (int j = 0; j < i * 7; j++) message.append((char) ('a' + j % 26));
+
+            appender.doAppend(event(message.toString()));
+            expected.append("{\"message\":\"").append(message).append("\"}").append(System.lineSeparator());
+        }
+        return expected.toString();
+    }
+
+    private static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+
+
+    @Test
+    void eventsCrossChunkBoundaries() throws IOException {
+        Path file = this.directory.resolve("app.json");
+        LogbackGsonMappedFileAppender appender = appender(new LoggerContext(), file, true);
+        String expected = write(appender, "event ", 40);
+        assertTrue(expected.length() > 10 * CHUNK_SIZE);
+
+        // While appender works, file is extended by whole chunks
+        assertEquals(0, Files.size(file) % CHUNK_SIZE);
+
+        appender.stop();
+        // File is truncated to written size - no zero bytes at end
+        assertEquals(expected.length(), Files.size(file));
+        assertEquals(expected, read(file));
+    }
+
+    @Test
+    void eventsAreAppendedToExistingFile() throws IOException {
+        Path file = this.directory.resolve("app.json");
+        LoggerContext context = new LoggerContext();
+
+        LogbackGsonMappedFileAppender first = appender(context, file, true);
+        String expected = write(first, "first ", 10);
+        first.stop();
+
+        LogbackGsonMappedFileAppender second = appender(context, file, true);
+        expected += write(second, "second ", 10);
+        second.stop();
+
+        assertEquals(expected, read(file));
+    }
+
+    @Test
+    void trailingZerosAreSkippedInAppendMode() throws IOException {
+        // File of application, which was not stopped properly: data and zeros of mapped chunks (more than one chunk)
+        Path file = this.directory.resolve("app.json");
+        String written = "{\"message\":\"before crash\"}" + System.lineSeparator();
+        byte[] bytes = written.getBytes(StandardCharsets.UTF_8);
+        byte[] content = new byte[bytes.length + 3 * CHUNK_SIZE + 5];
+        System.arraycopy(bytes, 0, content, 0, bytes.length);
+        Files.write(file, content);
+
+        LogbackGsonMappedFileAppender appender = appender(new LoggerContext(), file, true);
+        String expected = written + write(appender, "after crash ", 5);
+        appender.stop();
+
+        assertEquals(expected, read(file));
+    }
+
+    @Test
+    void fileIsTruncatedWithoutAppend() throws IOException {
+        Path file = this.directory.resolve("app.json");
+        Files.write(file, "old content, longer than one chunk of mapped file, so it is not simply overwritten".getBytes(StandardCharsets.UTF_8));
+
+        LogbackGsonMappedFileAppender appender = appender(new LoggerContext(), file, false);
+        String expected = write(appender, "new ", 3);
+        appender.stop();
+
+        assertEquals(expected, read(file));
+    }
+}
@@ -0,0 +1,96 @@
+package me.ore.logback.gson.layout;
+
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import ch.qos.logback.core.status.Status;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+class LogbackGsonRateLimitFilterTest {
+    private final LoggerContext context = new LoggerContext();
+    private final ListAppender<ILoggingEvent> appender = new ListAppender<>();
+
+    private LogbackGsonRateLimitFilter filter(int firstCount, double permitsPerSecond, int burst, int sampleRate, long summaryInterval) {
+        this.appender.setContext(this.context);
+        this.appender.start();
+        this.context.getLogger(Logger.ROOT_LOGGER_NAME).addAppender(this.appender);
+
+        LogbackGsonRateLimitFilter filter = new LogbackGsonRateLimitFilter();
+        filter.setContext(this.context);
+        filter.setFirstCount(firstCount);
+        filter.setPermitsPerSecond(permitsPerSecond);
+        filter.setBurst(burst);
+        filter.setSampleRate(sampleRate);
+        filter.setSummaryInterval(summaryInterval);
+        filter.start();
+        this.context.addTurboFilter(filter);
+        return filter;
+    }
+
+    private void log(String loggerName, String template, int count) {
+        Logger logger = this.context.getLogger(loggerName);
+        for (int i = 0; i < count; i++) logger.info(template, i);
+    }
+
+
+    @Test
+    void firstEventsAndBurstArePassed() {
+        LogbackGsonRateLimitFilter filter = this.filter(3, 0.001, 2, 0, 0);
+
+        this.log("orders", "Order {} failed", 10);
+        // 3 first events, then 2 tokens of bucket
+        assertEquals(5, this.appender.list.size());
+        assertEquals(5, filter.getSuppressedCount());
+
+        // Other template and other logger have own state
+        this.log("orders", "Order {} created", 4);
+        this.log("payments", "Order {} failed", 4);
+        assertEquals(13, this.appender.list.size());
+    }
+
+    @Test
+    void bucketIsRefilled() throws InterruptedException {
+        LogbackGsonRateLimitFilter filter = this.filter(0, 20, 1, 0, 0);
+
+        this.log("orders", "Order {} failed", 3);
+        assertEquals(1, this.appender.list.size());
+
+        // One token per 50 ms
+        Thread.sleep(150);
+        this.log("orders", "Order {} failed", 3);
+        assertEquals(2, this.appender.list.size());
+        assertEquals(4, filter.getSuppressedCount());
+    }
+
+    @Test
+    void suppressedEventsAreSampled() {
+        LogbackGsonRateLimitFilter filter = this.filter(0, 0.001, 1, 1, 0);
+
+        // Rate 1 - every suppressed event is passed
+        this.log("orders", "Order {} failed", 10);
+        assertEquals(10, this.appender.list.size());
+        assertEquals(9, filter.getSampledCount());
+        assertEquals(0, filter.getSuppressedCount());
+    }
+
+    @Test
+    void pendingCountsAreReportedOnStop() {
+        this.filter(0, 0.001, 1, 0, 60000);
+        this.log("orders", "Order {} failed", 5);
+        assertEquals(1, this.appender.list.size());
+
+        // Reset stops appenders first - so summary goes to status manager
+        this.context.reset();
+        assertTrue(
+                this.context.getStatusManager().getCopyOfStatusList().stream().anyMatch(status ->
+                        status.getLevel() == Status.WARN && status.getMessage().equals("Suppressed 4 log event(s) of logger \"orders\" with level INFO: Order {} failed")),
+                String.valueOf(this.context.getStatusManager().getCopyOfStatusList())
+        );
+    }
+}
@@ -0,0 +1,103 @@
+package me.ore.logback.gson.layout;
+
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.annotations.SerializedName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+class LogbackGsonValueWritersTest {
+    enum Color {
+        RED,
+        @SerializedName("dark-green") GREEN,
+        BLUE { @Override public String toString() { return "blue"; } }
+    }
+
+    // Not a string for GSON - serialized as object
+    static final class Name implements CharSequence {
+        private final String value;
+
+        Name(String value) { this.value = value; }
+
+        @Override
+        public int length() { return this.value.length(); }
+
+        @Override
+        public char charAt(int index) { return this.value.charAt(index); }
+
+        @Override
+        public CharSequence subSequence(int start, int end) { return this.value.subSequence(start, end); }
+
+        @Override
+        public String toString() { return this.value; }
+    }
+
+    public static final class InstantConfigurer implements LogbackGsonBuilderConfigurer {
+        @Override
+        public void configure(GsonBuilder gsonBuilder) {}
+
+        @Override
+        public void configureValueWriters(LogbackGsonValueWriters valueWriters) {
+            valueWriters.register(Instant.class, (value, buffer, layout) -> layout.writeValue(value.toString(), buffer));
+        }
+    }
+
+
+    private static LogbackGsonLayout layout(String gsonBuilderConfigurer) {
+        LogbackGsonLayout layout = new LogbackGsonLayout();
+        layout.setContext(new LoggerContext());
+        layout.setFields(LogbackGsonLayout.FIELD_EXTRA_PARAMS);
+        layout.setLogLineSeparator("");
+        layout.setGsonBuilderConfigurer(gsonBuilderConfigurer);
+        layout.start();
+        return layout;
+    }
+
+    private static String write(LogbackGsonLayout layout, Object value) {
+        LoggingEvent event = new LoggingEvent();
+        event.setMessage("");
+        LogbackGsonLayout.setExtraParams(Collections.singletonMap("value", value));
+        try {
+            return layout.doLayout(event);
+        } finally {
+            LogbackGsonLayout.removeExtraParams();
+        }
+    }
+
+
+    @Test
+    void builtInWritersMatchDefaultGson() {
+        LogbackGsonLayout layout = layout(null);
+        Gson gson = new Gson();
+
+        Object[] values = {
+                UUID.fromString("1cb4d47d-3f4b-4c41-9b3e-5b3e8b9b3e3d"),
+                Color.RED, Color.GREEN, Color.BLUE,
+                new StringBuilder("builder <b>"), new StringBuffer("buffer \"quoted\""),
+                new int[]{1, -2, Integer.MAX_VALUE}, new long[]{Long.MIN_VALUE, 0},
+                Arrays.asList("a", 1, null, Color.GREEN), new LinkedHashSet<>(Arrays.asList(UUID.randomUUID(), 2.5)),
+                new Name("custom char sequence"),
+        };
+        for (Object value : values) {
+            assertEquals("{\"value\":" + gson.toJson(value) + "}", write(layout, value), value.getClass().getName());
+        }
+    }
+
+    @Test
+    void instantAsIsoStringIsOptIn() {
+        Instant instant = Instant.parse("2023-12-25T10:00:00.567Z");
+        LogbackGsonLayout layout = layout(InstantConfigurer.class.getName());
+        assertEquals("{\"value\":\"2023-12-25T10:00:00.567Z\"}", write(layout, instant));
+    }
+}
@@ -0,0 +1,185 @@
+package me.ore.logback.gson.layout;
+
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.IThrowableProxy;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.classic.spi.StackTraceElementProxy;
+import ch.qos.logback.classic.spi.ThrowableProxy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+class ThrowableRendererTest {
+    // Throwable proxy with cyclic chain of causes - real throwables cannot be built so, proxy of Logback breaks cycles itself
+    private static final class CyclicThrowableProxy implements IThrowableProxy {
+        private final String className;
+        private final String message;
+        private final StackTraceElementProxy[] frames;
+        private IThrowableProxy cause;
+
+        private CyclicThrowableProxy(String className, String message, StackTraceElementProxy[] frames) {
+            this.className = className;
+            this.message = message;
+            this.frames = frames;
+        }
+
+        @Override
+        public String getMessage() { return this.message; }
+
+        @Override
+        public String getClassName() { return this.className; }
+
+        @Override
+        public StackTraceElementProxy[] getStackTraceElementProxyArray() { return this.frames; }
+
+        @Override
+        public int getCommonFrames() { return 0; }
+
+        @Override
+        public IThrowableProxy getCause() { return this.cause; }
+
+        @Override
+        public IThrowableProxy[] getSuppressed() { return new IThrowableProxy[0]; }
+
+        @Override
+        public boolean isCyclic() { return false; }
+    }
+
+
+    // Stack trace as it was written before throwable renderer appeared
+    private static String baselineText(String stackTraceLineSeparator, IThrowableProxy source) {
+        StringBuilder resultBuilder = new StringBuilder();
+        HashSet<IThrowableProxy> passedThrowables = new HashSet<>();
+        boolean first = true;
+        IThrowableProxy currentThrowable = source;
+
+        while (currentThrowable != null) {
+            if (first) {
+                first = false;
+            } else {
+                resultBuilder.append(stackTraceLineSeparator).append("Caused by: ");
+            }
+
+            if (passedThrowables.contains(currentThrowable)) {
+                resultBuilder.append("[Cyclic chain of throwables detected]");
+                break;
+            }
+            passedThrowables.add(currentThrowable);
+
+            resultBuilder.append(currentThrowable.getClassName()).append(": ").append(currentThrowable.getMessage());
+
+            StackTraceElementProxy[] stackTraceElementProxyArray = currentThrowable.getStackTraceElementProxyArray();
+            if (stackTraceElementProxyArray != null) {
+                for (StackTraceElementProxy stackTraceElementProxy : stackTraceElementProxyArray) {
+                    if (stackTraceElementProxy != null) {
+                        resultBuilder.append(stackTraceLineSeparator).append("\t").append(stackTraceElementProxy.getSTEAsString());
+                    }
+                }
+            }
+
+            int commonFrames = currentThrowable.getCommonFrames();
+            if (commonFrames > 0) {
+                resultBuilder.append(stackTraceLineSeparator).append("\t<").append(commonFrames).append(" common frame(s) omitted>");
+            }
+
+            currentThrowable = currentThrowable.getCause();
+        }
+
+        return resultBuilder.toString();
+    }
+
+    private static LogbackGsonLayout layout(boolean htmlSafe, String stackTraceLineSeparator) {
+        LogbackGsonLayout layout = new LogbackGsonLayout();
+        layout.setContext(new LoggerContext());
+        layout.setFields(LogbackGsonLayout.FIELD_ERROR);
+        layout.setLogLineSeparator("");
+        layout.setHtmlSafe(htmlSafe);
+        if (stackTraceLineSeparator != null) layout.setStackTraceLineSeparator(stackTraceLineSeparator);
+        layout.start();
+        return layout;
+    }
+
+    private static LoggingEvent event(IThrowableProxy throwable) {
+        // Setter of event accepts only proxy of real throwable
+        LoggingEvent event = new LoggingEvent() {
+            @Override
+            public IThrowableProxy getThrowableProxy() { return throwable; }
+        };
+        event.setLevel(Level.ERROR);
+        event.setMessage("message");
+        return event;
+    }
+
+    private static void assertBaseline(IThrowableProxy throwable) {
+        for (boolean htmlSafe : new boolean[]{true, false}) {
+            for (String stackTraceLineSeparator : new String[]{null, "\n", " | "}) {
+                LogbackGsonLayout layout = layout(htmlSafe, stackTraceLineSeparator);
+                Gson gson = (htmlSafe ? new Gson() : new GsonBuilder().disableHtmlEscaping().create());
+                String expected = "{\"error\":" + gson.toJson(baselineText(layout.getStackTraceLineSeparator(), throwable)) + "}";
+
+                // Second layout call takes rendered frames from cache
+                assertEquals(expected, layout.doLayout(event(throwable)));
+                assertEquals(expected, layout.doLayout(event(throwable)));
+            }
+        }
+    }
+
+    private static RuntimeException thrownChain(String message) {
+        try {
+            try {
+                throw new IllegalStateException("Inner <b>\"quoted\"</b> & \u2028 \u00e9 \uD83D\uDE00");
+            } catch (IllegalStateException e) {
+                throw new RuntimeException(message, e);
+            }
+        } catch (RuntimeException e) {
+            return e;
+        }
+    }
+
+
+    @Test
+    void textMatchesBaseline() {
+        assertBaseline(new ThrowableProxy(thrownChain("Outer\twith\ncontrol characters")));
+        assertBaseline(new ThrowableProxy(thrownChain(null)));
+        assertBaseline(new ThrowableProxy(new IllegalArgumentException()));
+
+        RuntimeException withoutFrames = new RuntimeException("No frames", new Error("Cause without frames"));
+        withoutFrames.setStackTrace(new StackTraceElement[0]);
+        withoutFrames.getCause().setStackTrace(new StackTraceElement[0]);
+        assertBaseline(new ThrowableProxy(withoutFrames));
+    }
+
+    @Test
+    void cyclicChainMatchesBaseline() {
+        StackTraceElementProxy[] frames = {
+                new StackTraceElementProxy(new StackTraceElement("me.ore.First", "run", "First.java", 10)),
+                new StackTraceElementProxy(new StackTraceElement("me.ore.Second", "call", null, -2)),
+        };
+        CyclicThrowableProxy first = new CyclicThrowableProxy("me.ore.FirstException", "first", frames);
+        CyclicThrowableProxy second = new CyclicThrowableProxy("me.ore.SecondException", "second", frames);
+        first.cause = second;
+        second.cause = first;
+
+        assertBaseline(first);
+    }
+
+    @Test
+    void cachedFramesWithOtherMessages() {
+        LogbackGsonLayout layout = layout(true, null);
+        for (String message : new String[]{"first", "<second>", null, "first"}) {
+            // Same frames and causes, only messages differ
+            IThrowableProxy throwable = new ThrowableProxy(thrownChain(message));
+            String expected = "{\"error\":" + new Gson().toJson(baselineText(layout.getStackTraceLineSeparator(), throwable)) + "}";
+            assertEquals(expected, layout.doLayout(event(throwable)));
+        }
+        assertTrue(layout.getThrowableCacheHitCount() > 0);
+    }
+}
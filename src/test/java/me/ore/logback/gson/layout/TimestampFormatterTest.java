@@ -0,0 +1,100 @@
+package me.ore.logback.gson.layout;
+
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+class TimestampFormatterTest {
+    private static final String[] PATTERNS = {
+            "yyyy-MM-dd'T'HH:mm:ss.SSSXXX",
+            "d/M/yyyy HH:mm:ss.SSS",
+            "d/M/yyyy H:m:s.SSSSSS",
+            "EEEE, MMMM d, yyyy HH:mm:ss.SSS",
+            "yyyy-MM-dd HH:mm:ss.SSS zzzz",
+            "yyyy-MM-dd HH:mm:ss.SSSSSSSSS VV",
+            "yyyy-MM-dd HH:mm:ss",
+            "ss.SSS'<&>'",
+    };
+
+    private static final String[] ZONES = {"UTC", "Europe/Berlin", "America/St_Johns", "Asia/Kolkata"};
+
+
+    private static LoggingEvent event(Instant instant) {
+        LoggingEvent event = new LoggingEvent();
+        event.setInstant(instant);
+        return event;
+    }
+
+    private static String write(TimestampFormatter timestampFormatter, Instant instant) {
+        JsonOutputBuffer buffer = new JsonOutputBuffer();
+        timestampFormatter.write(event(instant), buffer);
+        return buffer.toString();
+    }
+
+    private static String expected(DateTimeFormatter formatter, Instant instant, boolean htmlSafe) {
+        return new String(JsonOutputBuffer.encodeString(formatter.format(instant), htmlSafe), StandardCharsets.UTF_8);
+    }
+
+
+    @Test
+    void singleDigitDayAndMonth() {
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("d/M/yyyy HH:mm:ss.SSS").withZone(ZoneId.of("UTC"));
+        TimestampFormatter timestampFormatter = new TimestampFormatter(formatter, true);
+
+        assertEquals("\"25/12/2023 10:00:00.567\"", write(timestampFormatter, Instant.parse("2023-12-25T10:00:00.567Z")));
+        assertEquals("\"1/2/2023 10:00:00.005\"", write(timestampFormatter, Instant.parse("2023-02-01T10:00:00.005Z")));
+        assertEquals("\"1/2/2023 10:00:00.999\"", write(timestampFormatter, Instant.parse("2023-02-01T10:00:00.999Z")));
+    }
+
+    @Test
+    void matchesDateTimeFormatter() {
+        Random random = new Random(42);
+        for (String pattern : PATTERNS) {
+            for (String zone : ZONES) {
+                for (boolean htmlSafe : new boolean[]{true, false}) {
+                    DateTimeFormatter formatter = DateTimeFormatter.ofPattern(pattern, Locale.ENGLISH).withZone(ZoneId.of(zone));
+                    TimestampFormatter timestampFormatter = new TimestampFormatter(formatter, htmlSafe);
+
+                    long epochSecond = Instant.parse("2023-01-01T00:00:00Z").getEpochSecond();
+                    for (int i = 0; i < 2000; i++) {
+                        // Several events in the same second, then jump of up to ~9 days
+                        if (i % 4 == 0) epochSecond += random.nextInt(800_000);
+                        Instant instant = Instant.ofEpochSecond(epochSecond, random.nextInt(1_000_000_000));
+
+                        assertEquals(expected(formatter, instant, htmlSafe), write(timestampFormatter, instant), pattern + " / " + zone + " / " + instant);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void layoutWithPattern() {
+        LogbackGsonLayout layout = new LogbackGsonLayout();
+        layout.setContext(new LoggerContext());
+        layout.setTimestampFormat(LogbackGsonTimestampFormat.PATTERN);
+        layout.setTimestampPattern("d/M/yyyy HH:mm:ss.SSS");
+        layout.setFields(LogbackGsonLayout.FIELD_TIMESTAMP);
+        layout.setLogLineSeparator("");
+        layout.start();
+
+        LoggingEvent event = event(Instant.parse("2023-12-25T10:00:00.567Z"));
+        event.setMessage("");
+        assertEquals("{\"timestamp\":\"25/12/2023 10:00:00.567\"}", layout.doLayout(event));
+
+        event = event(Instant.parse("2024-01-02T10:00:00.567Z"));
+        event.setMessage("");
+        assertEquals("{\"timestamp\":\"2/1/2024 10:00:00.567\"}", layout.doLayout(event));
+    }
+}